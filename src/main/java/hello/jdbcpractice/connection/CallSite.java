@@ -0,0 +1,57 @@
+package hello.jdbcpractice.connection;
+
+import java.util.function.Predicate;
+
+/**
+ * 호출 스택에서 호출한 곳(call site)을 찾는다
+ *
+ * 조건에 맞는 첫 클래스를 찾은 뒤, 같은 클래스 프레임이 이어지는 동안 바깥으로 올라간다.
+ * 그래서 private 헬퍼(getConnection, close 등) 대신 그 헬퍼를 부른 메서드가 나온다.
+ * CallSite 자신의 프레임은 건너뛴다.
+ */
+public final class CallSite {
+    public static final String UNKNOWN = "unknown";
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private CallSite() {
+    }
+
+    /**
+     * @param className 찾을 클래스 이름 조건 (전체 이름)
+     * @return "클래스.메서드:줄". 찾지 못하면 UNKNOWN
+     */
+    public static String find(Predicate<String> className) {
+        return STACK_WALKER.walk(frames -> {
+            StackWalker.StackFrame caller = null;
+            Iterable<StackWalker.StackFrame> callers = frames.dropWhile(CallSite::isOwnFrame)::iterator;
+            for (StackWalker.StackFrame frame : callers) {
+                if (caller == null) {
+                    if (className.test(frame.getClassName())) {
+                        caller = frame;
+                    }
+                } else if (frame.getClassName().equals(caller.getClassName())) {
+                    caller = frame;
+                } else {
+                    break;
+                }
+            }
+            return caller == null ? UNKNOWN : format(caller);
+        });
+    }
+
+    private static boolean isOwnFrame(StackWalker.StackFrame frame) {
+        String name = frame.getClassName();
+        return name.equals(CallSite.class.getName()) || name.startsWith(CallSite.class.getName() + "$");
+    }
+
+    private static String format(StackWalker.StackFrame frame) {
+        String name = frame.getClassName();
+        name = name.substring(name.lastIndexOf('.') + 1);
+        // 스프링 CGLIB 프록시(MemberServiceV3_3$$SpringCGLIB$$0)는 원래 클래스 이름으로
+        int generated = name.indexOf("$$");
+        if (generated > 0) {
+            name = name.substring(0, generated);
+        }
+        return name + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+    }
+}
@@ -1,5 +1,6 @@
 package hello.jdbcpractice.connection;
 
+import hello.jdbcpractice.connection.leak.ConnectionLeakDetector;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.Connection;
@@ -10,9 +11,29 @@ import static hello.jdbcpractice.connection.ConnectionConst.*;
 
 @Slf4j
 public class DBConnectionUtil {
+    // 풀 모드 기본값. -Djdbcpractice.connection.pool=true로 켜면 V0, V1 코드도 고치지 않고 풀을 쓴다
+    public static final String POOL_PROPERTY = "jdbcpractice.connection.pool";
+
+    private static volatile SimpleConnectionPool pool =
+            Boolean.getBoolean(POOL_PROPERTY) ? new SimpleConnectionPool(URL, USER, PASSWORD) : null;
+    // null이 아니면 꺼내주는 커넥션을 감시한다 (V0처럼 DataSource 없이 커넥션을 쓰는 코드용)
+    private static volatile ConnectionLeakDetector leakDetector;
+
     // Connection 생성 로직
     public static Connection getConnection() {
+        ConnectionLeakDetector detector = leakDetector;
+        Connection connection = connect();
+        return detector == null ? connection : detector.track(connection);
+    }
+
+    private static Connection connect() {
+        SimpleConnectionPool current = pool;
         try {
+            if (current != null) {
+                Connection connection = current.getConnection();
+                log.debug("get pooled connection={}", connection);
+                return connection;
+            }
             /**
              * DriverManager의 getConnection 메서드에
              * ConnectionConst에서 H2 데이터베이스의 URL, USER, PASSWORD 정보를 넣어서 직접 커넥션 생성
@@ -24,4 +45,43 @@ public class DBConnectionUtil {
             throw new IllegalStateException(e);
         }
     }
+
+    /**
+     * 풀 모드를 켠다. 이후 getConnection()은 풀의 커넥션을 돌려주고, close()하면 풀로 돌아간다
+     */
+    public static synchronized void enablePool() {
+        enablePool(new SimpleConnectionPool(URL, USER, PASSWORD));
+    }
+
+    /**
+     * newPool로 바꾸고 이전 풀의 쉬는 커넥션을 닫는다
+     */
+    public static synchronized void enablePool(SimpleConnectionPool newPool) {
+        SimpleConnectionPool old = pool;
+        pool = newPool;
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * 풀 모드를 끄고 쉬는 커넥션을 닫는다. 이후 getConnection()은 매번 새 커넥션을 만든다
+     */
+    public static synchronized void disablePool() {
+        enablePool(null);
+    }
+
+    /**
+     * 이후 getConnection()이 돌려주는 커넥션을 detector로 감시한다. null이면 끈다
+     */
+    public static void setLeakDetector(ConnectionLeakDetector detector) {
+        leakDetector = detector;
+    }
+
+    /**
+     * 풀 모드가 아니면 null
+     */
+    public static SimpleConnectionPool getPool() {
+        return pool;
+    }
 }
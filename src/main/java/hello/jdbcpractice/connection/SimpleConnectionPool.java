@@ -0,0 +1,283 @@
+package hello.jdbcpractice.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DriverManager 커넥션을 재사용하는 가벼운 커넥션 풀
+ *
+ * - 쉬는 커넥션은 락 없는 스택(Treiber stack)에 maxIdle개까지만 둔다. 넘치는 커넥션은 돌려받을 때 닫는다.
+ * - 꺼낼 때 validationBypass보다 오래 쉬었던 커넥션은 isValid로 확인하고, 끊어진 커넥션은 버리고 다음 것을 꺼낸다.
+ * - 만든 지 maxLifetime이 지난 커넥션은 꺼낼 때나 돌려받을 때 닫는다.
+ * - 빌려주는 커넥션은 프록시다. close()를 호출하면 물리 커넥션을 닫지 않고 풀에 돌려준다.
+ *
+ * 동시에 빌려줄 수 있는 커넥션 수는 제한하지 않는다. 쉬는 커넥션이 없으면 새로 만든다.
+ */
+@Slf4j
+public class SimpleConnectionPool implements AutoCloseable {
+    public static final int DEFAULT_MAX_IDLE = 10;
+    public static final Duration DEFAULT_MAX_LIFETIME = Duration.ofMinutes(30);
+    public static final Duration DEFAULT_VALIDATION_BYPASS = Duration.ofMillis(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxIdle;
+    private final long maxLifetimeNanos;
+    private final long validationBypassNanos;
+
+    private final AtomicReference<Node> idle = new AtomicReference<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder borrowedCount = new LongAdder();
+    private final LongAdder discardedCount = new LongAdder();
+
+    public SimpleConnectionPool(String url, String user, String password) {
+        this(url, user, password, DEFAULT_MAX_IDLE, DEFAULT_MAX_LIFETIME, DEFAULT_VALIDATION_BYPASS);
+    }
+
+    public SimpleConnectionPool(String url, String user, String password,
+                                int maxIdle, Duration maxLifetime, Duration validationBypass) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxIdle = maxIdle;
+        this.maxLifetimeNanos = maxLifetime.toNanos();
+        this.validationBypassNanos = validationBypass.toNanos();
+    }
+
+    /**
+     * 쉬는 커넥션을 꺼내거나 새로 만들어서 프록시로 감싸 돌려준다
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("connection pool is closed");
+        }
+
+        PooledConnection pooled;
+        while ((pooled = pop()) != null) {
+            if (isUsable(pooled)) {
+                break;
+            }
+            discard(pooled);
+        }
+        if (pooled == null) {
+            pooled = new PooledConnection(DriverManager.getConnection(url, user, password), System.nanoTime());
+            createdCount.increment();
+        }
+
+        borrowedCount.increment();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(pooled));
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * 새로 만든 물리 커넥션 수
+     */
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    public long getBorrowedCount() {
+        return borrowedCount.sum();
+    }
+
+    /**
+     * 끊어졌거나 수명이 다해서, 또는 쉬는 커넥션이 maxIdle을 넘어서 닫은 커넥션 수
+     */
+    public long getDiscardedCount() {
+        return discardedCount.sum();
+    }
+
+    /**
+     * 쉬는 커넥션을 모두 닫는다. 빌려준 커넥션은 돌려받을 때 닫는다
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = pop()) != null) {
+            JdbcUtils.closeConnection(pooled.physical());
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        long now = System.nanoTime();
+        if (now - pooled.createdNanos() >= maxLifetimeNanos) {
+            return false;
+        }
+        if (now - pooled.lastUsedNanos() < validationBypassNanos) {
+            return true;
+        }
+        try {
+            return pooled.physical().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 프록시의 close()에서 호출. 트랜잭션 상태를 되돌리고 스택에 넣는다
+     */
+    private void release(PooledConnection pooled) {
+        Connection physical = pooled.physical();
+        try {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (physical.isReadOnly()) {
+                physical.setReadOnly(false);
+            }
+        } catch (SQLException e) {
+            log.warn("connection reset failed, discard", e);
+            discard(pooled);
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (closed || now - pooled.createdNanos() >= maxLifetimeNanos) {
+            discard(pooled);
+            return;
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            discard(pooled);
+            return;
+        }
+        push(new PooledConnection(physical, pooled.createdNanos(), now));
+    }
+
+    private void discard(PooledConnection pooled) {
+        discardedCount.increment();
+        JdbcUtils.closeConnection(pooled.physical());
+    }
+
+    /**
+     * idleCount는 호출한 쪽에서 먼저 올린다
+     */
+    private void push(PooledConnection pooled) {
+        Node node = new Node(pooled);
+        Node head;
+        do {
+            head = idle.get();
+            node.next = head;
+        } while (!idle.compareAndSet(head, node));
+    }
+
+    private PooledConnection pop() {
+        Node head;
+        do {
+            head = idle.get();
+            if (head == null) {
+                return null;
+            }
+        } while (!idle.compareAndSet(head, head.next));
+        idleCount.decrementAndGet();
+        return head.pooled;
+    }
+
+    private static final class Node {
+        private final PooledConnection pooled;
+        private Node next;
+
+        Node(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+    }
+
+    private record PooledConnection(Connection physical, long createdNanos, long lastUsedNanos) {
+        PooledConnection(Connection physical, long createdNanos) {
+            this(physical, createdNanos, createdNanos);
+        }
+    }
+
+    /**
+     * 빌려준 커넥션 프록시
+     * close()는 풀에 돌려주고, 그 뒤의 호출은 SQLException을 던진다.
+     * 프록시로 만든 문장은 돌려줄 때 닫는다. unwrap(Connection.class)는 물리 커넥션을 돌려준다 (StatementCache 키).
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean returned;
+
+        ConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        statements.forEach(JdbcUtils::closeStatement);
+                        statements.clear();
+                        release(pooled);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || pooled.physical().isClosed();
+                }
+                case "unwrap" -> {
+                    if (args[0] == Connection.class) {
+                        return pooled.physical();
+                    }
+                }
+                case "isWrapperFor" -> {
+                    if (args[0] == Connection.class) {
+                        return true;
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "PooledConnection[" + pooled.physical() + (returned ? ", returned]" : "]");
+                }
+                default -> {
+                }
+            }
+
+            if (returned) {
+                throw new SQLException("connection is closed");
+            }
+            try {
+                Object result = method.invoke(pooled.physical(), args);
+                if (result instanceof Statement statement) {
+                    statements.add(statement);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
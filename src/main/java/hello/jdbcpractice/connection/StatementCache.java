@@ -0,0 +1,200 @@
+package hello.jdbcpractice.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 물리 커넥션별 PreparedStatement 캐시 (SQL 문자열 기준, LRU)
+ *
+ * 커넥션 풀의 프록시 커넥션은 꺼낼 때마다 달라지므로 unwrap(Connection.class)로 얻은 물리 커넥션을 키로 쓴다.
+ * 문장도 물리 커넥션에서 직접 준비한다. 프록시에서 준비하면 풀이 커넥션을 돌려받을 때 문장을 닫아버리기 때문이다.
+ * DataSourceUtils.getConnection()이 트랜잭션 안에서 돌려주는 커넥션도 같은 물리 커넥션이므로 그대로 캐시가 적용된다.
+ *
+ * 풀이 물리 커넥션을 폐기(close)하면 그 커넥션의 문장도 쓸 수 없으므로,
+ * 처음 보는 물리 커넥션이 등록될 때 닫힌 커넥션의 캐시를 정리한다. invalidate()로 직접 정리할 수도 있다.
+ */
+@Slf4j
+public class StatementCache {
+    public static final int DEFAULT_MAX_STATEMENTS = 64;
+
+    private final int maxStatementsPerConnection;
+    private final Map<Connection, ConnectionStatements> caches = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StatementCache() {
+        this(DEFAULT_MAX_STATEMENTS);
+    }
+
+    public StatementCache(int maxStatementsPerConnection) {
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    /**
+     * 캐시된 문장이 있으면 돌려주고, 없으면 물리 커넥션에서 새로 준비해서 캐시에 넣는다
+     * 다 쓴 문장은 close() 대신 release()로 돌려줘야 한다
+     */
+    public PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        Connection physical = conn.unwrap(Connection.class);
+        ConnectionStatements statements = caches.get(physical);
+        if (statements == null) {
+            purgeClosed();
+            statements = caches.computeIfAbsent(physical, ConnectionStatements::new);
+        }
+        return statements.prepare(sql);
+    }
+
+    /**
+     * 캐시된 문장은 닫지 않고 파라미터와 배치만 비운다
+     * 캐시에 없는 문장(다른 경로로 준비한 문장, 이미 밀려난 문장)은 그냥 닫는다
+     */
+    public void release(Statement stmt) {
+        if (stmt == null) {
+            return;
+        }
+
+        ConnectionStatements statements = null;
+        try {
+            statements = caches.get(stmt.getConnection());
+        } catch (SQLException e) {
+            log.debug("statement connection lookup failed", e);
+        }
+
+        if (statements == null || !statements.reset(stmt)) {
+            JdbcUtils.closeStatement(stmt);
+        }
+    }
+
+    /**
+     * 물리 커넥션의 캐시를 비우고 문장을 모두 닫는다
+     */
+    public void invalidate(Connection conn) {
+        try {
+            ConnectionStatements statements = caches.remove(conn.unwrap(Connection.class));
+            if (statements != null) {
+                statements.closeAll();
+            }
+        } catch (SQLException e) {
+            log.debug("statement cache invalidate failed", e);
+        }
+    }
+
+    /**
+     * 풀에서 폐기되어 닫힌 물리 커넥션의 캐시를 정리한다
+     */
+    public void purgeClosed() {
+        for (Iterator<Map.Entry<Connection, ConnectionStatements>> it = caches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, ConnectionStatements> entry = it.next();
+            if (isClosed(entry.getKey())) {
+                it.remove();
+                entry.getValue().closeAll();
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    public int getConnectionCount() {
+        return caches.size();
+    }
+
+    private boolean isClosed(Connection conn) {
+        try {
+            return conn.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * 물리 커넥션 하나의 LRU 캐시
+     * 풀은 물리 커넥션을 한 번에 한 스레드에만 빌려주지만, 정리는 다른 스레드에서 할 수 있어서 synchronized로 막는다
+     */
+    private class ConnectionStatements {
+        private final Connection physical;
+        private final Map<String, PreparedStatement> statements;
+        private final Set<Statement> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        ConnectionStatements(Connection physical) {
+            this.physical = physical;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= maxStatementsPerConnection) {
+                        return false;
+                    }
+                    owned.remove(eldest.getValue());
+                    JdbcUtils.closeStatement(eldest.getValue());
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        synchronized PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement pstmt = statements.get(sql);
+            if (pstmt != null && !pstmt.isClosed()) {
+                hits.increment();
+                return pstmt;
+            }
+
+            misses.increment();
+            pstmt = physical.prepareStatement(sql);
+            statements.put(sql, pstmt);
+            owned.add(pstmt);
+            return pstmt;
+        }
+
+        synchronized boolean reset(Statement stmt) {
+            if (!owned.contains(stmt)) {
+                return false;
+            }
+            try {
+                if (stmt instanceof PreparedStatement pstmt) {
+                    pstmt.clearParameters();
+                }
+                stmt.clearBatch();
+                return true;
+            } catch (SQLException e) {
+                // 재사용할 수 없는 상태면 캐시에서 빼고 호출한 쪽에서 닫게 한다
+                owned.remove(stmt);
+                statements.values().remove(stmt);
+                return false;
+            }
+        }
+
+        synchronized void closeAll() {
+            for (PreparedStatement pstmt : statements.values()) {
+                JdbcUtils.closeStatement(pstmt);
+            }
+            statements.clear();
+            owned.clear();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package hello.jdbcpractice.connection.leak;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 커넥션을 꺼낸 곳(call site) 하나의 통계
+ */
+public class CallSiteStats {
+    private final String callSite;
+    private final LongAdder acquiredCount = new LongAdder();
+    private final LongAdder liveCount = new LongAdder();
+    private final LongAdder totalHoldNanos = new LongAdder();
+    private final LongAccumulator maxHoldNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder longHoldCount = new LongAdder();
+    private final LongAdder leakedCount = new LongAdder();
+
+    CallSiteStats(String callSite) {
+        this.callSite = callSite;
+    }
+
+    void acquired() {
+        acquiredCount.increment();
+        liveCount.increment();
+    }
+
+    void released(long holdNanos) {
+        liveCount.decrement();
+        totalHoldNanos.add(holdNanos);
+        maxHoldNanos.accumulate(holdNanos);
+    }
+
+    void longHold() {
+        longHoldCount.increment();
+    }
+
+    void leaked(long holdNanos) {
+        leakedCount.increment();
+        released(holdNanos);
+    }
+
+    public String getCallSite() {
+        return callSite;
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.sum();
+    }
+
+    /**
+     * 지금 빌려가서 아직 돌려주지 않은 커넥션 수
+     */
+    public long getLiveCount() {
+        return liveCount.sum();
+    }
+
+    public long getTotalHoldNanos() {
+        return totalHoldNanos.sum();
+    }
+
+    public long getMaxHoldNanos() {
+        return maxHoldNanos.get();
+    }
+
+    public long getLongHoldCount() {
+        return longHoldCount.sum();
+    }
+
+    /**
+     * close() 없이 GC된 커넥션 수
+     */
+    public long getLeakedCount() {
+        return leakedCount.sum();
+    }
+}
@@ -0,0 +1,266 @@
+package hello.jdbcpractice.connection.leak;
+
+import hello.jdbcpractice.connection.CallSite;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.lang.ref.Cleaner;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 커넥션 누수, 오래 잡고 있는 커넥션 감지
+ *
+ * track()으로 감싼 커넥션은 꺼낸 곳(call site), 스레드, 꺼낸 시각을 기록하고 close()에서 잡고 있던 시간을 센다.
+ * - 오래 잡고 있는 커넥션: 스캐너가 scanInterval마다 살아 있는 커넥션을 훑어서 longHoldThreshold를 넘은 것을 한 번씩 경고한다
+ * - 돌려주지 않은 커넥션: close() 없이 프록시가 GC되면 Cleaner가 누수로 기록하고, 대신 원래 커넥션을 닫아서 풀에 돌려준다
+ *
+ * call site는 꺼낼 때마다 StackWalker로 찾는다 (필요한 프레임까지만 훑는다).
+ * 전체 스택은 비싸서 sampleEvery번에 한 번꼴로만 남긴다. 경고할 때 스택이 있으면 같이 찍는다.
+ */
+@Slf4j
+public class ConnectionLeakDetector implements AutoCloseable {
+    public static final Duration DEFAULT_LONG_HOLD_THRESHOLD = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_SCAN_INTERVAL = Duration.ofSeconds(1);
+    public static final int DEFAULT_SAMPLE_EVERY = 20;
+
+    // call site에서 건너뛸 클래스 (커넥션을 대신 꺼내주는 쪽)
+    private static final Set<String> INTERNAL_CLASSES = Set.of(
+            "hello.jdbcpractice.connection.DBConnectionUtil",
+            "hello.jdbcpractice.connection.SimpleConnectionPool",
+            "hello.jdbcpractice.connection.metrics.InstrumentedDataSource",
+            "hello.jdbcpractice.connection.leak.ConnectionLeakDetector",
+            "hello.jdbcpractice.connection.leak.LeakDetectingDataSource");
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final long longHoldThresholdNanos;
+    private final int sampleEvery;
+
+    private final Set<Checkout> live = ConcurrentHashMap.newKeySet();
+    private final Map<String, CallSiteStats> callSites = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scanner;
+
+    private final LongAdder longHoldCount = new LongAdder();
+    private final LongAdder leakedCount = new LongAdder();
+
+    public ConnectionLeakDetector() {
+        this(DEFAULT_LONG_HOLD_THRESHOLD, DEFAULT_SCAN_INTERVAL, DEFAULT_SAMPLE_EVERY);
+    }
+
+    /**
+     * @param sampleEvery 전체 스택을 남기는 간격. 1이면 매번 남긴다
+     */
+    public ConnectionLeakDetector(Duration longHoldThreshold, Duration scanInterval, int sampleEvery) {
+        this.longHoldThresholdNanos = longHoldThreshold.toNanos();
+        this.sampleEvery = sampleEvery;
+
+        this.scanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-leak-scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = scanInterval.toMillis();
+        scanner.scheduleWithFixedDelay(this::scanSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 커넥션을 감시 프록시로 감싼다. 돌려받은 프록시의 close()가 돌려줌으로 기록된다
+     */
+    public Connection track(Connection connection) {
+        String callSite = CallSite.find(ConnectionLeakDetector::isApplicationClass);
+        Throwable stack = ThreadLocalRandom.current().nextInt(sampleEvery) == 0
+                ? new Throwable("connection acquired at " + callSite) : null;
+        Checkout checkout = new Checkout(callSites.computeIfAbsent(callSite, CallSiteStats::new),
+                Thread.currentThread().getName(), System.nanoTime(), stack);
+        checkout.stats.acquired();
+        live.add(checkout);
+
+        Connection proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection, checkout));
+        // 핸들러가 아니라 프록시가 GC될 때를 본다. 정리 작업은 프록시를 참조하면 안 된다
+        checkout.cleanable = CLEANER.register(proxy, new LeakAction(this, checkout, connection));
+        return proxy;
+    }
+
+    /**
+     * 살아 있는 커넥션을 훑어서 longHoldThreshold를 넘은 것을 경고한다. 스캐너가 주기적으로 호출한다
+     */
+    public void scan() {
+        long now = System.nanoTime();
+        for (Checkout checkout : live) {
+            long held = now - checkout.acquiredNanos;
+            if (held < longHoldThresholdNanos || checkout.longHeld) {
+                continue;
+            }
+            checkout.longHeld = true;
+            checkout.stats.longHold();
+            longHoldCount.increment();
+            log.warn("connection held too long held={}ms callSite={} thread={} live at call site={}",
+                    TimeUnit.NANOSECONDS.toMillis(held), checkout.stats.getCallSite(), checkout.threadName,
+                    checkout.stats.getLiveCount(), checkout.stack);
+        }
+    }
+
+    /**
+     * 지금 빌려간 커넥션. 오래 잡고 있는 것부터
+     */
+    public List<LiveConnection> liveConnections() {
+        long now = System.nanoTime();
+        return live.stream()
+                .sorted(Comparator.comparingLong(checkout -> checkout.acquiredNanos))
+                .map(checkout -> new LiveConnection(checkout.stats.getCallSite(), checkout.threadName,
+                        Duration.ofNanos(now - checkout.acquiredNanos), checkout.longHeld, checkout.stack))
+                .toList();
+    }
+
+    public int getLiveCount() {
+        return live.size();
+    }
+
+    public Collection<CallSiteStats> getCallSites() {
+        return Collections.unmodifiableCollection(callSites.values());
+    }
+
+    public Optional<CallSiteStats> findCallSite(String callSitePrefix) {
+        return callSites.values().stream()
+                .filter(stats -> stats.getCallSite().startsWith(callSitePrefix))
+                .findFirst();
+    }
+
+    public long getLongHoldCount() {
+        return longHoldCount.sum();
+    }
+
+    public long getLeakedCount() {
+        return leakedCount.sum();
+    }
+
+    @Override
+    public void close() {
+        scanner.shutdownNow();
+    }
+
+    private void release(Checkout checkout) {
+        long held = System.nanoTime() - checkout.acquiredNanos;
+        live.remove(checkout);
+        checkout.stats.released(held);
+        if (checkout.longHeld) {
+            log.info("long held connection returned held={}ms callSite={}",
+                    TimeUnit.NANOSECONDS.toMillis(held), checkout.stats.getCallSite());
+        }
+    }
+
+    private void leaked(Checkout checkout, Connection connection) {
+        long held = System.nanoTime() - checkout.acquiredNanos;
+        live.remove(checkout);
+        checkout.stats.leaked(held);
+        leakedCount.increment();
+        log.error("connection leaked (garbage collected without close) held={}ms callSite={} thread={}",
+                TimeUnit.NANOSECONDS.toMillis(held), checkout.stats.getCallSite(), checkout.threadName, checkout.stack);
+        // 풀 커넥션이면 풀로 돌아가고, 아니면 물리 커넥션이 닫힌다
+        JdbcUtils.closeConnection(connection);
+    }
+
+    private void scanSafely() {
+        try {
+            scan();
+        } catch (RuntimeException e) {
+            log.warn("connection leak scan failed", e);
+        }
+    }
+
+    private static boolean isApplicationClass(String className) {
+        if (!className.startsWith("hello.jdbcpractice.")) {
+            return false;
+        }
+        int inner = className.indexOf('$');
+        return !INTERNAL_CLASSES.contains(inner < 0 ? className : className.substring(0, inner));
+    }
+
+    private static final class Checkout {
+        private final CallSiteStats stats;
+        private final String threadName;
+        private final long acquiredNanos;
+        private final Throwable stack;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile boolean longHeld;
+        private Cleaner.Cleanable cleanable;
+
+        Checkout(CallSiteStats stats, String threadName, long acquiredNanos, Throwable stack) {
+            this.stats = stats;
+            this.threadName = threadName;
+            this.acquiredNanos = acquiredNanos;
+            this.stack = stack;
+        }
+
+        /**
+         * close와 Cleaner 중 먼저 온 쪽만 true
+         */
+        boolean finish() {
+            return done.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * 프록시가 close() 없이 GC됐을 때 Cleaner가 실행한다. close()에서 clean()을 부르면 아무것도 하지 않는다
+     */
+    private record LeakAction(ConnectionLeakDetector detector, Checkout checkout, Connection connection)
+            implements Runnable {
+        @Override
+        public void run() {
+            if (checkout.finish()) {
+                detector.leaked(checkout, connection);
+            }
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final Checkout checkout;
+
+        ConnectionHandler(Connection target, Checkout checkout) {
+            this.target = target;
+            this.checkout = checkout;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (checkout.finish()) {
+                        release(checkout);
+                        checkout.cleanable.clean();
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "TrackedConnection[" + target + "]";
+                }
+                default -> {
+                }
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
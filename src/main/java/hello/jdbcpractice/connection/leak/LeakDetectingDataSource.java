@@ -0,0 +1,36 @@
+package hello.jdbcpractice.connection.leak;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 꺼내주는 커넥션을 ConnectionLeakDetector로 감시하는 DataSource 래퍼
+ *
+ * 직접 finally에서 닫는 코드(MemberServiceV2, MemberRepositoryV1, V2)와
+ * DataSourceUtils로 꺼내고 돌려주는 코드 모두 getConnection()과 close()를 거치므로 그대로 감시된다.
+ */
+public class LeakDetectingDataSource extends DelegatingDataSource {
+    private final ConnectionLeakDetector detector;
+
+    public LeakDetectingDataSource(DataSource target, ConnectionLeakDetector detector) {
+        super(target);
+        this.detector = detector;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return detector.track(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return detector.track(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    public ConnectionLeakDetector getDetector() {
+        return detector;
+    }
+}
@@ -0,0 +1,12 @@
+package hello.jdbcpractice.connection.leak;
+
+import java.time.Duration;
+
+/**
+ * 빌려간 뒤 아직 돌려주지 않은 커넥션 한 건
+ *
+ * @param acquiredAt 꺼낸 곳의 스택. 샘플링에 걸리지 않았으면 null
+ */
+public record LiveConnection(String callSite, String threadName, Duration held, boolean longHeld,
+                             Throwable acquiredAt) {
+}
@@ -0,0 +1,444 @@
+package hello.jdbcpractice.connection.metrics;
+
+import hello.jdbcpractice.jfr.ConnectionAcquireEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 커넥션 획득 대기 시간, 문장 실행 시간, 영향받은 행 수를 기록하는 DataSource 래퍼
+ *
+ * 돌려주는 커넥션과 문장은 JDK 프록시다. DataSourceUtils, JdbcTemplate 모두 getConnection()으로 커넥션을 얻으므로
+ * 트랜잭션 매니저와 리포지토리가 같은 InstrumentedDataSource를 쓰면 별도 설정 없이 기록된다.
+ * - 획득 대기 시간: 대상 DataSource의 getConnection() 시간. 풀이 비어서 기다린 시간이 여기 잡힌다
+ * - 실행 시간, 행 수: SQL 지문(SqlFingerprint)별 히스토그램. 지문은 문장을 준비할 때 한 번만 계산한다
+ *
+ * unwrap(Connection.class)는 물리 커넥션마다 하나씩 만든 계측 프록시를 돌려준다.
+ * StatementCache는 이 프록시를 키로 문장을 준비하므로 캐시된 문장도 계측되고, 커넥션을 다시 꺼내도 캐시가 유지된다.
+ *
+ * 기록은 HdrHistogram Recorder라서 락이 없고, 실행 한 번에 드는 비용은 프록시 호출과 nanoTime 두 번이다.
+ * MeterRegistry를 주면 p50, p99, p999 게이지와 실행, 오류 카운터를 등록한다.
+ * 지문은 maxFingerprints개까지만 따로 두고, 넘치는 SQL은 "other" 하나로 모은다.
+ * addListener로 기준보다 오래 걸린 실행을 SQL, 바인드 값과 함께 받아볼 수 있다.
+ * 커넥션 획득은 JFR ConnectionAcquireEvent로도 남긴다. JdbcTemplate, 트랜잭션 매니저가 꺼내는 커넥션도 여기서 잡힌다.
+ */
+@Slf4j
+public class InstrumentedDataSource extends DelegatingDataSource {
+    public static final int DEFAULT_MAX_FINGERPRINTS = 256;
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(10);
+    public static final String OTHER_FINGERPRINT = "other";
+    private static final int MAX_TAG_LENGTH = 200;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final String EVENT_SOURCE = "InstrumentedDataSource";
+
+    private final MeterRegistry registry;
+    private final int maxFingerprints;
+    private final long refreshIntervalNanos;
+
+    // 원본 SQL -> 지표. 지문 계산을 건너뛰기 위한 캐시
+    private final Map<String, SqlStats> statsBySql = new ConcurrentHashMap<>();
+    private final Map<String, SqlStats> statsByFingerprint = new ConcurrentHashMap<>();
+    // 물리 커넥션 -> 계측 프록시. 값은 약한 참조라 StatementCache가 놓으면 같이 사라진다
+    private final Map<Connection, WeakReference<Connection>> physicalConnections = new WeakHashMap<>();
+
+    private final IntervalHistogram acquireTime;
+    private final LongAdder acquireCount = new LongAdder();
+
+    private final List<StatementListener> listeners = new CopyOnWriteArrayList<>();
+    // 리스너 중 가장 낮은 기준. 이보다 빠른 실행은 StatementExecution을 만들지 않는다
+    private volatile long listenerThresholdNanos = Long.MAX_VALUE;
+    private volatile boolean captureBindValues;
+
+    public InstrumentedDataSource(DataSource target) {
+        this(target, null);
+    }
+
+    /**
+     * @param registry 지표를 내보낼 레지스트리. null이면 findStats, getAllStats로만 읽는다
+     */
+    public InstrumentedDataSource(DataSource target, MeterRegistry registry) {
+        this(target, registry, DEFAULT_MAX_FINGERPRINTS, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * @param refreshInterval 분위수를 다시 계산하는 최소 간격. 읽는 값은 직전 구간의 분위수다
+     */
+    public InstrumentedDataSource(DataSource target, MeterRegistry registry,
+                                  int maxFingerprints, Duration refreshInterval) {
+        super(target);
+        this.registry = registry;
+        this.maxFingerprints = maxFingerprints;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+        this.acquireTime = new IntervalHistogram(refreshIntervalNanos);
+
+        if (registry != null) {
+            registerPercentiles("jdbc.connection.acquire", acquireTime, IntervalHistogram::percentiles);
+            FunctionCounter.builder("jdbc.connection.acquires", acquireCount, LongAdder::sum)
+                    .description("connections acquired")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        ConnectionAcquireEvent event = ConnectionAcquireEvent.start();
+        Connection connection = null;
+        try {
+            connection = obtainTargetDataSource().getConnection();
+            return wrap(connection, false);
+        } finally {
+            recordAcquire(start);
+            event.finish(EVENT_SOURCE, connection != null);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        ConnectionAcquireEvent event = ConnectionAcquireEvent.start();
+        Connection connection = null;
+        try {
+            connection = obtainTargetDataSource().getConnection(username, password);
+            return wrap(connection, false);
+        } finally {
+            recordAcquire(start);
+            event.finish(EVENT_SOURCE, connection != null);
+        }
+    }
+
+    /**
+     * 직전 구간의 커넥션 획득 대기 시간 분위수 (나노초). 실패한 획득도 포함한다
+     */
+    public Percentiles getAcquireTime() {
+        return acquireTime.percentiles();
+    }
+
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    public Optional<SqlStats> findStats(String sql) {
+        return Optional.ofNullable(statsByFingerprint.get(SqlFingerprint.of(sql)));
+    }
+
+    public Collection<SqlStats> getAllStats() {
+        return Collections.unmodifiableCollection(statsByFingerprint.values());
+    }
+
+    /**
+     * 실행이 끝난 문장을 받을 리스너를 등록한다 (예: SlowQueryLog)
+     * 리스너의 thresholdNanos보다 오래 걸린 실행만 실행한 스레드에서 넘겨준다
+     */
+    public synchronized void addListener(StatementListener listener) {
+        listeners.add(listener);
+        listenerThresholdNanos = Math.min(listenerThresholdNanos, listener.thresholdNanos());
+        captureBindValues |= listener.capturesBindValues();
+    }
+
+    private void notifyListeners(StatementExecution execution) {
+        for (StatementListener listener : listeners) {
+            if (execution.elapsedNanos() < listener.thresholdNanos()) {
+                continue;
+            }
+            try {
+                listener.afterExecute(execution);
+            } catch (RuntimeException e) {
+                log.warn("statement listener failed listener={}", listener, e);
+            }
+        }
+    }
+
+    private void recordAcquire(long start) {
+        acquireTime.record(System.nanoTime() - start);
+        acquireCount.increment();
+    }
+
+    SqlStats stats(String sql) {
+        SqlStats stats = statsBySql.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        stats = statsFor(SqlFingerprint.of(sql));
+        // 값을 SQL에 직접 넣는 코드가 원본 캐시를 끝없이 키우지 않게 막는다
+        if (statsBySql.size() < maxFingerprints * 4) {
+            statsBySql.putIfAbsent(sql, stats);
+        }
+        return stats;
+    }
+
+    private SqlStats statsFor(String fingerprint) {
+        SqlStats stats = statsByFingerprint.get(fingerprint);
+        if (stats != null) {
+            return stats;
+        }
+        // "other"까지 maxFingerprints개를 넘지 않게 한 자리를 남긴다
+        if (statsByFingerprint.size() >= maxFingerprints - 1) {
+            fingerprint = OTHER_FINGERPRINT;
+        }
+        return statsByFingerprint.computeIfAbsent(fingerprint, this::newStats);
+    }
+
+    private SqlStats newStats(String fingerprint) {
+        SqlStats stats = new SqlStats(fingerprint, refreshIntervalNanos);
+        if (registry != null) {
+            String sql = fingerprint.length() > MAX_TAG_LENGTH ? fingerprint.substring(0, MAX_TAG_LENGTH) : fingerprint;
+            registerPercentiles("jdbc.statement.execute", stats, SqlStats::getExecuteTime, "sql", sql);
+            registerRowPercentiles(stats, sql);
+            FunctionCounter.builder("jdbc.statement.executions", stats, SqlStats::getExecutionCount)
+                    .tag("sql", sql)
+                    .register(registry);
+            FunctionCounter.builder("jdbc.statement.errors", stats, SqlStats::getErrorCount)
+                    .tag("sql", sql)
+                    .register(registry);
+        }
+        log.debug("new sql fingerprint={}", fingerprint);
+        return stats;
+    }
+
+    /**
+     * 나노초 분위수를 초 단위 게이지 세 개(quantile=0.5, 0.99, 0.999)로 등록
+     */
+    private <T> void registerPercentiles(String name, T source, Function<T, Percentiles> reader, String... tags) {
+        Gauge.builder(name, source, s -> reader.apply(s).p50() / NANOS_PER_SECOND)
+                .tags(tags).tag("quantile", "0.5").baseUnit("seconds").register(registry);
+        Gauge.builder(name, source, s -> reader.apply(s).p99() / NANOS_PER_SECOND)
+                .tags(tags).tag("quantile", "0.99").baseUnit("seconds").register(registry);
+        Gauge.builder(name, source, s -> reader.apply(s).p999() / NANOS_PER_SECOND)
+                .tags(tags).tag("quantile", "0.999").baseUnit("seconds").register(registry);
+    }
+
+    private void registerRowPercentiles(SqlStats stats, String sql) {
+        Gauge.builder("jdbc.statement.rows", stats, s -> s.getRowsAffected().p50())
+                .tag("sql", sql).tag("quantile", "0.5").baseUnit("rows").register(registry);
+        Gauge.builder("jdbc.statement.rows", stats, s -> s.getRowsAffected().p99())
+                .tag("sql", sql).tag("quantile", "0.99").baseUnit("rows").register(registry);
+        Gauge.builder("jdbc.statement.rows", stats, s -> s.getRowsAffected().p999())
+                .tag("sql", sql).tag("quantile", "0.999").baseUnit("rows").register(registry);
+    }
+
+    private Connection wrap(Connection target, boolean physical) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(target, physical));
+    }
+
+    /**
+     * 물리 커넥션의 계측 프록시. 같은 물리 커넥션이면 항상 같은 프록시를 돌려준다 (StatementCache 키)
+     */
+    private Connection physicalConnection(Connection physical) {
+        synchronized (physicalConnections) {
+            WeakReference<Connection> ref = physicalConnections.get(physical);
+            Connection wrapped = ref == null ? null : ref.get();
+            if (wrapped == null) {
+                wrapped = wrap(physical, true);
+                physicalConnections.put(physical, new WeakReference<>(wrapped));
+            }
+            return wrapped;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 영향받은 행 수. executeUpdate, executeBatch 결과만 센다. 모르면 -1
+     */
+    private static long rows(Object result) {
+        if (result instanceof Integer count) {
+            return count >= 0 ? count : -1;
+        }
+        if (result instanceof Long count) {
+            return count >= 0 ? count : -1;
+        }
+        if (result instanceof int[] counts) {
+            return Arrays.stream(counts).filter(count -> count >= 0).asLongStream().sum();
+        }
+        if (result instanceof long[] counts) {
+            return Arrays.stream(counts).filter(count -> count >= 0).sum();
+        }
+        return -1;
+    }
+
+    /**
+     * 커넥션 프록시. 준비한 문장을 계측 프록시로 감싼다
+     * physical이면 물리 커넥션을 감싼 프록시라서 unwrap(Connection.class)가 자기 자신을 돌려준다
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final boolean physical;
+
+        ConnectionHandler(Connection target, boolean physical) {
+            this.target = target;
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement", "prepareCall" -> {
+                    Statement statement = (Statement) InstrumentedDataSource.invoke(target, method, args);
+                    return wrapStatement(method, statement, (Connection) proxy, (String) args[0]);
+                }
+                case "createStatement" -> {
+                    Statement statement = (Statement) InstrumentedDataSource.invoke(target, method, args);
+                    return wrapStatement(method, statement, (Connection) proxy, null);
+                }
+                case "unwrap" -> {
+                    if (args[0] == Connection.class) {
+                        return physical ? proxy : physicalConnection(target.unwrap(Connection.class));
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "InstrumentedConnection[" + target + "]";
+                }
+                default -> {
+                }
+            }
+            return InstrumentedDataSource.invoke(target, method, args);
+        }
+
+        private Statement wrapStatement(Method method, Statement statement, Connection connection, String sql) {
+            // 반환 타입이 Statement, PreparedStatement, CallableStatement 중 하나라 그대로 프록시 인터페이스로 쓴다
+            return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                    new Class<?>[]{method.getReturnType()}, new StatementHandler(statement, connection, sql));
+        }
+    }
+
+    /**
+     * 문장 프록시. execute 계열 호출의 시간과 행 수를 기록한다
+     * 준비한 문장은 지문이 정해져 있고, createStatement로 만든 문장은 실행할 SQL로 그때그때 찾는다
+     */
+    private class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final Connection connection;
+        private final String sql;
+        private final SqlStats stats;
+        private String batchSql;
+        // 바인드 값을 원하는 리스너가 있을 때만 채운다 (파라미터 번호 -> 값)
+        private Map<Integer, Object> parameters;
+
+        StatementHandler(Statement target, Connection connection, String sql) {
+            this.target = target;
+            this.connection = connection;
+            this.sql = sql;
+            this.stats = sql == null ? null : stats(sql);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "execute", "executeQuery", "executeUpdate", "executeLargeUpdate",
+                     "executeBatch", "executeLargeBatch" -> {
+                    return execute(method, args);
+                }
+                case "addBatch" -> {
+                    if (sql == null && batchSql == null && args != null && args[0] instanceof String added) {
+                        batchSql = added;
+                    }
+                }
+                case "clearBatch" -> batchSql = null;
+                case "clearParameters" -> {
+                    if (parameters != null) {
+                        parameters.clear();
+                    }
+                }
+                case "getConnection" -> {
+                    return connection;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "InstrumentedStatement[" + target + "]";
+                }
+                default -> {
+                    if (captureBindValues && args != null && args.length >= 2
+                            && args[0] instanceof Integer index && method.getName().startsWith("set")) {
+                        captureParameter(method.getName(), index, args[1]);
+                    }
+                }
+            }
+            return InstrumentedDataSource.invoke(target, method, args);
+        }
+
+        private void captureParameter(String setter, int index, Object value) {
+            if (parameters == null) {
+                parameters = new TreeMap<>();
+            }
+            // setNull(index, sqlType)의 두 번째 인자는 값이 아니라 타입이다
+            parameters.put(index, setter.equals("setNull") ? null : value);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String executedSql = executedSql(method, args);
+            SqlStats executed = stats != null ? stats
+                    : executedSql != null ? stats(executedSql) : statsFor(OTHER_FINGERPRINT);
+
+            long start = System.nanoTime();
+            Object result = null;
+            boolean failed = true;
+            try {
+                result = method.invoke(target, args);
+                failed = false;
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                long rows = failed ? -1 : rows(result);
+                executed.record(elapsed, rows, failed);
+                if (elapsed >= listenerThresholdNanos) {
+                    notifyListeners(new StatementExecution(executedSql, executed.getFingerprint(),
+                            elapsed, rows, failed, parameters == null ? Map.of() : new TreeMap<>(parameters)));
+                }
+            }
+        }
+
+        private String executedSql(Method method, Object[] args) {
+            if (sql != null) {
+                return sql;
+            }
+            if (args != null && args.length > 0 && args[0] instanceof String executed) {
+                return executed;
+            }
+            if (method.getName().equals("executeBatch") || method.getName().equals("executeLargeBatch")) {
+                String executed = batchSql;
+                batchSql = null;
+                return executed;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package hello.jdbcpractice.connection.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * HdrHistogram Recorder를 구간 단위로 읽는 히스토그램
+ *
+ * 기록(record)은 Recorder에 바로 넣는다. 락 없이 끝나므로 실행 경로에 두어도 된다.
+ * 읽을 때 마지막 갱신에서 refreshIntervalNanos가 지났으면 그동안 쌓인 값을 꺼내 분위수를 다시 계산한다.
+ * 그래서 읽는 값은 "직전 갱신부터 이번 갱신까지" 구간의 분위수다. 게이지 여러 개가 같은 구간을 보게 하려고 결과를 캐시해 둔다.
+ */
+class IntervalHistogram {
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final long refreshIntervalNanos;
+
+    private Percentiles latest = Percentiles.EMPTY;
+    private long lastRefreshNanos = System.nanoTime();
+
+    IntervalHistogram(long refreshIntervalNanos) {
+        this.refreshIntervalNanos = refreshIntervalNanos;
+    }
+
+    void record(long value) {
+        recorder.recordValue(Math.max(value, 0));
+    }
+
+    synchronized Percentiles percentiles() {
+        long now = System.nanoTime();
+        if (now - lastRefreshNanos >= refreshIntervalNanos) {
+            Histogram interval = recorder.getIntervalHistogram();
+            latest = interval.getTotalCount() == 0 ? Percentiles.EMPTY : new Percentiles(
+                    interval.getTotalCount(),
+                    interval.getValueAtPercentile(50.0),
+                    interval.getValueAtPercentile(99.0),
+                    interval.getValueAtPercentile(99.9),
+                    interval.getMaxValue());
+            lastRefreshNanos = now;
+        }
+        return latest;
+    }
+}
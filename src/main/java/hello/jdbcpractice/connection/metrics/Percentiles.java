@@ -0,0 +1,8 @@
+package hello.jdbcpractice.connection.metrics;
+
+/**
+ * 한 구간의 분위수 요약. 값의 단위는 기록한 쪽을 따른다 (시간은 나노초, 행 수는 행)
+ */
+public record Percentiles(long count, long p50, long p99, long p999, long max) {
+    public static final Percentiles EMPTY = new Percentiles(0, 0, 0, 0, 0);
+}
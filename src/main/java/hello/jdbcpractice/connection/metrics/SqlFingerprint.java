@@ -0,0 +1,29 @@
+package hello.jdbcpractice.connection.metrics;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 지문 (fingerprint)
+ *
+ * 리터럴을 ?로 바꾸고 공백과 대소문자를 맞춰서, 값만 다른 SQL이 같은 지문을 갖게 한다.
+ * IN 목록과 다중 행 VALUES는 길이와 상관없이 한 묶음으로 접는다. 배치 크기마다 지표가 갈라지지 않게 하기 위해서다.
+ */
+public final class SqlFingerprint {
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern NUMBER = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\bin ?\\(\\?(?: ?, ?\\?)*\\)");
+    private static final Pattern VALUES_ROWS = Pattern.compile("(\\(\\?(?: ?, ?\\?)*\\))(?: ?, ?\\(\\?(?: ?, ?\\?)*\\))+");
+
+    private SqlFingerprint() {
+    }
+
+    public static String of(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+        normalized = NUMBER.matcher(normalized).replaceAll("?");
+        normalized = IN_LIST.matcher(normalized).replaceAll("in (?)");
+        return VALUES_ROWS.matcher(normalized).replaceAll("$1");
+    }
+}
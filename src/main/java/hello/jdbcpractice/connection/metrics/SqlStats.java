@@ -0,0 +1,63 @@
+package hello.jdbcpractice.connection.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQL 지문 하나의 실행 지표
+ *
+ * 실행 시간(나노초)과 영향받은 행 수를 구간 히스토그램에 기록한다.
+ * 행 수는 executeUpdate, executeBatch처럼 드라이버가 돌려주는 경우에만 기록한다.
+ */
+public class SqlStats {
+    private final String fingerprint;
+    private final IntervalHistogram executeTime;
+    private final IntervalHistogram rowsAffected;
+
+    private final LongAdder executionCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+
+    SqlStats(String fingerprint, long refreshIntervalNanos) {
+        this.fingerprint = fingerprint;
+        this.executeTime = new IntervalHistogram(refreshIntervalNanos);
+        this.rowsAffected = new IntervalHistogram(refreshIntervalNanos);
+    }
+
+    /**
+     * @param rows 영향받은 행 수. 모르면 음수
+     */
+    void record(long elapsedNanos, long rows, boolean failed) {
+        executionCount.increment();
+        executeTime.record(elapsedNanos);
+        if (failed) {
+            errorCount.increment();
+        } else if (rows >= 0) {
+            rowsAffected.record(rows);
+        }
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 직전 구간의 실행 시간 분위수 (나노초)
+     */
+    public Percentiles getExecuteTime() {
+        return executeTime.percentiles();
+    }
+
+    /**
+     * 직전 구간의 영향받은 행 수 분위수
+     */
+    public Percentiles getRowsAffected() {
+        return rowsAffected.percentiles();
+    }
+
+    public long getExecutionCount() {
+        return executionCount.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+}
@@ -0,0 +1,14 @@
+package hello.jdbcpractice.connection.metrics;
+
+import java.util.Map;
+
+/**
+ * 실행이 끝난 문장 한 건
+ *
+ * @param sql          실행한 SQL. createStatement로 만든 문장의 빈 배치처럼 알 수 없으면 null
+ * @param rows         영향받은 행 수. 모르거나 실패했으면 -1
+ * @param bindValues   파라미터 번호 -> 바인드 값 (원본 그대로). 리스너가 요청하지 않았으면 비어 있다
+ */
+public record StatementExecution(String sql, String fingerprint, long elapsedNanos, long rows, boolean failed,
+                                 Map<Integer, Object> bindValues) {
+}
@@ -0,0 +1,25 @@
+package hello.jdbcpractice.connection.metrics;
+
+/**
+ * InstrumentedDataSource에서 실행이 끝난 문장을 받는 리스너
+ *
+ * afterExecute는 문장을 실행한 스레드에서 바로 호출되므로 오래 걸리는 일은 다른 스레드로 넘긴다.
+ */
+public interface StatementListener {
+
+    /**
+     * 실행 시간이 이 값 이상일 때만 afterExecute를 호출한다
+     */
+    default long thresholdNanos() {
+        return 0;
+    }
+
+    /**
+     * true면 문장마다 바인드 값을 모아서 StatementExecution에 넣어준다
+     */
+    default boolean capturesBindValues() {
+        return false;
+    }
+
+    void afterExecute(StatementExecution execution);
+}
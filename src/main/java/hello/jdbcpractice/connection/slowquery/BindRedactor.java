@@ -0,0 +1,38 @@
+package hello.jdbcpractice.connection.slowquery;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 느린 쿼리 기록에 남길 바인드 값을 가릴지 정하는 규칙
+ * 가린 값은 "****"로 남는다. EXPLAIN에는 원본 값을 쓰고 기록에는 남기지 않는다
+ */
+@FunctionalInterface
+public interface BindRedactor {
+
+    /**
+     * @param index  파라미터 번호 (1부터)
+     * @param column 파라미터가 들어가는 컬럼 이름 (소문자). SQL에서 알아낼 수 없으면 null
+     */
+    boolean redacts(int index, String column, Object value);
+
+    static BindRedactor none() {
+        return (index, column, value) -> false;
+    }
+
+    static BindRedactor all() {
+        return (index, column, value) -> true;
+    }
+
+    /**
+     * 지정한 컬럼에 들어가는 값만 가린다 (예: columns("money"))
+     */
+    static BindRedactor columns(String... columns) {
+        Set<String> names = Arrays.stream(columns)
+                .map(column -> column.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        return (index, column, value) -> column != null && names.contains(column);
+    }
+}
@@ -0,0 +1,58 @@
+package hello.jdbcpractice.connection.slowquery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL의 ? 자리마다 어느 컬럼에 들어가는 값인지 대강 알아낸다 (BindRedactor용)
+ *
+ * - insert into t (a, b) values (?, ?), (?, ?): 컬럼 목록 순서대로
+ * - 그 밖에는 바로 앞의 "컬럼 = ?", "컬럼 >= ?" 같은 비교에서
+ * money + ? 처럼 식 안에 있는 자리는 알 수 없으므로 null이다.
+ */
+final class ParameterColumns {
+    private static final Pattern INSERT = Pattern.compile("^\\s*insert\\s+into\\s+[\\w.]+\\s*\\(([^)]*)\\)\\s*values\\s*\\(");
+    private static final Pattern COMPARED_COLUMN = Pattern.compile("([a-z_][a-z0-9_]*)\\s*(?:=|<>|!=|<=|>=|<|>|\\slike)\\s*$");
+    private static final int LOOK_BEHIND = 64;
+
+    private ParameterColumns() {
+    }
+
+    /**
+     * @return 파라미터 번호 - 1 위치에 컬럼 이름. 알 수 없으면 null
+     */
+    static List<String> of(String sql) {
+        String lower = sql.toLowerCase(Locale.ROOT);
+        List<String> insertColumns = null;
+        int valuesStart = Integer.MAX_VALUE;
+        Matcher insert = INSERT.matcher(lower);
+        if (insert.find()) {
+            insertColumns = Arrays.stream(insert.group(1).split(",")).map(String::trim).toList();
+            valuesStart = insert.end();
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (c == '\'') {
+                // 문자열 리터럴 안의 ?는 파라미터가 아니다
+                int end = lower.indexOf('\'', i + 1);
+                i = end < 0 ? lower.length() : end;
+            } else if (c == '?') {
+                columns.add(i >= valuesStart
+                        ? insertColumns.get(columns.size() % insertColumns.size())
+                        : comparedColumn(lower, i));
+            }
+        }
+        return columns;
+    }
+
+    private static String comparedColumn(String sql, int position) {
+        Matcher matcher = COMPARED_COLUMN.matcher(sql.substring(Math.max(0, position - LOOK_BEHIND), position));
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
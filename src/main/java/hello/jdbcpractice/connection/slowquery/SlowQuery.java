@@ -0,0 +1,25 @@
+package hello.jdbcpractice.connection.slowquery;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 느린 쿼리 기록 한 건
+ *
+ * @param id         기록 순번
+ * @param bindValues 파라미터 순서대로 문자열로 바꾼 바인드 값. 가린 값은 "****"
+ * @param rows       영향받은 행 수. 모르거나 실패했으면 -1
+ * @param caller     SQL을 실행한 리포지토리 메서드 (클래스.메서드:줄)
+ * @param plan       실행 계획. 아직 잡지 못했거나 잡지 않는 SQL이면 null
+ */
+public record SlowQuery(long id, Instant capturedAt, String sql, String fingerprint, List<String> bindValues,
+                        long elapsedNanos, long rows, boolean failed, String caller, String plan) {
+
+    SlowQuery withPlan(String plan) {
+        return new SlowQuery(id, capturedAt, sql, fingerprint, bindValues, elapsedNanos, rows, failed, caller, plan);
+    }
+
+    public double elapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,288 @@
+package hello.jdbcpractice.connection.slowquery;
+
+import hello.jdbcpractice.connection.CallSite;
+import hello.jdbcpractice.connection.metrics.StatementExecution;
+import hello.jdbcpractice.connection.metrics.StatementListener;
+import hello.jdbcpractice.repository.dialect.H2Dialect;
+import hello.jdbcpractice.repository.dialect.SqlDialect;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 느린 쿼리 기록
+ *
+ * InstrumentedDataSource에 리스너로 붙이면 threshold보다 오래 걸린 실행을 기록한다.
+ * MemberRepositoryV4_2(StatementCache 포함), MemberRepositoryV5(JdbcTemplate) 모두 같은 DataSource를 거치므로 그대로 잡힌다.
+ * 기록하는 것: SQL, 바인드 값(BindRedactor로 가림), 실행 시간, 행 수, 실행한 리포지토리 메서드, 실행 계획
+ *
+ * 실행 계획은 별도 스레드에서 explainDataSource로 원본 바인드 값을 넣어 다시 뽑는다.
+ * select는 EXPLAIN ANALYZE로 실제 실행하면서, 데이터를 바꾸는 SQL은 실행하지 않고 EXPLAIN으로만 본다.
+ * select ... for update도 EXPLAIN으로만 본다. 실제로 실행하면 원래 트랜잭션이 잡은 행 락을 기다리거나 새로 락을 잡는다.
+ * 계획을 기다리는 작업이 많으면 새 작업은 버린다. 느린 쿼리가 몰릴 때 DB에 부하를 더 얹지 않기 위해서다.
+ *
+ * 기록은 capacity개짜리 링 버퍼라서 오래된 기록부터 덮어쓴다. recent, find로 조회하고 dump로 문자열로 뽑는다.
+ */
+@Slf4j
+public class SlowQueryLog implements StatementListener, AutoCloseable {
+    public static final Duration DEFAULT_THRESHOLD = Duration.ofMillis(100);
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final String REDACTED = "****";
+    private static final String CALLER_PACKAGE = "hello.jdbcpractice.repository.";
+    private static final int EXPLAIN_QUEUE_SIZE = 64;
+    private static final int MAX_VALUE_LENGTH = 100;
+    private static final Set<String> EXPLAINABLE = Set.of("select", "insert", "update", "delete", "merge");
+    private static final Pattern LOCKING_READ = Pattern.compile("\\bfor\\s+(update|share)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final DataSource explainDataSource;
+    private final SqlDialect dialect;
+    private final long thresholdNanos;
+    private final BindRedactor redactor;
+
+    private final SlowQuery[] entries;
+    private long nextId;
+
+    private final ThreadPoolExecutor explainExecutor;
+
+    private final LongAdder capturedCount = new LongAdder();
+    private final LongAdder explainedCount = new LongAdder();
+    private final LongAdder explainDroppedCount = new LongAdder();
+
+    /**
+     * @param explainDataSource 실행 계획을 뽑을 DataSource. null이면 계획을 잡지 않는다
+     */
+    public SlowQueryLog(DataSource explainDataSource) {
+        this(explainDataSource, new H2Dialect(), DEFAULT_THRESHOLD, DEFAULT_CAPACITY, BindRedactor.none());
+    }
+
+    public SlowQueryLog(DataSource explainDataSource, SqlDialect dialect, Duration threshold, int capacity,
+                        BindRedactor redactor) {
+        this.explainDataSource = explainDataSource;
+        this.dialect = dialect;
+        this.thresholdNanos = threshold.toNanos();
+        this.redactor = redactor;
+        this.entries = new SlowQuery[capacity];
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(EXPLAIN_QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-explain");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public long thresholdNanos() {
+        return thresholdNanos;
+    }
+
+    @Override
+    public boolean capturesBindValues() {
+        return true;
+    }
+
+    @Override
+    public void afterExecute(StatementExecution execution) {
+        String sql = execution.sql();
+        // explainDataSource가 계측 대상이어도 EXPLAIN 자체는 기록하지 않는다
+        if (sql == null || statementType(sql).equals("explain")) {
+            return;
+        }
+
+        List<String> bindValues = render(sql, execution.bindValues());
+        String caller = CallSite.find(className -> className.startsWith(CALLER_PACKAGE));
+        SlowQuery entry;
+        synchronized (this) {
+            entry = new SlowQuery(nextId++, Instant.now(), sql, execution.fingerprint(), bindValues,
+                    execution.elapsedNanos(), execution.rows(), execution.failed(), caller, null);
+            entries[slot(entry.id())] = entry;
+        }
+        capturedCount.increment();
+        log.warn("slow query elapsed={}ms caller={} sql={} binds={}",
+                String.format("%.1f", entry.elapsedMillis()), entry.caller(), sql, entry.bindValues());
+
+        if (explainDataSource != null && isExplainable(execution)) {
+            try {
+                explainExecutor.execute(() -> explain(entry.id(), sql, execution.bindValues()));
+            } catch (RejectedExecutionException e) {
+                explainDroppedCount.increment();
+            }
+        }
+    }
+
+    /**
+     * 남아 있는 기록. 오래된 것부터
+     */
+    public synchronized List<SlowQuery> recent() {
+        List<SlowQuery> result = new ArrayList<>(entries.length);
+        long from = Math.max(0, nextId - entries.length);
+        for (long id = from; id < nextId; id++) {
+            result.add(entries[slot(id)]);
+        }
+        return result;
+    }
+
+    public List<SlowQuery> find(Predicate<SlowQuery> condition) {
+        return recent().stream().filter(condition).toList();
+    }
+
+    /**
+     * 남아 있는 기록을 사람이 읽을 수 있는 문자열로
+     */
+    public String dump() {
+        return recent().stream().map(SlowQueryLog::format).collect(Collectors.joining());
+    }
+
+    public long getCapturedCount() {
+        return capturedCount.sum();
+    }
+
+    public long getExplainedCount() {
+        return explainedCount.sum();
+    }
+
+    /**
+     * 대기열이 가득 차서 실행 계획을 잡지 못한 수
+     */
+    public long getExplainDroppedCount() {
+        return explainDroppedCount.sum();
+    }
+
+    /**
+     * 기다리는 실행 계획 작업이 끝날 때까지 기다린다 (테스트, dump 직전용)
+     */
+    public void awaitExplains(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while ((explainExecutor.getActiveCount() > 0 || !explainExecutor.getQueue().isEmpty())
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    public void close() {
+        explainExecutor.shutdownNow();
+    }
+
+    /**
+     * 아직 링 버퍼에 남아 있으면 실행 계획을 채운다
+     */
+    private synchronized void attachPlan(long id, String plan) {
+        SlowQuery entry = entries[slot(id)];
+        if (entry != null && entry.id() == id) {
+            entries[slot(id)] = entry.withPlan(plan);
+        }
+    }
+
+    private int slot(long id) {
+        return (int) (id % entries.length);
+    }
+
+    private boolean isExplainable(StatementExecution execution) {
+        if (!EXPLAINABLE.contains(statementType(execution.sql()))) {
+            return false;
+        }
+        // 스트림 파라미터는 한 번 읽으면 다시 넣을 수 없다
+        return execution.bindValues().values().stream()
+                .noneMatch(value -> value instanceof InputStream || value instanceof Reader
+                        || value instanceof Blob || value instanceof Clob);
+    }
+
+    /**
+     * SQL의 첫 단어 (소문자)
+     */
+    private static String statementType(String sql) {
+        String stripped = sql.stripLeading();
+        int end = 0;
+        while (end < stripped.length() && Character.isLetter(stripped.charAt(end))) {
+            end++;
+        }
+        return stripped.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    private void explain(long id, String sql, Map<Integer, Object> bindValues) {
+        boolean analyze = statementType(sql).equals("select") && !LOCKING_READ.matcher(sql).find();
+        String plan;
+        try (Connection con = explainDataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(dialect.explainSql(sql, analyze))) {
+            for (Map.Entry<Integer, Object> bind : bindValues.entrySet()) {
+                pstmt.setObject(bind.getKey(), bind.getValue());
+            }
+            StringBuilder lines = new StringBuilder();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lines.append(rs.getString(1)).append('\n');
+                }
+            }
+            plan = lines.toString().strip();
+            explainedCount.increment();
+        } catch (SQLException e) {
+            log.debug("explain failed sql={}", sql, e);
+            plan = "explain failed: " + e.getMessage();
+        }
+        attachPlan(id, plan);
+    }
+
+    private List<String> render(String sql, Map<Integer, Object> bindValues) {
+        if (bindValues.isEmpty()) {
+            return List.of();
+        }
+        List<String> columns = ParameterColumns.of(sql);
+        List<String> rendered = new ArrayList<>(bindValues.size());
+        bindValues.forEach((index, value) -> {
+            String column = index - 1 < columns.size() ? columns.get(index - 1) : null;
+            rendered.add(redactor.redacts(index, column, value) ? REDACTED : render(value));
+        });
+        return List.copyOf(rendered);
+    }
+
+    private static String render(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof byte[] bytes) {
+            return "byte[" + bytes.length + "]";
+        }
+        if (value instanceof InputStream || value instanceof Reader || value instanceof Blob || value instanceof Clob) {
+            return "<" + value.getClass().getSimpleName() + ">";
+        }
+        String text = String.valueOf(value);
+        if (text.length() > MAX_VALUE_LENGTH) {
+            text = text.substring(0, MAX_VALUE_LENGTH) + "...";
+        }
+        return value instanceof String ? "'" + text + "'" : text;
+    }
+
+    private static String format(SlowQuery entry) {
+        StringBuilder text = new StringBuilder()
+                .append('#').append(entry.id()).append(' ').append(entry.capturedAt())
+                .append(String.format(" %.1fms", entry.elapsedMillis()))
+                .append(" rows=").append(entry.rows())
+                .append(entry.failed() ? " FAILED" : "")
+                .append(" caller=").append(entry.caller()).append('\n')
+                .append("  sql: ").append(entry.sql()).append('\n')
+                .append("  binds: ").append(entry.bindValues()).append('\n');
+        if (entry.plan() != null) {
+            text.append("  plan:\n");
+            entry.plan().lines().forEach(line -> text.append("    ").append(line).append('\n'));
+        }
+        return text.toString();
+    }
+}
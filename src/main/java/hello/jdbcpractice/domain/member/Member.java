@@ -7,6 +7,8 @@ public class Member {
 
     private String memberId;
     private int money;
+    // 낙관적 락 버전. 변경될 때마다 1씩 증가한다
+    private long version;
 
     public Member() { }
 
@@ -14,4 +16,10 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
 }
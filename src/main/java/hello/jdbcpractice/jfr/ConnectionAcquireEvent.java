@@ -0,0 +1,36 @@
+package hello.jdbcpractice.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * 커넥션 획득
+ * InstrumentedDataSource에서만 남긴다. 리포지토리, JdbcTemplate, 트랜잭션 매니저가 꺼내는 커넥션이 모두 거기를 지나므로
+ * 한 번 꺼낼 때 이벤트도 하나다. 트랜잭션에 이미 묶인 커넥션을 다시 받는 것은 DataSource를 거치지 않아 남지 않는다.
+ */
+@Name("hello.jdbcpractice.ConnectionAcquire")
+@Label("Connection Acquire")
+@Category({"JDBC Practice", "Connection"})
+@StackTrace(false)
+public class ConnectionAcquireEvent extends Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Success")
+    boolean success;
+
+    public static ConnectionAcquireEvent start() {
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(String source, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.source = source;
+            this.success = success;
+            commit();
+        }
+    }
+}
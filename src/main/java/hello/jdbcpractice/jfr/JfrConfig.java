@@ -0,0 +1,20 @@
+package hello.jdbcpractice.jfr;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 트랜잭션 JFR 이벤트 리스너 등록 (기본 켜짐, jdbcpractice.jfr.enabled=false로 끈다)
+ * 스프링 부트가 TransactionExecutionListener 빈을 자동 구성된 트랜잭션 매니저에 붙인다.
+ * JFR 녹화 중이 아니면 이벤트가 비활성이라 비용이 거의 없다.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "jdbcpractice.jfr", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class JfrConfig {
+
+    @Bean
+    JfrTransactionListener jfrTransactionListener() {
+        return new JfrTransactionListener();
+    }
+}
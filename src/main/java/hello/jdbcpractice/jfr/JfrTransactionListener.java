@@ -0,0 +1,59 @@
+package hello.jdbcpractice.jfr;
+
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 트랜잭션 매니저가 새 트랜잭션을 시작하고 끝낼 때 TransactionEvent를 남긴다
+ *
+ * @Transactional, TransactionTemplate, 트랜잭션 매니저를 직접 쓰는 서비스 모두 같은 매니저를 거치므로 한 곳에서 잡힌다.
+ * 기존 트랜잭션에 참여하는 호출은 매니저가 리스너를 부르지 않으므로 바깥 트랜잭션 하나로만 남는다.
+ * 이벤트가 비활성이면 beforeBegin에서 바로 돌아가서 스레드 로컬도 건드리지 않는다.
+ */
+public class JfrTransactionListener implements TransactionExecutionListener {
+
+    // 스레드마다 진행 중인 트랜잭션 -> 이벤트. REQUIRES_NEW로 겹칠 수 있어서 맵으로 둔다
+    private final ThreadLocal<Map<TransactionExecution, TransactionEvent>> events =
+            ThreadLocal.withInitial(IdentityHashMap::new);
+
+    @Override
+    public void beforeBegin(TransactionExecution transaction) {
+        TransactionEvent event = new TransactionEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.begin();
+        events.get().put(transaction, event);
+    }
+
+    @Override
+    public void afterBegin(TransactionExecution transaction, Throwable beginFailure) {
+        if (beginFailure != null) {
+            finish(transaction, TransactionEvent.BEGIN_FAILED);
+        }
+    }
+
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+        finish(transaction, commitFailure == null ? TransactionEvent.COMMIT : TransactionEvent.COMMIT_FAILED);
+    }
+
+    @Override
+    public void afterRollback(TransactionExecution transaction, Throwable rollbackFailure) {
+        finish(transaction, rollbackFailure == null ? TransactionEvent.ROLLBACK : TransactionEvent.ROLLBACK_FAILED);
+    }
+
+    private void finish(TransactionExecution transaction, String outcome) {
+        Map<TransactionExecution, TransactionEvent> current = events.get();
+        TransactionEvent event = current.remove(transaction);
+        if (current.isEmpty()) {
+            events.remove();
+        }
+        if (event != null) {
+            event.finish(transaction.getTransactionName(), transaction.isReadOnly(), outcome);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package hello.jdbcpractice.jfr;
+
+import jdk.jfr.*;
+
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * MemberRepository 메서드 한 번 실행 (커넥션 획득부터 반납까지)
+ *
+ * JFR이 꺼져 있거나 이 이벤트가 비활성이면 start/finish는 거의 비용이 없다.
+ * 필드 값은 shouldCommit()일 때만 채우므로 memberId 해시도 그때만 계산한다.
+ * memberId는 그대로 남기지 않고 해시만 남긴다. 같은 회원의 호출끼리 묶어 보는 용도다.
+ * 리포지토리 메서드는 record로 감싸서 쓴다. 예외가 나면 행 수를 -1로 남긴다.
+ */
+@Name("hello.jdbcpractice.RepositoryOperation")
+@Label("Repository Operation")
+@Category({"JDBC Practice", "Repository"})
+@StackTrace(false)
+public class RepositoryOperationEvent extends Event {
+
+    @Label("Repository")
+    String repository;
+
+    @Label("Method")
+    String method;
+
+    @Label("SQL Id")
+    String sqlId;
+
+    @Label("Member Id Hash")
+    int memberIdHash;
+
+    @Label("Rows")
+    @Description("영향받거나 읽은 행 수. 실패했으면 -1")
+    long rows;
+
+    public static RepositoryOperationEvent start() {
+        RepositoryOperationEvent event = new RepositoryOperationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * operation을 실행하고 이벤트 하나로 남긴다
+     *
+     * @param rows operation 결과에서 행 수를 뽑는다
+     */
+    public static <T> T record(String repository, String method, String sqlId, String memberId,
+                               Supplier<T> operation, ToLongFunction<? super T> rows) {
+        RepositoryOperationEvent event = start();
+        long count = -1;
+        try {
+            T result = operation.get();
+            count = rows.applyAsLong(result);
+            return result;
+        } finally {
+            event.finish(repository, method, sqlId, memberId, count);
+        }
+    }
+
+    /**
+     * 행 수를 돌려주는 operation을 실행하고 이벤트 하나로 남긴다
+     *
+     * @return operation이 돌려준 행 수
+     */
+    public static long record(String repository, String method, String sqlId, String memberId,
+                              LongSupplier operation) {
+        RepositoryOperationEvent event = start();
+        long count = -1;
+        try {
+            count = operation.getAsLong();
+            return count;
+        } finally {
+            event.finish(repository, method, sqlId, memberId, count);
+        }
+    }
+
+    public void finish(String repository, String method, String sqlId, String memberId, long rows) {
+        end();
+        if (shouldCommit()) {
+            this.repository = repository;
+            this.method = method;
+            this.sqlId = sqlId;
+            this.memberIdHash = hash(memberId);
+            this.rows = rows;
+            commit();
+        }
+    }
+
+    /**
+     * String.hashCode를 한 번 더 섞어서 짧은 memberId를 해시에서 되짚기 어렵게 한다
+     */
+    static int hash(String memberId) {
+        if (memberId == null) {
+            return 0;
+        }
+        int h = memberId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
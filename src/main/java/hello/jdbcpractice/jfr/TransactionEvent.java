@@ -0,0 +1,39 @@
+package hello.jdbcpractice.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * 트랜잭션 하나 (시작부터 커밋 또는 롤백까지)
+ * 시작 시각과 길이는 이벤트의 startTime, duration으로 보고, 어떻게 끝났는지는 outcome으로 본다
+ */
+@Name("hello.jdbcpractice.Transaction")
+@Label("Transaction")
+@Category({"JDBC Practice", "Transaction"})
+@StackTrace(false)
+public class TransactionEvent extends Event {
+    public static final String COMMIT = "commit";
+    public static final String ROLLBACK = "rollback";
+    public static final String COMMIT_FAILED = "commit failed";
+    public static final String ROLLBACK_FAILED = "rollback failed";
+    public static final String BEGIN_FAILED = "begin failed";
+
+    @Label("Name")
+    @Description("트랜잭션 이름. @Transactional이면 클래스.메서드")
+    String name;
+
+    @Label("Read Only")
+    boolean readOnly;
+
+    @Label("Outcome")
+    String outcome;
+
+    void finish(String name, boolean readOnly, String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.name = name;
+            this.readOnly = readOnly;
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package hello.jdbcpractice.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 일괄 작업 결과
+ * 한 행이 실패해도 나머지 행은 계속 처리하고, 실패한 행과 원인만 따로 모아서 돌려준다
+ */
+public class BatchResult<T> {
+    private int successCount;
+    private final List<Failure<T>> failures = new ArrayList<>();
+
+    public void success() {
+        successCount++;
+    }
+
+    public void success(int count) {
+        successCount += count;
+    }
+
+    public void fail(T item, RuntimeException cause) {
+        failures.add(new Failure<>(item, cause));
+    }
+
+    /**
+     * 나누어 처리한 결과를 하나로 합친다
+     */
+    public void merge(BatchResult<T> other) {
+        successCount += other.successCount;
+        failures.addAll(other.failures);
+    }
+
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+
+    public int getTotalCount() {
+        return successCount + failures.size();
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    public List<Failure<T>> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    public record Failure<T>(T item, RuntimeException cause) {
+    }
+}
@@ -0,0 +1,126 @@
+package hello.jdbcpractice.repository;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JDBC 배치 처리 공통 로직
+ * 청크 크기 결정, 다중 행 VALUES SQL 생성, 배치 결과(updateCounts) 해석
+ */
+final class BatchSupport {
+
+    // 한 번의 executeBatch로 보낼 최대 행 수
+    static final int MAX_BATCH_SIZE = 500;
+    // 다중 행 VALUES 한 문장에 넣을 최대 바인드 파라미터 수
+    static final int MAX_PARAMETERS_PER_STATEMENT = 1000;
+    // IN 목록 크기는 이 값들로만 맞춘다. SQL 모양이 몇 가지로 고정되어 문장 캐시가 유지된다
+    static final int[] IN_LIST_SIZES = {1, 4, 16, 64, 256};
+
+    private BatchSupport() {
+    }
+
+    /**
+     * 전체 건수를 보고 청크 크기를 정한다
+     * 마지막 청크만 작게 남지 않도록 청크 수를 먼저 정한 뒤 고르게 나눈다 (예: 501건 -> 251, 250)
+     */
+    static int chunkSize(int total, int maxChunkSize) {
+        if (total <= maxChunkSize) {
+            return Math.max(total, 1);
+        }
+        int chunks = (total + maxChunkSize - 1) / maxChunkSize;
+        return (total + chunks - 1) / chunks;
+    }
+
+    static int batchSize(int total) {
+        return chunkSize(total, MAX_BATCH_SIZE);
+    }
+
+    static int multiRowSize(int total, int columns) {
+        return chunkSize(total, MAX_PARAMETERS_PER_STATEMENT / columns);
+    }
+
+    static <T> List<List<T>> chunk(Collection<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> current = new ArrayList<>(size);
+        for (T item : items) {
+            current.add(item);
+            if (current.size() == size) {
+                chunks.add(current);
+                current = new ArrayList<>(size);
+            }
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    /**
+     * "insert into member (member_id, money) values" + "(?, ?), (?, ?), ..." 형태의 다중 행 SQL
+     */
+    static String multiRowSql(String insertPrefix, int columns, int rows) {
+        StringBuilder row = new StringBuilder("(");
+        for (int i = 0; i < columns; i++) {
+            row.append(i == 0 ? "?" : ", ?");
+        }
+        row.append(")");
+
+        StringBuilder sql = new StringBuilder(insertPrefix);
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? " " : ", ").append(row);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * count개 이상을 담을 수 있는 가장 작은 IN 목록 크기
+     */
+    static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (count <= size) {
+                return size;
+            }
+        }
+        return IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    }
+
+    static int maxInListSize() {
+        return IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    }
+
+    /**
+     * "select * from member where member_id in" + "(?, ?, ...)" 형태의 SQL
+     */
+    static String inListSql(String prefix, int size) {
+        StringBuilder sql = new StringBuilder(prefix).append(" (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")").toString();
+    }
+
+    /**
+     * IN 목록 크기에 맞게 마지막 값을 반복해서 채운다
+     * 같은 값이 IN에 여러 번 들어가도 결과 행은 한 번만 나온다
+     */
+    static List<String> padInList(List<String> ids) {
+        int size = inListSize(ids.size());
+        List<String> padded = new ArrayList<>(size);
+        padded.addAll(ids);
+        String last = ids.get(ids.size() - 1);
+        while (padded.size() < size) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    /**
+     * executeBatch 결과에서 index 번째 행이 반영되었는지 확인
+     * 드라이버가 중간에 멈춰 updateCounts가 짧게 오면 그 뒤 행들은 실행되지 않은 것으로 본다
+     */
+    static boolean applied(int[] updateCounts, int index) {
+        return index < updateCounts.length && updateCounts[index] != Statement.EXECUTE_FAILED;
+    }
+}
@@ -0,0 +1,9 @@
+package hello.jdbcpractice.repository;
+
+/**
+ * DB에 바로 읽고 쓰는 리포지토리가 지원하는 기능 전부 (행 락, 전체 조회, 페이지 조회, 낙관적 갱신)
+ * MemberRepositoryV4_2, MemberRepositoryV5와 그 위에 얹는 데코레이터(캐시, 샤드)가 구현한다.
+ */
+public interface JdbcMemberRepository extends LockingMemberRepository, StreamingMemberRepository,
+        PageableMemberRepository, VersionedMemberRepository {
+}
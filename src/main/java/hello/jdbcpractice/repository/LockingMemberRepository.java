@@ -0,0 +1,15 @@
+package hello.jdbcpractice.repository;
+
+import hello.jdbcpractice.domain.member.Member;
+
+/**
+ * DB 행 락을 잡고 조회할 수 있는 MemberRepository
+ */
+public interface LockingMemberRepository extends MemberRepository {
+
+    /**
+     * select ... for update로 행 락을 잡고 조회. 락은 트랜잭션이 끝날 때 풀리므로 트랜잭션 안에서 호출해야 한다
+     * 여러 회원을 잠글 때는 항상 같은 순서(memberId 순 등)로 잠가야 교착 상태가 생기지 않는다.
+     */
+    Member findByIdForUpdate(String memberId);
+}
@@ -0,0 +1,18 @@
+package hello.jdbcpractice.repository;
+
+import hello.jdbcpractice.domain.member.Member;
+
+import java.util.List;
+
+/**
+ * 회원 목록 한 페이지
+ *
+ * @param members       이번 페이지 회원 (정렬 순서대로)
+ * @param nextPageToken 다음 페이지를 읽을 때 넘기는 토큰. 마지막 페이지면 null
+ */
+public record MemberPage(List<Member> members, String nextPageToken) {
+
+    public boolean hasNext() {
+        return nextPageToken != null;
+    }
+}
@@ -1,10 +1,163 @@
 package hello.jdbcpractice.repository;
 
 import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import org.springframework.dao.EmptyResultDataAccessException;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 회원 저장소의 기본 기능
+ * 행 락, 전체 조회, 페이지 조회, 낙관적 갱신은 지원하는 구현체만 따로 구현한다
+ * (LockingMemberRepository, StreamingMemberRepository, PageableMemberRepository, VersionedMemberRepository).
+ */
 public interface MemberRepository {
     Member save(Member member);
     Member findById(String memberId);
     void update(String memberId, int money);
     void delete(String memberId);
+
+    /**
+     * 여러 회원을 한 번에 저장
+     * 기본 구현은 save를 반복 호출한다. JDBC 배치를 쓰는 구현체는 재정의한다.
+     * 중복 키 등으로 실패한 행은 예외를 던지지 않고 결과에 담아서 돌려준다.
+     */
+    default BatchResult<Member> saveAll(Collection<Member> members) {
+        BatchResult<Member> result = new BatchResult<>();
+        for (Member member : members) {
+            try {
+                save(member);
+                result.success();
+            } catch (RuntimeException e) {
+                result.fail(member, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 여러 회원의 money를 한 번에 덮어쓴다 (memberId -> money)
+     * 없는 회원은 update처럼 아무 일도 하지 않는다. 행 락 순서가 정해지도록 memberId 순서로 반영한다.
+     * 기본 구현은 update를 반복 호출한다. JDBC 배치를 쓰는 구현체는 재정의한다.
+     */
+    default void updateAll(Map<String, Integer> balances) {
+        new TreeMap<>(balances).forEach(this::update);
+    }
+
+    /**
+     * 여러 회원을 한 번에 삭제. 없는 회원은 건너뛴다
+     * 기본 구현은 delete를 반복 호출한다. JDBC 배치를 쓰는 구현체는 재정의한다.
+     */
+    default void deleteAll(Collection<String> memberIds) {
+        new TreeSet<>(memberIds).forEach(this::delete);
+    }
+
+    /**
+     * 여러 회원을 한 번에 조회
+     * 없는 회원은 예외 없이 결과 Map에서 빠진다.
+     * 기본 구현은 findById를 반복 호출한다. IN 목록으로 묶어 조회하는 구현체는 재정의한다.
+     */
+    default Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new LinkedHashMap<>();
+        for (String memberId : memberIds) {
+            try {
+                result.put(memberId, findById(memberId));
+            } catch (NoSuchElementException | EmptyResultDataAccessException e) {
+                // 없는 회원은 건너뛴다
+            }
+        }
+        return result;
+    }
+
+    /**
+     * fromId에서 toId로 money만큼 이체
+     * 잔액이 부족하면 InsufficientBalanceException, 회원이 없으면 NoSuchElementException을 던진다.
+     * 두 회원을 따로 갱신하므로 반드시 트랜잭션 안에서 호출해야 한다.
+     * 기본 구현은 읽고 계산해서 덮어쓴다. 상대 갱신(money = money - ?)을 쓰는 구현체는 재정의한다.
+     */
+    default void transfer(String fromId, String toId, int money) {
+        Member fromMember = findById(fromId);
+        Member toMember = findById(toId);
+        if (fromMember.getMoney() < money) {
+            throw new InsufficientBalanceException("balance not enough memberId:" + fromId);
+        }
+
+        update(fromId, fromMember.getMoney() - money);
+        update(toId, toMember.getMoney() + money);
+    }
+
+    /**
+     * memberId의 잔액에서 money만큼 출금
+     * 잔액이 부족하면 InsufficientBalanceException, 회원이 없으면 NoSuchElementException을 던진다.
+     * transfer의 출금 절반만 따로 쓸 때(샤드가 다른 회원 간 이체 등) 사용한다.
+     */
+    default void withdraw(String memberId, int money) {
+        Member member = findById(memberId);
+        if (member.getMoney() < money) {
+            throw new InsufficientBalanceException("balance not enough memberId:" + memberId);
+        }
+        update(memberId, member.getMoney() - money);
+    }
+
+    /**
+     * memberId의 잔액에 money만큼 입금. 회원이 없으면 NoSuchElementException을 던진다
+     */
+    default void deposit(String memberId, int money) {
+        Member member = findById(memberId);
+        update(memberId, member.getMoney() + money);
+    }
+
+    /**
+     * 회원별 금액 변화량(money = money + delta)을 한 번에 반영
+     * 결과 잔액이 음수가 되는 회원이 있으면 InsufficientBalanceException, 회원이 없으면 NoSuchElementException을 던진다.
+     * 그 전까지 반영한 회원은 되돌리지 않으므로 트랜잭션 안에서 호출해서 롤백에 맡겨야 한다.
+     * 여러 트랜잭션이 서로 반대 순서로 행 락을 잡지 않도록 memberId 순서로 반영한다.
+     * 기본 구현은 deposit/withdraw를 반복 호출한다. 배치 상대 갱신을 쓰는 구현체는 재정의한다.
+     */
+    default void applyDeltas(Map<String, Integer> deltas) {
+        for (Map.Entry<String, Integer> entry : new TreeMap<>(deltas).entrySet()) {
+            int delta = entry.getValue();
+            if (delta > 0) {
+                deposit(entry.getKey(), delta);
+            } else if (delta < 0) {
+                withdraw(entry.getKey(), -delta);
+            }
+        }
+    }
+
+    /**
+     * 회원이 없으면 저장하고, 있으면 money를 덮어쓴다
+     * 기본 구현은 조회 후 save 또는 update를 호출한다. MERGE 등 한 문장으로 처리하는 구현체는 재정의한다.
+     */
+    default Member upsert(Member member) {
+        if (findAllByIds(List.of(member.getMemberId())).isEmpty()) {
+            save(member);
+        } else {
+            update(member.getMemberId(), member.getMoney());
+        }
+        return member;
+    }
+
+    /**
+     * 여러 회원을 한 번에 upsert
+     * 실패한 행은 예외를 던지지 않고 결과에 담아서 돌려준다.
+     */
+    default BatchResult<Member> upsertAll(Collection<Member> members) {
+        BatchResult<Member> result = new BatchResult<>();
+        for (Member member : members) {
+            try {
+                upsert(member);
+                result.success();
+            } catch (RuntimeException e) {
+                result.fail(member, e);
+            }
+        }
+        return result;
+    }
 }
@@ -1,6 +1,7 @@
 package hello.jdbcpractice.repository;
 
 import hello.jdbcpractice.connection.DBConnectionUtil;
+import hello.jdbcpractice.connection.StatementCache;
 import hello.jdbcpractice.domain.member.Member;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.datasource.DataSourceUtils;
@@ -18,9 +19,15 @@ import java.util.NoSuchElementException;
 @Slf4j
 public class MemberRepositoryV3 {
     private final DataSource dataSource;
+    private final StatementCache statementCache;
 
     public MemberRepositoryV3(DataSource dataSource) {
+        this(dataSource, new StatementCache());
+    }
+
+    public MemberRepositoryV3(DataSource dataSource, StatementCache statementCache) {
         this.dataSource = dataSource;
+        this.statementCache = statementCache;
     }
 
     public Member save(Member member) throws SQLException {
@@ -31,7 +38,7 @@ public class MemberRepositoryV3 {
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
             pstmt.executeUpdate();
@@ -54,7 +61,7 @@ public class MemberRepositoryV3 {
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setString(1, memberId);
 
             rs = pstmt.executeQuery();
@@ -83,7 +90,7 @@ public class MemberRepositoryV3 {
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
             int resultSize = pstmt.executeUpdate();
@@ -104,7 +111,7 @@ public class MemberRepositoryV3 {
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setString(1, memberId);
             pstmt.executeUpdate();
         } catch (SQLException e) {
@@ -117,7 +124,7 @@ public class MemberRepositoryV3 {
 
     private void close(Connection conn, Statement stmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(stmt);
+        statementCache.release(stmt);
         DataSourceUtils.releaseConnection(conn, dataSource);
     }
 
@@ -1,6 +1,7 @@
 package hello.jdbcpractice.repository;
 
 import hello.jdbcpractice.connection.DBConnectionUtil;
+import hello.jdbcpractice.connection.StatementCache;
 import hello.jdbcpractice.domain.member.Member;
 import hello.jdbcpractice.repository.ex.MyDBException;
 import lombok.extern.slf4j.Slf4j;
@@ -20,9 +21,15 @@ import java.util.NoSuchElementException;
 @Slf4j
 public class MemberRepositoryV4_1 implements MemberRepository {
     private final DataSource dataSource;
+    private final StatementCache statementCache;
 
     public MemberRepositoryV4_1(DataSource dataSource) {
+        this(dataSource, new StatementCache());
+    }
+
+    public MemberRepositoryV4_1(DataSource dataSource, StatementCache statementCache) {
         this.dataSource = dataSource;
+        this.statementCache = statementCache;
     }
 
     @Override
@@ -34,7 +41,7 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
             pstmt.executeUpdate();
@@ -57,7 +64,7 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setString(1, memberId);
 
             rs = pstmt.executeQuery();
@@ -86,7 +93,7 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
             int resultSize = pstmt.executeUpdate();
@@ -107,7 +114,7 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setString(1, memberId);
             pstmt.executeUpdate();
         } catch (SQLException e) {
@@ -119,7 +126,7 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 
     private void close(Connection conn, Statement stmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(stmt);
+        statementCache.release(stmt);
         DataSourceUtils.releaseConnection(conn, dataSource);
     }
 
@@ -1,9 +1,16 @@
 package hello.jdbcpractice.repository;
 
 import hello.jdbcpractice.connection.DBConnectionUtil;
+import hello.jdbcpractice.connection.StatementCache;
 import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.jfr.RepositoryOperationEvent;
+import hello.jdbcpractice.repository.dialect.H2Dialect;
+import hello.jdbcpractice.repository.dialect.SqlDialect;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
 import hello.jdbcpractice.repository.ex.MyDBException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
@@ -11,119 +18,782 @@ import org.springframework.jdbc.support.SQLExceptionTranslator;
 
 import javax.sql.DataSource;
 import java.sql.*;
-import java.util.NoSuchElementException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * SQLExceptionTranslator 추가
  */
 @Slf4j
-public class MemberRepositoryV4_2 implements MemberRepository {
+public class MemberRepositoryV4_2 implements JdbcMemberRepository {
+    private static final String INSERT_SQL = "insert into member (member_id, money) values (?, ?)";
+    private static final String FIND_BY_ID_SQL = "select * from member where member_id = ?";
+    private static final String FIND_BY_ID_FOR_UPDATE_SQL = "select * from member where member_id = ? for update";
+    private static final String UPDATE_SQL = "update member set money=?, version = version + 1 where member_id=?";
+    private static final String COMPARE_AND_UPDATE_SQL = "update member set money = ?, version = version + 1 where member_id = ? and version = ?";
+    private static final String WITHDRAW_SQL = "update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?";
+    private static final String DEPOSIT_SQL = "update member set money = money + ?, version = version + 1 where member_id = ?";
+    private static final String APPLY_DELTA_SQL = "update member set money = money + ?, version = version + 1 where member_id = ? and money + ? >= 0";
+    // 시작 시 워밍업에서 미리 준비할 SQL (조회, 이체 경로)
+    private static final List<String> HOT_PATH_SQL = List.of(INSERT_SQL, FIND_BY_ID_SQL, FIND_BY_ID_FOR_UPDATE_SQL,
+            UPDATE_SQL, COMPARE_AND_UPDATE_SQL, WITHDRAW_SQL, DEPOSIT_SQL, APPLY_DELTA_SQL);
+    // JFR 이벤트에 남길 이름
+    private static final String REPOSITORY_NAME = "MemberRepositoryV4_2";
+
     private final DataSource dataSource;
     private final SQLExceptionTranslator exTranslator;
+    private final SqlDialect dialect;
+    private final StatementCache statementCache;
+    // saveAll에서 addBatch 대신 다중 행 VALUES 한 문장으로 보낼지 여부
+    private final boolean multiRowInsert;
 
     public MemberRepositoryV4_2(DataSource dataSource) {
+        this(dataSource, false);
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, boolean multiRowInsert) {
+        this(dataSource, new H2Dialect(), multiRowInsert);
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, SqlDialect dialect, boolean multiRowInsert) {
+        this(dataSource, dialect, multiRowInsert, new StatementCache());
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, SqlDialect dialect, boolean multiRowInsert,
+                                StatementCache statementCache) {
         this.dataSource = dataSource;
         this.exTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        this.dialect = dialect;
+        this.multiRowInsert = multiRowInsert;
+        this.statementCache = statementCache;
     }
 
     @Override
     public Member save(Member member) {
         String sql = "insert into member (member_id, money) values (?, ?)";
 
+        recorded("save", "INSERT", member.getMemberId(), () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = getConnection();
+                pstmt = statementCache.prepare(conn, sql);
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setInt(2, member.getMoney());
+                return pstmt.executeUpdate();
+            } catch (SQLException e) {
+                throw exTranslator.translate("save", sql, e);
+            } finally {
+                close(conn, pstmt, null);
+            }
+        });
+        return member;
+    }
+
+    /**
+     * addBatch/executeBatch로 청크 단위 저장
+     * 청크 안에서 실패한 행만 한 건씩 다시 실행해서 행별 원인을 결과에 담는다
+     */
+    @Override
+    public BatchResult<Member> saveAll(Collection<Member> members) {
+        BatchResult<Member> result = new BatchResult<>();
+        if (members.isEmpty()) {
+            return result;
+        }
+
         Connection conn = null;
+        try {
+            conn = getConnection();
+            if (multiRowInsert) {
+                for (List<Member> chunk : BatchSupport.chunk(members, BatchSupport.multiRowSize(members.size(), 2))) {
+                    saveMultiRow(conn, chunk, result);
+                }
+            } else {
+                for (List<Member> chunk : BatchSupport.chunk(members, BatchSupport.batchSize(members.size()))) {
+                    writeBatch(conn, "saveAll", INSERT_SQL, chunk, result);
+                }
+            }
+            return result;
+        } finally {
+            DataSourceUtils.releaseConnection(conn, dataSource);
+        }
+    }
+
+    /**
+     * addBatch/executeBatch로 한 청크를 실행
+     * 드라이버가 실패로 보고했거나 실행하지 못한 행만 한 건씩 다시 실행한다
+     */
+    private void writeBatch(Connection conn, String task, String sql, List<Member> chunk, BatchResult<Member> result) {
         PreparedStatement pstmt = null;
+        int[] updateCounts;
 
         try {
-            conn = getConnection();
+            pstmt = statementCache.prepare(conn, sql);
+            for (Member member : chunk) {
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setInt(2, member.getMoney());
+                pstmt.addBatch();
+            }
+            updateCounts = pstmt.executeBatch();
+        } catch (BatchUpdateException e) {
+            updateCounts = e.getUpdateCounts();
+        } catch (SQLException e) {
+            throw exTranslator.translate(task, sql, e);
+        } finally {
+            statementCache.release(pstmt);
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            if (BatchSupport.applied(updateCounts, i)) {
+                result.success();
+            } else {
+                writeOne(conn, task, sql, chunk.get(i), result);
+            }
+        }
+    }
+
+    private void saveMultiRow(Connection conn, List<Member> chunk, BatchResult<Member> result) {
+        String sql = BatchSupport.multiRowSql("insert into member (member_id, money) values", 2, chunk.size());
+
+        PreparedStatement pstmt = null;
+
+        try {
+            // 청크 크기마다 SQL 모양이 달라서 문장 캐시를 거치지 않는다
             pstmt = conn.prepareStatement(sql);
+            int index = 1;
+            for (Member member : chunk) {
+                pstmt.setString(index++, member.getMemberId());
+                pstmt.setInt(index++, member.getMoney());
+            }
+            pstmt.executeUpdate();
+            result.success(chunk.size());
+        } catch (SQLException e) {
+            // 한 문장이라 전부 실패한 것이므로 배치로 다시 보내서 행별로 가려낸다
+            log.info("multi-row insert failed, fallback to batch. size={}", chunk.size());
+            JdbcUtils.closeStatement(pstmt);
+            pstmt = null;
+            writeBatch(conn, "saveAll", INSERT_SQL, chunk, result);
+        } finally {
+            JdbcUtils.closeStatement(pstmt);
+        }
+    }
+
+    private void writeOne(Connection conn, String task, String sql, Member member, BatchResult<Member> result) {
+        PreparedStatement pstmt = null;
+
+        try {
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
             pstmt.executeUpdate();
-
-            return member;
+            result.success();
         } catch (SQLException e) {
-            throw exTranslator.translate("save", sql, e);
+            result.fail(member, translate(task, sql, e));
         } finally {
-            close(conn, pstmt, null);
+            statementCache.release(pstmt);
+        }
+    }
+
+    /**
+     * SqlDialect의 upsert SQL(H2는 MERGE INTO ... KEY) 한 문장으로 저장 또는 덮어쓰기
+     */
+    @Override
+    public Member upsert(Member member) {
+        String sql = dialect.upsertSql();
+
+        recorded("upsert", "UPSERT", member.getMemberId(), () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = getConnection();
+                pstmt = statementCache.prepare(conn, sql);
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setInt(2, member.getMoney());
+                return pstmt.executeUpdate();
+            } catch (SQLException e) {
+                throw exTranslator.translate("upsert", sql, e);
+            } finally {
+                close(conn, pstmt, null);
+            }
+        });
+        return member;
+    }
+
+    @Override
+    public BatchResult<Member> upsertAll(Collection<Member> members) {
+        BatchResult<Member> result = new BatchResult<>();
+        if (members.isEmpty()) {
+            return result;
+        }
+
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            for (List<Member> chunk : BatchSupport.chunk(members, BatchSupport.batchSize(members.size()))) {
+                writeBatch(conn, "upsertAll", dialect.upsertSql(), chunk, result);
+            }
+            return result;
+        } finally {
+            DataSourceUtils.releaseConnection(conn, dataSource);
         }
     }
 
     @Override
     public Member findById(String memberId) {
-        String sql = "select * from member where member_id = ?";
+        String sql = FIND_BY_ID_SQL;
+
+        return recorded("findById", "FIND_BY_ID", memberId, () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
+            try {
+                conn = getConnection();
+                pstmt = statementCache.prepare(conn, sql);
+                pstmt.setString(1, memberId);
+
+                rs = pstmt.executeQuery();
+
+                if (rs.next()) {
+                    return toMember(rs);
+                } else {
+                    throw new NoSuchElementException("member not found memberId:" + memberId);
+                }
+            } catch (SQLException e) {
+                throw exTranslator.translate("findById", sql, e);
+            } finally {
+                close(conn, pstmt, rs);
+            }
+        }, member -> 1);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = FIND_BY_ID_FOR_UPDATE_SQL;
 
+        return recorded("findByIdForUpdate", "FIND_BY_ID_FOR_UPDATE", memberId, () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
+            try {
+                conn = getConnection();
+                pstmt = statementCache.prepare(conn, sql);
+                pstmt.setString(1, memberId);
+
+                rs = pstmt.executeQuery();
+
+                if (rs.next()) {
+                    return toMember(rs);
+                } else {
+                    throw new NoSuchElementException("member not found memberId:" + memberId);
+                }
+            } catch (SQLException e) {
+                throw exTranslator.translate("findByIdForUpdate", sql, e);
+            } finally {
+                close(conn, pstmt, rs);
+            }
+        }, member -> 1);
+    }
+
+    /**
+     * IN 목록으로 묶어서 조회
+     * 청크 크기를 정해진 몇 가지로만 맞춰서 준비된 SQL 모양을 재사용한다
+     */
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        if (memberIds.isEmpty()) {
+            return result;
+        }
+
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(memberIds));
         Connection conn = null;
+        try {
+            conn = getConnection();
+            for (List<String> chunk : BatchSupport.chunk(ids, BatchSupport.maxInListSize())) {
+                findChunk(conn, BatchSupport.padInList(chunk), result);
+            }
+            return result;
+        } finally {
+            DataSourceUtils.releaseConnection(conn, dataSource);
+        }
+    }
+
+    private void findChunk(Connection conn, List<String> ids, Map<String, Member> result) {
+        String sql = BatchSupport.inListSql("select * from member where member_id in", ids.size());
+
         PreparedStatement pstmt = null;
         ResultSet rs = null;
 
         try {
-            conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
-            pstmt.setString(1, memberId);
+            pstmt = statementCache.prepare(conn, sql);
+            for (int i = 0; i < ids.size(); i++) {
+                pstmt.setString(i + 1, ids.get(i));
+            }
 
             rs = pstmt.executeQuery();
 
-            if (rs.next()) {
-                Member member = new Member();
-                member.setMemberId(rs.getString("member_id"));
-                member.setMoney(rs.getInt("money"));
-                return member;
-            } else {
-                throw new NoSuchElementException("member not found memberId:" + memberId);
+            while (rs.next()) {
+                Member member = toMember(rs);
+                result.put(member.getMemberId(), member);
             }
         } catch (SQLException e) {
-            throw exTranslator.translate("findById", sql, e);
+            throw exTranslator.translate("findAllByIds", sql, e);
         } finally {
+            JdbcUtils.closeResultSet(rs);
+            statementCache.release(pstmt);
+        }
+    }
+
+    /**
+     * 커넥션 하나를 잡고 fetchSize 단위로 읽는 스트림
+     * 스트림을 닫을 때 ResultSet, PreparedStatement, 커넥션을 함께 정리한다
+     */
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        String sql = "select * from member";
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
             close(conn, pstmt, rs);
+            throw exTranslator.translate("streamAll", sql, e);
         }
+
+        Connection connection = conn;
+        PreparedStatement statement = pstmt;
+        ResultSet resultSet = rs;
+
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Member> action) {
+                try {
+                    if (!resultSet.next()) {
+                        return false;
+                    }
+                    action.accept(toMember(resultSet));
+                    return true;
+                } catch (SQLException e) {
+                    throw exTranslator.translate("streamAll", sql, e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> close(connection, statement, resultSet));
     }
 
     @Override
-    public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";
+    public MemberPage findPage(String pageToken, int limit) {
+        return findPage("findPage", PageCursor.Order.MEMBER_ID, pageToken, limit);
+    }
+
+    @Override
+    public MemberPage findPageByMoney(String pageToken, int limit) {
+        return findPage("findPageByMoney", PageCursor.Order.MONEY, pageToken, limit);
+    }
+
+    /**
+     * 키셋 페이지 조회. SQL 모양이 정렬마다 두 가지뿐이라 문장 캐시를 그대로 쓴다
+     */
+    private MemberPage findPage(String task, PageCursor.Order order, String pageToken, int limit) {
+        String sql = PageCursor.sql(order, pageToken);
+        Object[] args = PageCursor.args(order, pageToken, limit);
 
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
 
         try {
             conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
+            for (int i = 0; i < args.length; i++) {
+                pstmt.setObject(i + 1, args[i]);
+            }
+
+            rs = pstmt.executeQuery();
+
+            List<Member> rows = new ArrayList<>(limit + 1);
+            while (rs.next()) {
+                rows.add(toMember(rs));
+            }
+            return PageCursor.page(order, rows, limit);
+        } catch (SQLException e) {
+            throw exTranslator.translate(task, sql, e);
+        } finally {
+            close(conn, pstmt, rs);
+        }
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        String sql = UPDATE_SQL;
+
+        recorded("update", "UPDATE", memberId, () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = getConnection();
+                pstmt = statementCache.prepare(conn, sql);
+                pstmt.setInt(1, money);
+                pstmt.setString(2, memberId);
+                int resultSize = pstmt.executeUpdate();
+                log.info("resultSize={}", resultSize);
+                return resultSize;
+            } catch (SQLException e) {
+                throw exTranslator.translate("update", sql, e);
+            } finally {
+                close(conn, pstmt, null);
+            }
+        });
+    }
+
+    /**
+     * version이 expectedVersion일 때만 money를 바꾸고 version을 올린다
+     */
+    @Override
+    public boolean compareAndUpdate(String memberId, long expectedVersion, int newMoney) {
+        String sql = COMPARE_AND_UPDATE_SQL;
+
+        return recorded("compareAndUpdate", "COMPARE_AND_UPDATE", memberId, () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = getConnection();
+                pstmt = statementCache.prepare(conn, sql);
+                pstmt.setInt(1, newMoney);
+                pstmt.setString(2, memberId);
+                pstmt.setLong(3, expectedVersion);
+                return pstmt.executeUpdate();
+            } catch (SQLException e) {
+                throw exTranslator.translate("compareAndUpdate", sql, e);
+            } finally {
+                close(conn, pstmt, null);
+            }
+        }) == 1;
+    }
+
+    /**
+     * 상대 갱신 두 번으로 이체
+     * 출금은 money >= ? 조건으로 잔액을 확인하고, 갱신 건수로 잔액 부족과 회원 없음을 구분한다
+     */
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        recorded("transfer", "TRANSFER", fromId, () -> {
+            Connection conn = null;
+            try {
+                conn = getConnection();
+                withdraw(conn, fromId, money);
+                deposit(conn, toId, money);
+                return 2;
+            } finally {
+                DataSourceUtils.releaseConnection(conn, dataSource);
+            }
+        });
+    }
+
+    @Override
+    public void withdraw(String memberId, int money) {
+        recorded("withdraw", "WITHDRAW", memberId, () -> {
+            Connection conn = null;
+            try {
+                conn = getConnection();
+                withdraw(conn, memberId, money);
+                return 1;
+            } finally {
+                DataSourceUtils.releaseConnection(conn, dataSource);
+            }
+        });
+    }
+
+    @Override
+    public void deposit(String memberId, int money) {
+        recorded("deposit", "DEPOSIT", memberId, () -> {
+            Connection conn = null;
+            try {
+                conn = getConnection();
+                deposit(conn, memberId, money);
+                return 1;
+            } finally {
+                DataSourceUtils.releaseConnection(conn, dataSource);
+            }
+        });
+    }
+
+    private void withdraw(Connection conn, String memberId, int money) {
+        String sql = WITHDRAW_SQL;
+
+        PreparedStatement pstmt = null;
+
+        try {
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
-            int resultSize = pstmt.executeUpdate();
-            log.info("resultSize={}", resultSize);
+            pstmt.setInt(3, money);
+            if (pstmt.executeUpdate() == 0) {
+                throw withdrawFailure(conn, memberId);
+            }
         } catch (SQLException e) {
-            throw exTranslator.translate("update", sql, e);
+            throw exTranslator.translate("withdraw", sql, e);
         } finally {
-            close(conn, pstmt, null);
+            statementCache.release(pstmt);
         }
     }
 
+    private void deposit(Connection conn, String memberId, int money) {
+        String sql = DEPOSIT_SQL;
+
+        PreparedStatement pstmt = null;
+
+        try {
+            pstmt = statementCache.prepare(conn, sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            if (pstmt.executeUpdate() == 0) {
+                throw new NoSuchElementException("member not found memberId:" + memberId);
+            }
+        } catch (SQLException e) {
+            throw exTranslator.translate("deposit", sql, e);
+        } finally {
+            statementCache.release(pstmt);
+        }
+    }
+
+    /**
+     * 변화량을 memberId 순서로 정렬해서 addBatch 한 번에 반영
+     * money + ? >= 0 조건으로 갱신되지 않은 행이 있으면 원인을 확인해서 예외를 던진다
+     */
     @Override
-    public void delete(String memberId) {
-        String sql = "delete from member where member_id = ?";
+    public void applyDeltas(Map<String, Integer> deltas) {
+        String sql = APPLY_DELTA_SQL;
+
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : new TreeMap<>(deltas).entrySet()) {
+            if (entry.getValue() != 0) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        recorded("applyDeltas", "APPLY_DELTA", null, () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = getConnection();
+                for (List<Map.Entry<String, Integer>> chunk : BatchSupport.chunk(entries, BatchSupport.batchSize(entries.size()))) {
+                    pstmt = statementCache.prepare(conn, sql);
+                    for (Map.Entry<String, Integer> entry : chunk) {
+                        pstmt.setInt(1, entry.getValue());
+                        pstmt.setString(2, entry.getKey());
+                        pstmt.setInt(3, entry.getValue());
+                        pstmt.addBatch();
+                    }
+                    int[] updateCounts = pstmt.executeBatch();
+                    statementCache.release(pstmt);
+                    pstmt = null;
+
+                    for (int i = 0; i < chunk.size(); i++) {
+                        if (updateCounts[i] == 0) {
+                            throw withdrawFailure(conn, chunk.get(i).getKey());
+                        }
+                    }
+                }
+                return entries.size();
+            } catch (SQLException e) {
+                throw exTranslator.translate("applyDeltas", sql, e);
+            } finally {
+                close(conn, pstmt, null);
+            }
+        });
+    }
+
+    /**
+     * 출금 갱신 건수가 0일 때만 회원이 있는지 확인해서 실패 원인을 정한다
+     */
+    private RuntimeException withdrawFailure(Connection conn, String memberId) throws SQLException {
+        String sql = "select count(*) from member where member_id = ?";
 
-        Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
 
         try {
-            conn = getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = statementCache.prepare(conn, sql);
             pstmt.setString(1, memberId);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            throw exTranslator.translate("delete", sql, e);
+            rs = pstmt.executeQuery();
+            rs.next();
+            if (rs.getInt(1) == 0) {
+                return new NoSuchElementException("member not found memberId:" + memberId);
+            }
+            return new InsufficientBalanceException("balance not enough memberId:" + memberId);
         } finally {
-            close(conn, pstmt, null);
+            JdbcUtils.closeResultSet(rs);
+            statementCache.release(pstmt);
         }
     }
 
+    @Override
+    public void delete(String memberId) {
+        String sql = "delete from member where member_id = ?";
+
+        recorded("delete", "DELETE", memberId, () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = getConnection();
+                pstmt = statementCache.prepare(conn, sql);
+                pstmt.setString(1, memberId);
+                return pstmt.executeUpdate();
+            } catch (SQLException e) {
+                throw exTranslator.translate("delete", sql, e);
+            } finally {
+                close(conn, pstmt, null);
+            }
+        });
+    }
+
+    /**
+     * 메서드 한 번 실행을 JFR 이벤트로 남긴다
+     */
+    private <T> T recorded(String method, String sqlId, String memberId, Supplier<T> operation,
+                           ToLongFunction<? super T> rows) {
+        return RepositoryOperationEvent.record(REPOSITORY_NAME, method, sqlId, memberId, operation, rows);
+    }
+
+    private long recorded(String method, String sqlId, String memberId, LongSupplier operation) {
+        return RepositoryOperationEvent.record(REPOSITORY_NAME, method, sqlId, memberId, operation);
+    }
+
+    /**
+     * memberId 순서로 정렬해서 addBatch로 청크마다 한 번에 덮어쓴다
+     */
+    @Override
+    public void updateAll(Map<String, Integer> balances) {
+        String sql = UPDATE_SQL;
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(new TreeMap<>(balances).entrySet());
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        recorded("updateAll", "UPDATE", null, () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = getConnection();
+                for (List<Map.Entry<String, Integer>> chunk : BatchSupport.chunk(entries, BatchSupport.batchSize(entries.size()))) {
+                    pstmt = statementCache.prepare(conn, sql);
+                    for (Map.Entry<String, Integer> entry : chunk) {
+                        pstmt.setInt(1, entry.getValue());
+                        pstmt.setString(2, entry.getKey());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    statementCache.release(pstmt);
+                    pstmt = null;
+                }
+                return entries.size();
+            } catch (SQLException e) {
+                throw exTranslator.translate("updateAll", sql, e);
+            } finally {
+                close(conn, pstmt, null);
+            }
+        });
+    }
+
+    /**
+     * addBatch로 청크마다 한 번에 삭제
+     */
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        String sql = "delete from member where member_id = ?";
+        List<String> ids = new ArrayList<>(new TreeSet<>(memberIds));
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        recorded("deleteAll", "DELETE", null, () -> {
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = getConnection();
+                for (List<String> chunk : BatchSupport.chunk(ids, BatchSupport.batchSize(ids.size()))) {
+                    pstmt = statementCache.prepare(conn, sql);
+                    for (String memberId : chunk) {
+                        pstmt.setString(1, memberId);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    statementCache.release(pstmt);
+                    pstmt = null;
+                }
+                return ids.size();
+            } catch (SQLException e) {
+                throw exTranslator.translate("deleteAll", sql, e);
+            } finally {
+                close(conn, pstmt, null);
+            }
+        });
+    }
+
+    private Member toMember(ResultSet rs) throws SQLException {
+        Member member = new Member();
+        member.setMemberId(rs.getString("member_id"));
+        member.setMoney(rs.getInt("money"));
+        member.setVersion(rs.getLong("version"));
+        return member;
+    }
+
+    /**
+     * 이 리포지토리가 쓰는 예외 변환기. 재시도 정책이 같은 기준으로 일시적 오류를 가려낼 때 쓴다
+     */
+    public SQLExceptionTranslator getExceptionTranslator() {
+        return exTranslator;
+    }
+
+    private DataAccessException translate(String task, String sql, SQLException e) {
+        DataAccessException ex = exTranslator.translate(task, sql, e);
+        return ex != null ? ex : new UncategorizedSQLException(task, sql, e);
+    }
+
     private void close(Connection conn, Statement stmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(stmt);
+        statementCache.release(stmt);
         DataSourceUtils.releaseConnection(conn, dataSource);
     }
 
+    /**
+     * 조회, 이체 경로의 SQL을 conn의 물리 커넥션에 미리 준비해서 문장 캐시에 넣는다
+     * 풀의 커넥션마다 한 번씩 호출하면 첫 요청들이 문장 준비 비용을 내지 않는다.
+     *
+     * @return 준비한 문장 수
+     */
+    public int prepareStatements(Connection conn) {
+        for (String sql : HOT_PATH_SQL) {
+            PreparedStatement pstmt = null;
+            try {
+                pstmt = statementCache.prepare(conn, sql);
+            } catch (SQLException e) {
+                throw exTranslator.translate("prepareStatements", sql, e);
+            } finally {
+                statementCache.release(pstmt);
+            }
+        }
+        return HOT_PATH_SQL.size();
+    }
+
     private Connection getConnection() {
         // 주의! 트랜잭션 동기
         Connection conn = DataSourceUtils.getConnection(dataSource);
@@ -2,8 +2,14 @@ package hello.jdbcpractice.repository;
 
 import hello.jdbcpractice.connection.DBConnectionUtil;
 import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.jfr.RepositoryOperationEvent;
+import hello.jdbcpractice.repository.dialect.H2Dialect;
+import hello.jdbcpractice.repository.dialect.SqlDialect;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceUtils;
@@ -13,43 +19,365 @@ import org.springframework.jdbc.support.SQLExceptionTranslator;
 
 import javax.sql.DataSource;
 import java.sql.*;
-import java.util.NoSuchElementException;
+import java.util.*;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
 /**
  * JDBC 템플릿 사용
  */
 @Slf4j
-public class MemberRepositoryV5 implements MemberRepository {
+public class MemberRepositoryV5 implements JdbcMemberRepository {
+    private static final String INSERT_SQL = "insert into member (member_id, money) values (?, ?)";
+    // JFR 이벤트에 남길 이름
+    private static final String REPOSITORY_NAME = "MemberRepositoryV5";
+
     private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect dialect;
+    // saveAll에서 batchUpdate 대신 다중 행 VALUES 한 문장으로 보낼지 여부
+    private final boolean multiRowInsert;
 
     public MemberRepositoryV5(DataSource dataSource) {
+        this(dataSource, false);
+    }
+
+    public MemberRepositoryV5(DataSource dataSource, boolean multiRowInsert) {
+        this(dataSource, new H2Dialect(), multiRowInsert);
+    }
+
+    public MemberRepositoryV5(DataSource dataSource, SqlDialect dialect, boolean multiRowInsert) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dialect = dialect;
+        this.multiRowInsert = multiRowInsert;
     }
 
     @Override
     public Member save(Member member) {
         String sql = "insert into member (member_id, money) values (?, ?)";
-        jdbcTemplate.update(sql, member.getMemberId(), member.getMoney());
+        recorded("save", "INSERT", member.getMemberId(),
+                () -> jdbcTemplate.update(sql, member.getMemberId(), member.getMoney()));
         return member;
     }
 
+    /**
+     * batchUpdate로 청크 단위 저장
+     * 청크 안에서 실패한 행만 한 건씩 다시 실행해서 행별 원인을 결과에 담는다
+     */
+    @Override
+    public BatchResult<Member> saveAll(Collection<Member> members) {
+        BatchResult<Member> result = new BatchResult<>();
+        if (members.isEmpty()) {
+            return result;
+        }
+
+        if (multiRowInsert) {
+            for (List<Member> chunk : BatchSupport.chunk(members, BatchSupport.multiRowSize(members.size(), 2))) {
+                saveMultiRow(chunk, result);
+            }
+        } else {
+            for (List<Member> chunk : BatchSupport.chunk(members, BatchSupport.batchSize(members.size()))) {
+                writeBatch(INSERT_SQL, chunk, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * addBatch/executeBatch로 한 청크를 실행
+     * 드라이버가 실패로 보고했거나 실행하지 못한 행만 한 건씩 다시 실행한다
+     *
+     * batchUpdate는 BatchUpdateException을 예외 변환기에 넘기는데, 변환기가 getNextException()으로 바꿔서
+     * 변환하므로 갱신 건수를 잃는다. 그래서 ConnectionCallback 안에서 직접 실행하고 BatchUpdateException만 잡는다.
+     */
+    private void writeBatch(String sql, List<Member> chunk, BatchResult<Member> result) {
+        int[] updateCounts = jdbcTemplate.execute((ConnectionCallback<int[]>) con -> {
+            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                for (Member member : chunk) {
+                    pstmt.setString(1, member.getMemberId());
+                    pstmt.setInt(2, member.getMoney());
+                    pstmt.addBatch();
+                }
+                try {
+                    return pstmt.executeBatch();
+                } catch (BatchUpdateException e) {
+                    return e.getUpdateCounts();
+                }
+            }
+        });
+
+        for (int i = 0; i < chunk.size(); i++) {
+            if (BatchSupport.applied(updateCounts, i)) {
+                result.success();
+            } else {
+                writeOne(sql, chunk.get(i), result);
+            }
+        }
+    }
+
+    private void saveMultiRow(List<Member> chunk, BatchResult<Member> result) {
+        String sql = BatchSupport.multiRowSql("insert into member (member_id, money) values", 2, chunk.size());
+
+        Object[] args = new Object[chunk.size() * 2];
+        int index = 0;
+        for (Member member : chunk) {
+            args[index++] = member.getMemberId();
+            args[index++] = member.getMoney();
+        }
+
+        try {
+            jdbcTemplate.update(sql, args);
+            result.success(chunk.size());
+        } catch (DataAccessException e) {
+            // 한 문장이라 전부 실패한 것이므로 배치로 다시 보내서 행별로 가려낸다
+            log.info("multi-row insert failed, fallback to batch. size={}", chunk.size());
+            writeBatch(INSERT_SQL, chunk, result);
+        }
+    }
+
+    private void writeOne(String sql, Member member, BatchResult<Member> result) {
+        try {
+            jdbcTemplate.update(sql, member.getMemberId(), member.getMoney());
+            result.success();
+        } catch (DataAccessException e) {
+            result.fail(member, e);
+        }
+    }
+
+    /**
+     * SqlDialect의 upsert SQL(H2는 MERGE INTO ... KEY) 한 문장으로 저장 또는 덮어쓰기
+     */
+    @Override
+    public Member upsert(Member member) {
+        recorded("upsert", "UPSERT", member.getMemberId(),
+                () -> jdbcTemplate.update(dialect.upsertSql(), member.getMemberId(), member.getMoney()));
+        return member;
+    }
+
+    @Override
+    public BatchResult<Member> upsertAll(Collection<Member> members) {
+        BatchResult<Member> result = new BatchResult<>();
+        for (List<Member> chunk : BatchSupport.chunk(members, BatchSupport.batchSize(members.size()))) {
+            writeBatch(dialect.upsertSql(), chunk, result);
+        }
+        return result;
+    }
+
     @Override
     public Member findById(String memberId) {
         String sql = "select * from member where member_id = ?";
-        return jdbcTemplate.queryForObject(sql, memberRowMapper(), memberId);
+        return recorded("findById", "FIND_BY_ID", memberId,
+                () -> jdbcTemplate.queryForObject(sql, memberRowMapper(), memberId), member -> 1);
     }
 
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id = ? for update";
+        return recorded("findByIdForUpdate", "FIND_BY_ID_FOR_UPDATE", memberId,
+                () -> jdbcTemplate.queryForObject(sql, memberRowMapper(), memberId), member -> 1);
+    }
+
+    /**
+     * IN 목록으로 묶어서 조회
+     * 청크 크기를 정해진 몇 가지로만 맞춰서 준비된 SQL 모양을 재사용한다
+     */
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(memberIds));
+
+        for (List<String> chunk : BatchSupport.chunk(ids, BatchSupport.maxInListSize())) {
+            List<String> padded = BatchSupport.padInList(chunk);
+            String sql = BatchSupport.inListSql("select * from member where member_id in", padded.size());
+            for (Member member : jdbcTemplate.query(sql, memberRowMapper(), padded.toArray())) {
+                result.put(member.getMemberId(), member);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 커넥션 하나를 잡고 fetchSize 단위로 읽는 스트림
+     * queryForStream은 스트림을 닫을 때 커넥션을 반납한다
+     */
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        String sql = "select * from member";
+        return jdbcTemplate.queryForStream(con -> {
+            PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            return pstmt;
+        }, memberRowMapper());
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int limit) {
+        return findPage(PageCursor.Order.MEMBER_ID, pageToken, limit);
+    }
+
+    @Override
+    public MemberPage findPageByMoney(String pageToken, int limit) {
+        return findPage(PageCursor.Order.MONEY, pageToken, limit);
+    }
+
+    private MemberPage findPage(PageCursor.Order order, String pageToken, int limit) {
+        String sql = PageCursor.sql(order, pageToken);
+        List<Member> rows = jdbcTemplate.query(sql, memberRowMapper(), PageCursor.args(order, pageToken, limit));
+        return PageCursor.page(order, rows, limit);
+    }
 
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";
-        jdbcTemplate.update(sql, money, memberId);
+        String sql = "update member set money=?, version = version + 1 where member_id=?";
+        recorded("update", "UPDATE", memberId, () -> jdbcTemplate.update(sql, money, memberId));
+    }
+
+    @Override
+    public boolean compareAndUpdate(String memberId, long expectedVersion, int newMoney) {
+        String sql = "update member set money = ?, version = version + 1 where member_id = ? and version = ?";
+        return recorded("compareAndUpdate", "COMPARE_AND_UPDATE", memberId,
+                () -> jdbcTemplate.update(sql, newMoney, memberId, expectedVersion)) == 1;
+    }
+
+    /**
+     * 상대 갱신 두 번으로 이체
+     * 출금은 money >= ? 조건으로 잔액을 확인하고, 갱신 건수로 잔액 부족과 회원 없음을 구분한다
+     */
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        recorded("transfer", "TRANSFER", fromId, () -> {
+            withdraw(fromId, money);
+            deposit(toId, money);
+            return 2;
+        });
+    }
+
+    @Override
+    public void withdraw(String memberId, int money) {
+        String sql = "update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?";
+
+        recorded("withdraw", "WITHDRAW", memberId, () -> {
+            if (jdbcTemplate.update(sql, money, memberId, money) == 0) {
+                throw withdrawFailure(memberId);
+            }
+            return 1;
+        });
+    }
+
+    @Override
+    public void deposit(String memberId, int money) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+
+        recorded("deposit", "DEPOSIT", memberId, () -> {
+            if (jdbcTemplate.update(sql, money, memberId) == 0) {
+                throw new NoSuchElementException("member not found memberId:" + memberId);
+            }
+            return 1;
+        });
+    }
+
+    /**
+     * 변화량을 memberId 순서로 정렬해서 batchUpdate 한 번에 반영
+     * money + ? >= 0 조건으로 갱신되지 않은 행이 있으면 원인을 확인해서 예외를 던진다
+     */
+    @Override
+    public void applyDeltas(Map<String, Integer> deltas) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ? and money + ? >= 0";
+
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : new TreeMap<>(deltas).entrySet()) {
+            if (entry.getValue() != 0) {
+                entries.add(entry);
+            }
+        }
+
+        recorded("applyDeltas", "APPLY_DELTA", null, () -> {
+            int[][] updateCounts = jdbcTemplate.batchUpdate(sql, entries, BatchSupport.batchSize(entries.size()), (ps, entry) -> {
+                ps.setInt(1, entry.getValue());
+                ps.setString(2, entry.getKey());
+                ps.setInt(3, entry.getValue());
+            });
+
+            int index = 0;
+            for (int[] chunk : updateCounts) {
+                for (int count : chunk) {
+                    if (count == 0) {
+                        throw withdrawFailure(entries.get(index).getKey());
+                    }
+                    index++;
+                }
+            }
+            return entries.size();
+        });
+    }
+
+    /**
+     * 출금 갱신 건수가 0일 때만 회원이 있는지 확인해서 실패 원인을 정한다
+     */
+    private RuntimeException withdrawFailure(String memberId) {
+        String sql = "select count(*) from member where member_id = ?";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, memberId);
+        if (count == null || count == 0) {
+            return new NoSuchElementException("member not found memberId:" + memberId);
+        }
+        return new InsufficientBalanceException("balance not enough memberId:" + memberId);
     }
 
     @Override
     public void delete(String memberId) {
         String sql = "delete from member where member_id = ?";
-        jdbcTemplate.update(sql, memberId);
+        recorded("delete", "DELETE", memberId, () -> jdbcTemplate.update(sql, memberId));
+    }
+
+    /**
+     * batchUpdate로 여러 회원의 money를 덮어쓴다
+     */
+    @Override
+    public void updateAll(Map<String, Integer> balances) {
+        String sql = "update member set money=?, version = version + 1 where member_id=?";
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(new TreeMap<>(balances).entrySet());
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        recorded("updateAll", "UPDATE", null, () -> {
+            jdbcTemplate.batchUpdate(sql, entries, BatchSupport.batchSize(entries.size()), (ps, entry) -> {
+                ps.setInt(1, entry.getValue());
+                ps.setString(2, entry.getKey());
+            });
+            return entries.size();
+        });
+    }
+
+    /**
+     * batchUpdate로 여러 회원을 삭제
+     */
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        String sql = "delete from member where member_id = ?";
+        List<String> ids = new ArrayList<>(new TreeSet<>(memberIds));
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        recorded("deleteAll", "DELETE", null, () -> {
+            jdbcTemplate.batchUpdate(sql, ids, BatchSupport.batchSize(ids.size()),
+                    (ps, memberId) -> ps.setString(1, memberId));
+            return ids.size();
+        });
+    }
+
+    /**
+     * 메서드 한 번 실행을 JFR 이벤트로 남긴다
+     */
+    private <T> T recorded(String method, String sqlId, String memberId, Supplier<T> operation,
+                           ToLongFunction<? super T> rows) {
+        return RepositoryOperationEvent.record(REPOSITORY_NAME, method, sqlId, memberId, operation, rows);
+    }
+
+    private long recorded(String method, String sqlId, String memberId, LongSupplier operation) {
+        return RepositoryOperationEvent.record(REPOSITORY_NAME, method, sqlId, memberId, operation);
     }
 
     private RowMapper<Member> memberRowMapper() {
@@ -57,6 +385,7 @@ public class MemberRepositoryV5 implements MemberRepository {
             Member member = new Member();
             member.setMemberId(rs.getString("member_id"));
             member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
             return member;
         };
     }
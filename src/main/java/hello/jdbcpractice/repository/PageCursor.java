@@ -0,0 +1,115 @@
+package hello.jdbcpractice.repository;
+
+import hello.jdbcpractice.domain.member.Member;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 키셋(seek) 페이지 처리 공통 로직
+ * OFFSET 대신 이전 페이지 마지막 행의 정렬 키보다 큰 행부터 읽으므로 몇 번째 페이지든 비용이 같다.
+ *
+ * 토큰은 마지막 행의 정렬 키를 Base64로 감싼 값이다. 호출하는 쪽은 내용을 해석하지 말고 그대로 넘겨야 한다.
+ * - MEMBER_ID: "i|member_id"
+ * - MONEY: "m|money|member_id" (money가 같으면 member_id로 순서를 정한다)
+ * 돈 순서 페이지는 (money, member_id) 인덱스(schema.sql의 idx_member_money_id)를 타고 정렬 없이 읽는다.
+ * 다음 페이지 조건은 행 값 비교로 쓰고, 앞에 money >= ?를 붙여서 인덱스 범위 탐색 시작점을 준다.
+ * 토큰에 샤드 정보가 없으므로 같은 토큰을 모든 샤드에 넘기고 결과를 합쳐도 된다.
+ */
+public final class PageCursor {
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    public enum Order {
+        MEMBER_ID("i",
+                "select * from member order by member_id fetch first ? rows only",
+                "select * from member where member_id > ? order by member_id fetch first ? rows only"),
+        MONEY("m",
+                "select * from member order by money, member_id fetch first ? rows only",
+                "select * from member where money >= ? and (money, member_id) > (?, ?)"
+                        + " order by money, member_id fetch first ? rows only");
+
+        private final String prefix;
+        private final String firstSql;
+        private final String nextSql;
+
+        Order(String prefix, String firstSql, String nextSql) {
+            this.prefix = prefix;
+            this.firstSql = firstSql;
+            this.nextSql = nextSql;
+        }
+    }
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private PageCursor() {
+    }
+
+    static String sql(Order order, String pageToken) {
+        return pageToken == null ? order.firstSql : order.nextSql;
+    }
+
+    /**
+     * sql에 바인딩할 값. 마지막 값은 다음 페이지가 있는지 보려고 limit보다 하나 더 읽는 행 수다
+     */
+    static Object[] args(Order order, String pageToken, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE + ": " + limit);
+        }
+        if (pageToken == null) {
+            return new Object[]{limit + 1};
+        }
+
+        String[] key = decode(order, pageToken);
+        if (order == Order.MEMBER_ID) {
+            return new Object[]{key[0], limit + 1};
+        }
+        int money = Integer.parseInt(key[0]);
+        return new Object[]{money, money, key[1], limit + 1};
+    }
+
+    /**
+     * limit + 1건까지 읽은 결과로 페이지를 만든다
+     */
+    static MemberPage page(Order order, List<Member> rows, int limit) {
+        if (rows.size() <= limit) {
+            return new MemberPage(List.copyOf(rows), null);
+        }
+        List<Member> members = List.copyOf(new ArrayList<>(rows.subList(0, limit)));
+        return new MemberPage(members, token(order, members.get(limit - 1)));
+    }
+
+    /**
+     * last 다음 행부터 읽는 토큰. 여러 리포지토리의 페이지를 합치는 쪽(샤딩 등)에서 쓴다
+     */
+    public static String token(Order order, Member last) {
+        String key = order == Order.MEMBER_ID
+                ? order.prefix + "|" + last.getMemberId()
+                : order.prefix + "|" + last.getMoney() + "|" + last.getMemberId();
+        return ENCODER.encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decode(Order order, String pageToken) {
+        int keys = order == Order.MEMBER_ID ? 1 : 2;
+        String[] parts;
+        try {
+            parts = new String(DECODER.decode(pageToken), StandardCharsets.UTF_8).split("\\|", keys + 1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid page token: " + pageToken, e);
+        }
+
+        if (parts.length != keys + 1 || !parts[0].equals(order.prefix)) {
+            throw new IllegalArgumentException("invalid page token: " + pageToken);
+        }
+        if (order == Order.MONEY && !parts[1].matches("-?\\d+")) {
+            throw new IllegalArgumentException("invalid page token: " + pageToken);
+        }
+
+        String[] key = new String[keys];
+        System.arraycopy(parts, 1, key, 0, keys);
+        return key;
+    }
+}
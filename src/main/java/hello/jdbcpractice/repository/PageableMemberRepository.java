@@ -0,0 +1,20 @@
+package hello.jdbcpractice.repository;
+
+/**
+ * 키셋 페이지 조회를 할 수 있는 MemberRepository
+ */
+public interface PageableMemberRepository extends MemberRepository {
+
+    /**
+     * member_id 순서로 한 페이지 조회
+     * pageToken이 null이면 첫 페이지, 아니면 이전 페이지의 nextPageToken을 그대로 넘긴다.
+     * OFFSET 없이 마지막 키 다음부터 읽으므로 뒤쪽 페이지도 첫 페이지와 비용이 같다.
+     */
+    MemberPage findPage(String pageToken, int limit);
+
+    /**
+     * money, member_id 순서로 한 페이지 조회
+     * 토큰은 findPage와 섞어 쓸 수 없다.
+     */
+    MemberPage findPageByMoney(String pageToken, int limit);
+}
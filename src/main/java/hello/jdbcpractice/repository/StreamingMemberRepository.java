@@ -0,0 +1,34 @@
+package hello.jdbcpractice.repository;
+
+import hello.jdbcpractice.domain.member.Member;
+
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * member 테이블 전체를 스트림으로 읽을 수 있는 MemberRepository
+ */
+public interface StreamingMemberRepository extends MemberRepository {
+    // streamAll에서 한 번에 가져올 행 수 기본값
+    int DEFAULT_FETCH_SIZE = 500;
+
+    /**
+     * member 테이블 전체를 커넥션 하나로 끝까지 읽는다
+     * fetchSize만큼씩 가져와서 행을 그때그때 변환하므로 테이블 크기와 상관없이 메모리 사용량이 일정하다.
+     * 커넥션을 스트림이 잡고 있으므로 반드시 try-with-resources 등으로 닫아야 한다.
+     */
+    Stream<Member> streamAll(int fetchSize);
+
+    default Stream<Member> streamAll() {
+        return streamAll(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * 전체 회원을 한 건씩 처리하고 스트림을 닫는다
+     */
+    default void forEach(Consumer<Member> action) {
+        try (Stream<Member> members = streamAll()) {
+            members.forEach(action);
+        }
+    }
+}
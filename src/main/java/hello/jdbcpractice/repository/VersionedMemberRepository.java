@@ -0,0 +1,14 @@
+package hello.jdbcpractice.repository;
+
+/**
+ * version 컬럼으로 낙관적 갱신을 할 수 있는 MemberRepository
+ */
+public interface VersionedMemberRepository extends MemberRepository {
+
+    /**
+     * 낙관적 갱신. version이 expectedVersion과 같을 때만 money를 newMoney로 바꾸고 version을 1 올린다
+     * 그 사이 다른 변경이 있었거나 회원이 없으면 아무것도 바꾸지 않고 false를 돌려준다.
+     * 읽기와 쓰기 사이에 락을 잡지 않아도 되므로 충돌이 드문 갱신에 쓴다.
+     */
+    boolean compareAndUpdate(String memberId, long expectedVersion, int newMoney);
+}
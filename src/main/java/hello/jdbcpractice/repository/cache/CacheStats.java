@@ -0,0 +1,12 @@
+package hello.jdbcpractice.repository.cache;
+
+/**
+ * 캐시 통계
+ */
+public record CacheStats(long hitCount, long missCount, long evictionCount, long size) {
+
+    public double hitRatio() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+}
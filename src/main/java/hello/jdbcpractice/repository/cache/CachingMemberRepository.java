@@ -0,0 +1,323 @@
+package hello.jdbcpractice.repository.cache;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.BatchResult;
+import hello.jdbcpractice.repository.JdbcMemberRepository;
+import hello.jdbcpractice.repository.MemberPage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * 읽기 캐시를 붙인 MemberRepository 데코레이터
+ *
+ * findById, findAllByIds는 캐시를 먼저 보고, 없으면 원본 리포지토리에서 읽어서 채운다.
+ * 쓰기는 원본 리포지토리에 바로 반영하고, 캐시 반영은 트랜잭션 상태에 따라 다르게 한다.
+ * - 트랜잭션 밖: 바로 캐시에 반영
+ * - 트랜잭션 안: 변경된 memberId를 모아두었다가 커밋 후에만 반영, 롤백되면 버린다.
+ *   커밋 전까지 다른 트랜잭션이 보는 값은 커밋된 예전 값이므로 캐시도 그대로 둔다.
+ *   같은 트랜잭션 안에서 변경한 회원을 다시 읽을 때는 캐시를 거치지 않는다.
+ *
+ * 캐시를 채우는 동안 쓰기가 끼어들면 읽은 값이 이미 낡았을 수 있다.
+ * 그래서 memberId별 세대 번호(generations)를 읽기 전에 보고, 채운 뒤에도 같을 때만 남긴다. 쓰기는 캐시에 반영하기 전에 세대를 올린다.
+ * 세대는 memberId 해시로 나눈 칸마다 하나라서 다른 회원의 쓰기 때문에 채우기를 건너뛸 수도 있지만 값이 틀리지는 않는다.
+ */
+@Slf4j
+public class CachingMemberRepository implements JdbcMemberRepository {
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final JdbcMemberRepository target;
+    private final MemberCacheStore store;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public CachingMemberRepository(JdbcMemberRepository target) {
+        this(target, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE, EvictionPolicy.W_TINY_LFU);
+    }
+
+    public CachingMemberRepository(JdbcMemberRepository target, long maximumSize, Duration timeToLive,
+                                   EvictionPolicy evictionPolicy) {
+        this.target = target;
+        this.store = evictionPolicy == EvictionPolicy.LRU
+                ? new LruMemberCacheStore(maximumSize, timeToLive)
+                : new CaffeineMemberCacheStore(maximumSize, timeToLive);
+    }
+
+    @Override
+    public Member save(Member member) {
+        Member saved = target.save(member);
+        afterWrite(member.getMemberId(), saved);
+        return saved;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (isWrittenInTransaction(memberId)) {
+            return target.findById(memberId);
+        }
+
+        Member cached = store.get(memberId);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        long generation = generation(memberId);
+        Member member = target.findById(memberId);
+        populate(member, generation);
+        return member;
+    }
+
+    /**
+     * 락을 잡아야 하므로 캐시를 거치지 않는다
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return target.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> missed = new ArrayList<>();
+
+        for (String memberId : new LinkedHashSet<>(memberIds)) {
+            Member cached = isWrittenInTransaction(memberId) ? null : store.get(memberId);
+            if (cached != null) {
+                result.put(memberId, copy(cached));
+            } else {
+                missed.add(memberId);
+            }
+        }
+
+        if (!missed.isEmpty()) {
+            Map<String, Long> loadGenerations = new HashMap<>();
+            for (String memberId : missed) {
+                loadGenerations.put(memberId, generation(memberId));
+            }
+            Map<String, Member> loaded = target.findAllByIds(missed);
+            for (Member member : loaded.values()) {
+                Long generation = loadGenerations.get(member.getMemberId());
+                if (generation != null && !isWrittenInTransaction(member.getMemberId())) {
+                    populate(member, generation);
+                }
+            }
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    /**
+     * 전체 조회는 캐시를 거치지 않는다. 한 번 훑는 조회로 캐시가 밀려나지 않게 하기 위해서다
+     */
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        return target.streamAll(fetchSize);
+    }
+
+    /**
+     * 페이지 조회도 캐시를 거치지 않는다
+     */
+    @Override
+    public MemberPage findPage(String pageToken, int limit) {
+        return target.findPage(pageToken, limit);
+    }
+
+    @Override
+    public MemberPage findPageByMoney(String pageToken, int limit) {
+        return target.findPageByMoney(pageToken, limit);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        target.update(memberId, money);
+        afterWrite(memberId, null);
+    }
+
+    @Override
+    public boolean compareAndUpdate(String memberId, long expectedVersion, int newMoney) {
+        boolean applied = target.compareAndUpdate(memberId, expectedVersion, newMoney);
+        // 실패했다면 호출한 쪽이 본 버전(캐시에서 읽었을 수 있다)이 이미 낡은 것이므로 어느 쪽이든 지운다
+        afterWrite(memberId, null);
+        return applied;
+    }
+
+    @Override
+    public void delete(String memberId) {
+        target.delete(memberId);
+        afterWrite(memberId, null);
+    }
+
+    @Override
+    public void updateAll(Map<String, Integer> balances) {
+        target.updateAll(balances);
+        balances.keySet().forEach(memberId -> afterWrite(memberId, null));
+    }
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        target.deleteAll(memberIds);
+        memberIds.forEach(memberId -> afterWrite(memberId, null));
+    }
+
+    @Override
+    public BatchResult<Member> saveAll(Collection<Member> members) {
+        BatchResult<Member> result = target.saveAll(members);
+        afterWriteAll(members, result);
+        return result;
+    }
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        target.transfer(fromId, toId, money);
+        afterWrite(fromId, null);
+        afterWrite(toId, null);
+    }
+
+    @Override
+    public void withdraw(String memberId, int money) {
+        target.withdraw(memberId, money);
+        afterWrite(memberId, null);
+    }
+
+    @Override
+    public void deposit(String memberId, int money) {
+        target.deposit(memberId, money);
+        afterWrite(memberId, null);
+    }
+
+    @Override
+    public void applyDeltas(Map<String, Integer> deltas) {
+        target.applyDeltas(deltas);
+        deltas.keySet().forEach(memberId -> afterWrite(memberId, null));
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        Member saved = target.upsert(member);
+        // 이미 있던 행이면 DB에서 version이 올라가므로 넘겨받은 값을 캐시에 넣지 않는다
+        afterWrite(member.getMemberId(), null);
+        return saved;
+    }
+
+    @Override
+    public BatchResult<Member> upsertAll(Collection<Member> members) {
+        BatchResult<Member> result = target.upsertAll(members);
+        members.forEach(member -> afterWrite(member.getMemberId(), null));
+        return result;
+    }
+
+    public CacheStats stats() {
+        return store.stats();
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        store.invalidateAll();
+    }
+
+    private void afterWriteAll(Collection<Member> members, BatchResult<Member> result) {
+        Set<Member> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BatchResult.Failure<Member> failure : result.getFailures()) {
+            failed.add(failure.item());
+        }
+        for (Member member : members) {
+            if (!failed.contains(member)) {
+                afterWrite(member.getMemberId(), member);
+            }
+        }
+    }
+
+    /**
+     * 쓰기 후 캐시 반영
+     * 값을 그대로 알면(save) 채우고, 모르면(update, upsert, delete, transfer) 지운다
+     */
+    private void afterWrite(String memberId, Member written) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(memberId, written);
+            return;
+        }
+        pendingWrites().writes.put(memberId, written == null ? null : copy(written));
+    }
+
+    private void apply(String memberId, Member written) {
+        generations.incrementAndGet(stripe(memberId));
+        if (written == null) {
+            store.invalidate(memberId);
+        } else {
+            store.put(copy(written));
+        }
+    }
+
+    /**
+     * DB에서 읽은 값을 캐시에 채운다. generation은 읽기 전에 본 세대다
+     * 넣은 뒤에 세대가 바뀌었으면 그 사이 쓰기가 있었던 것이므로 다시 지운다.
+     * 쓰기는 세대를 올린 뒤 캐시에 반영하므로, 여기서 바뀐 것을 못 봤다면 쓰기의 반영이 이 값을 덮는다.
+     */
+    private void populate(Member member, long generation) {
+        String memberId = member.getMemberId();
+        store.put(copy(member));
+        if (generation(memberId) != generation) {
+            store.invalidate(memberId);
+        }
+    }
+
+    private long generation(String memberId) {
+        return generations.get(stripe(memberId));
+    }
+
+    private static int stripe(String memberId) {
+        int h = memberId.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private boolean isWrittenInTransaction(String memberId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        PendingWrites pending = (PendingWrites) TransactionSynchronizationManager.getResource(this);
+        return pending != null && pending.writes.containsKey(memberId);
+    }
+
+    /**
+     * 현재 트랜잭션에서 변경한 회원 목록. 트랜잭션마다 하나씩 만들고 완료되면 풀어준다
+     */
+    private PendingWrites pendingWrites() {
+        PendingWrites pending = (PendingWrites) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingWrites();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        return pending;
+    }
+
+    private static Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+
+    private class PendingWrites implements TransactionSynchronization {
+        // memberId -> 커밋 후 캐시에 넣을 값 (null이면 캐시에서 지운다)
+        private final Map<String, Member> writes = new HashMap<>();
+
+        @Override
+        public void afterCommit() {
+            writes.forEach(CachingMemberRepository.this::apply);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(CachingMemberRepository.this);
+            if (status != STATUS_COMMITTED) {
+                log.debug("transaction not committed, drop pending cache writes={}", writes.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package hello.jdbcpractice.repository.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import hello.jdbcpractice.domain.member.Member;
+
+import java.time.Duration;
+
+/**
+ * Caffeine(W-TinyLFU) 기반 저장소
+ */
+class CaffeineMemberCacheStore implements MemberCacheStore {
+    private final Cache<String, Member> cache;
+
+    CaffeineMemberCacheStore(long maximumSize, Duration timeToLive) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Member get(String memberId) {
+        return cache.getIfPresent(memberId);
+    }
+
+    @Override
+    public void put(Member member) {
+        cache.put(member.getMemberId(), member);
+    }
+
+    @Override
+    public void invalidate(String memberId) {
+        cache.invalidate(memberId);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats stats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = cache.stats();
+        return new CacheStats(stats.hitCount(), stats.missCount(), stats.evictionCount(), cache.estimatedSize());
+    }
+}
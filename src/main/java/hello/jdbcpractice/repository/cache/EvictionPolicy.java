@@ -0,0 +1,16 @@
+package hello.jdbcpractice.repository.cache;
+
+/**
+ * 캐시가 가득 찼을 때 어떤 항목을 내보낼지
+ */
+public enum EvictionPolicy {
+    /**
+     * Caffeine의 W-TinyLFU. 최근성과 빈도를 함께 봐서 한 번 훑고 지나가는 조회에 캐시가 밀려나지 않는다
+     */
+    W_TINY_LFU,
+
+    /**
+     * 가장 오래 안 쓴 항목부터 내보낸다
+     */
+    LRU
+}
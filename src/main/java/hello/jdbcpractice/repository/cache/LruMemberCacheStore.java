@@ -0,0 +1,76 @@
+package hello.jdbcpractice.repository.cache;
+
+import hello.jdbcpractice.domain.member.Member;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LinkedHashMap(accessOrder) 기반 LRU 저장소
+ * 항목마다 만료 시각을 같이 저장해서 TTL을 적용한다
+ */
+class LruMemberCacheStore implements MemberCacheStore {
+    private final long maximumSize;
+    private final long timeToLiveNanos;
+    private final Map<String, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    LruMemberCacheStore(long maximumSize, Duration timeToLive) {
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= LruMemberCacheStore.this.maximumSize) {
+                    return false;
+                }
+                evictionCount++;
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Member get(String memberId) {
+        Entry entry = entries.get(memberId);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt() > 0) {
+            entries.remove(memberId);
+            evictionCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.member();
+    }
+
+    @Override
+    public synchronized void put(Member member) {
+        entries.put(member.getMemberId(), new Entry(member, System.nanoTime() + timeToLiveNanos));
+    }
+
+    @Override
+    public synchronized void invalidate(String memberId) {
+        entries.remove(memberId);
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        return new CacheStats(hitCount, missCount, evictionCount, entries.size());
+    }
+
+    private record Entry(Member member, long expiresAt) {
+    }
+}
@@ -0,0 +1,22 @@
+package hello.jdbcpractice.repository.cache;
+
+import hello.jdbcpractice.domain.member.Member;
+
+/**
+ * 회원 캐시 저장소. 제거 정책별로 구현한다
+ */
+interface MemberCacheStore {
+
+    /**
+     * 없거나 만료되었으면 null
+     */
+    Member get(String memberId);
+
+    void put(Member member);
+
+    void invalidate(String memberId);
+
+    void invalidateAll();
+
+    CacheStats stats();
+}
@@ -0,0 +1,35 @@
+package hello.jdbcpractice.repository.dialect;
+
+/**
+ * H2 데이터베이스 SQL
+ */
+public class H2Dialect implements SqlDialect {
+
+    /**
+     * MERGE INTO ... KEY는 version을 올릴 수 없어서 MERGE ... USING을 쓴다
+     */
+    @Override
+    public String upsertSql() {
+        return "merge into member t"
+                + " using (select cast(? as varchar(10)) member_id, cast(? as integer) money) s"
+                + " on t.member_id = s.member_id"
+                + " when matched then update set money = s.money, version = t.version + 1"
+                + " when not matched then insert (member_id, money, version) values (s.member_id, s.money, 0)";
+    }
+
+    @Override
+    public String deleteExpiredTransferRequestsSql() {
+        return "delete from transfer_request where created_at < dateadd(millisecond, ?, current_timestamp)"
+                + " fetch first ? rows only";
+    }
+
+    @Override
+    public String upsertBalanceSnapshotSql() {
+        return "merge into balance_snapshot (member_id, balance, last_entry_id) key (member_id) values (?, ?, ?)";
+    }
+
+    @Override
+    public String explainSql(String sql, boolean analyze) {
+        return (analyze ? "explain analyze " : "explain ") + sql;
+    }
+}
@@ -0,0 +1,35 @@
+package hello.jdbcpractice.repository.dialect;
+
+/**
+ * 데이터베이스마다 문법이 다른 SQL을 모아두는 곳
+ * 다른 데이터베이스를 쓰려면 이 인터페이스를 구현해서 리포지토리 생성자에 넘긴다
+ * (예: PostgreSQL은 insert ... on conflict (member_id) do update set money = excluded.money, version = member.version + 1)
+ */
+public interface SqlDialect {
+
+    /**
+     * member 한 건을 넣거나, 이미 있으면 덮어쓰는 SQL
+     * 덮어쓸 때는 version을 1 올린다.
+     * 바인드 파라미터 순서: member_id, money
+     */
+    String upsertSql();
+
+    /**
+     * created_at이 DB의 현재 시각에서 보관 기간을 뺀 시각보다 오래된 transfer_request를 최대 n건만 지우는 SQL
+     * created_at을 DB 시계로 채우므로 기준 시각도 DB 시계로 계산한다.
+     * 바인드 파라미터 순서: 현재 시각에 더할 밀리초(보관 기간의 음수), 최대 건수
+     */
+    String deleteExpiredTransferRequestsSql();
+
+    /**
+     * balance_snapshot 한 건을 넣거나, 이미 있으면 덮어쓰는 SQL
+     * 바인드 파라미터 순서: member_id, balance, last_entry_id
+     */
+    String upsertBalanceSnapshotSql();
+
+    /**
+     * 실행 계획을 보는 SQL. 바인드 파라미터는 원래 SQL과 같다
+     * analyze면 실제로 실행하면서 계획을 본다. 데이터를 바꾸는 SQL에는 쓰지 않는다
+     */
+    String explainSql(String sql, boolean analyze);
+}
@@ -0,0 +1,18 @@
+package hello.jdbcpractice.repository.ex;
+
+public class InsufficientBalanceException extends RuntimeException {
+    public InsufficientBalanceException() {
+    }
+
+    public InsufficientBalanceException(String message) {
+        super(message);
+    }
+
+    public InsufficientBalanceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public InsufficientBalanceException(Throwable cause) {
+        super(cause);
+    }
+}
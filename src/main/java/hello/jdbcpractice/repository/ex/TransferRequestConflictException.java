@@ -0,0 +1,21 @@
+package hello.jdbcpractice.repository.ex;
+
+/**
+ * 이미 처리한 멱등 키로 다른 내용의 이체를 요청했을 때
+ */
+public class TransferRequestConflictException extends RuntimeException {
+    public TransferRequestConflictException() {
+    }
+
+    public TransferRequestConflictException(String message) {
+        super(message);
+    }
+
+    public TransferRequestConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public TransferRequestConflictException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,16 @@
+package hello.jdbcpractice.repository.idempotency;
+
+import java.time.Instant;
+
+/**
+ * 처리한 계좌이체 요청. requestKey는 클라이언트가 재시도할 때 그대로 다시 보내는 멱등 키다
+ */
+public record TransferRequest(String requestKey, String fromId, String toId, int money, Instant createdAt) {
+
+    /**
+     * 같은 키로 들어온 요청이 같은 이체인지 확인. 키를 다른 이체에 다시 쓰면 false
+     */
+    public boolean sameTransfer(String fromId, String toId, int money) {
+        return this.fromId.equals(fromId) && this.toId.equals(toId) && this.money == money;
+    }
+}
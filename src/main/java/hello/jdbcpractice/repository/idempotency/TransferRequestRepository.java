@@ -0,0 +1,71 @@
+package hello.jdbcpractice.repository.idempotency;
+
+import hello.jdbcpractice.repository.dialect.H2Dialect;
+import hello.jdbcpractice.repository.dialect.SqlDialect;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * transfer_request 테이블 - JdbcTemplate 사용
+ * 이체와 같은 트랜잭션에서 호출해야 이체가 롤백될 때 키도 같이 사라진다.
+ */
+@Slf4j
+public class TransferRequestRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect dialect;
+
+    public TransferRequestRepository(DataSource dataSource) {
+        this(dataSource, new H2Dialect());
+    }
+
+    public TransferRequestRepository(DataSource dataSource, SqlDialect dialect) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dialect = dialect;
+    }
+
+    /**
+     * 키를 저장한다. 이미 있는 키면 false
+     * 같은 키를 다른 트랜잭션이 먼저 넣고 아직 커밋하지 않았으면, 그 트랜잭션이 끝날 때까지 unique 인덱스에서 기다린다.
+     * 앞 트랜잭션이 롤백되면 여기서 저장에 성공한다.
+     */
+    public boolean insertIfAbsent(String requestKey, String fromId, String toId, int money) {
+        String sql = "insert into transfer_request (request_key, from_id, to_id, money) values (?, ?, ?, ?)";
+        try {
+            jdbcTemplate.update(sql, requestKey, fromId, toId, money);
+            return true;
+        } catch (DuplicateKeyException e) {
+            log.debug("duplicate transfer request key={}", requestKey);
+            return false;
+        }
+    }
+
+    public Optional<TransferRequest> findByKey(String requestKey) {
+        String sql = "select * from transfer_request where request_key = ?";
+        return jdbcTemplate.query(sql, transferRequestRowMapper(), requestKey).stream().findFirst();
+    }
+
+    /**
+     * 저장된 지 retention보다 오래된 키를 최대 batchSize건 지우고 지운 건수를 돌려준다
+     * 한 번에 전부 지우지 않고 나눠서 지워야 락과 undo 로그가 짧게 유지된다.
+     * 기준 시각은 created_at과 같은 DB 시계로 계산하므로 애플리케이션 서버 시계가 어긋나도 영향이 없다.
+     */
+    public int deleteExpired(Duration retention, int batchSize) {
+        return jdbcTemplate.update(dialect.deleteExpiredTransferRequestsSql(), -retention.toMillis(), batchSize);
+    }
+
+    private RowMapper<TransferRequest> transferRequestRowMapper() {
+        return (rs, rowNum) -> new TransferRequest(
+                rs.getString("request_key"),
+                rs.getString("from_id"),
+                rs.getString("to_id"),
+                rs.getInt("money"),
+                rs.getTimestamp("created_at").toInstant());
+    }
+}
@@ -0,0 +1,129 @@
+package hello.jdbcpractice.repository.ledger;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 원장이 쌓인 회원의 잔액 스냅샷을 주기적으로 새로 쓴다
+ *
+ * 스냅샷 이후 원장이 minEntries줄을 넘지 않게 유지해서 잔액 조회 비용이 원장 크기와 상관없이 일정하다.
+ * 회원마다 따로 짧은 트랜잭션으로 처리하므로 이체가 회원 행 락을 오래 기다리지 않는다.
+ * 원장 행은 지우지 않는다.
+ *
+ * 원장 전체를 매번 세지 않도록 회원별 스냅샷 이후 원장 줄 수(pending)를 메모리에 들고 있다.
+ * 처음 한 번만 스냅샷 이후 원장을 모두 세고, 그 뒤로는 지난번에 본 가장 큰 entry_id(scannedEntryId) 이후만 읽어서 더한다.
+ * entry_id는 커밋 순서와 다를 수 있어서 늦게 커밋된 줄은 세지 못할 수 있고, 스냅샷 직전에 센 줄을 한 번 더 셀 수도 있다.
+ * 그래서 pending은 스냅샷 시점을 정하는 데만 쓰는 어림값이다. 스냅샷 자체는 항상 DB의 원장으로 계산한다.
+ */
+@Slf4j
+public class LedgerCompactor implements AutoCloseable {
+    public static final int DEFAULT_MIN_ENTRIES = 100;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final LedgerRepository ledgerRepository;
+    private final TransactionTemplate txTemplate;
+    private final int minEntries;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder snapshotCount = new LongAdder();
+
+    // compact()는 synchronized라서 아래 두 필드는 한 스레드만 본다
+    private final Map<String, Long> pending = new HashMap<>();
+    private long scannedEntryId = -1;
+
+    public LedgerCompactor(LedgerRepository ledgerRepository, PlatformTransactionManager transactionManager) {
+        this(ledgerRepository, transactionManager, DEFAULT_MIN_ENTRIES, DEFAULT_BATCH_SIZE, Duration.ofSeconds(10));
+    }
+
+    public LedgerCompactor(LedgerRepository ledgerRepository, PlatformTransactionManager transactionManager,
+                           int minEntries, int batchSize, Duration interval) {
+        this.ledgerRepository = ledgerRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.minEntries = minEntries;
+        this.batchSize = batchSize;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 원장이 minEntries줄 이상 쌓인 회원을 최대 batchSize명 스냅샷한다
+     *
+     * @return 스냅샷한 회원 수
+     */
+    public synchronized int compact() {
+        scanNewEntries();
+
+        List<String> memberIds = pending.entrySet().stream()
+                .filter(entry -> entry.getValue() >= minEntries)
+                .map(Map.Entry::getKey)
+                .limit(batchSize)
+                .toList();
+        int compacted = 0;
+        for (String memberId : memberIds) {
+            Integer entries = txTemplate.execute(status -> ledgerRepository.snapshot(memberId));
+            pending.remove(memberId);
+            if (entries != null && entries > 0) {
+                compacted++;
+            }
+        }
+        snapshotCount.add(compacted);
+        if (compacted > 0) {
+            log.info("ledger snapshots written={}", compacted);
+        }
+        return compacted;
+    }
+
+    private void scanNewEntries() {
+        List<PendingEntries> counts;
+        if (scannedEntryId < 0) {
+            // 세는 동안 추가된 줄은 다음 번에 한 번 더 셀 수 있지만 빠뜨리지는 않는다
+            scannedEntryId = ledgerRepository.lastEntryId();
+            counts = ledgerRepository.countEntriesSinceSnapshot();
+        } else {
+            counts = ledgerRepository.countEntriesAfter(scannedEntryId);
+        }
+        for (PendingEntries count : counts) {
+            pending.merge(count.memberId(), count.entries(), Long::sum);
+            scannedEntryId = Math.max(scannedEntryId, count.lastEntryId());
+        }
+    }
+
+    public long getSnapshotCount() {
+        return snapshotCount.sum();
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("ledger compaction failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
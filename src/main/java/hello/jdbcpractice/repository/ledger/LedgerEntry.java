@@ -0,0 +1,14 @@
+package hello.jdbcpractice.repository.ledger;
+
+import java.time.Instant;
+
+/**
+ * 원장 한 줄. amount는 잔액 변화량이다 (출금은 음수, 입금은 양수)
+ * entryId, createdAt은 저장할 때 DB가 정하므로 새로 만든 항목에서는 null이다.
+ */
+public record LedgerEntry(Long entryId, String memberId, int amount, String counterpartyId, Instant createdAt) {
+
+    public static LedgerEntry of(String memberId, int amount, String counterpartyId) {
+        return new LedgerEntry(null, memberId, amount, counterpartyId, null);
+    }
+}
@@ -0,0 +1,154 @@
+package hello.jdbcpractice.repository.ledger;
+
+import hello.jdbcpractice.repository.dialect.H2Dialect;
+import hello.jdbcpractice.repository.dialect.SqlDialect;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ledger, balance_snapshot 테이블 - JdbcTemplate 사용
+ *
+ * 잔액 = 마지막 스냅샷 잔액 + 스냅샷 이후 원장 amount 합계
+ * 스냅샷이 아직 없는 회원은 member.money를 기초 잔액으로 쓴다. 원장 모드에서는 member.money를 갱신하지 않는다.
+ *
+ * 원장 추가와 스냅샷 작성은 모두 member 행 락(select ... for update)을 잡은 트랜잭션 안에서 해야 한다.
+ * entry_id는 insert할 때 정해지고 커밋 순서와 다를 수 있는데,
+ * 같은 회원의 원장을 락을 잡고만 추가하면 스냅샷을 쓰는 시점에 그 회원의 커밋되지 않은 원장이 없다.
+ */
+@Slf4j
+public class LedgerRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect dialect;
+
+    public LedgerRepository(DataSource dataSource) {
+        this(dataSource, new H2Dialect());
+    }
+
+    public LedgerRepository(DataSource dataSource, SqlDialect dialect) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dialect = dialect;
+    }
+
+    /**
+     * 원장 여러 줄을 batchUpdate 한 번으로 추가
+     */
+    public void append(List<LedgerEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        String sql = "insert into ledger (member_id, amount, counterparty_id) values (?, ?, ?)";
+        List<Object[]> args = new ArrayList<>(entries.size());
+        for (LedgerEntry entry : entries) {
+            args.add(new Object[]{entry.memberId(), entry.amount(), entry.counterpartyId()});
+        }
+        jdbcTemplate.batchUpdate(sql, args);
+    }
+
+    /**
+     * 스냅샷 이후 원장만 더하므로 (member_id, entry_id) 인덱스 범위 하나만 읽는다
+     */
+    public long balanceOf(String memberId) {
+        String sql = "select coalesce(s.balance, m.money)"
+                + " + coalesce((select sum(l.amount) from ledger l"
+                + " where l.member_id = m.member_id and l.entry_id > coalesce(s.last_entry_id, 0)), 0) balance"
+                + " from member m left join balance_snapshot s on s.member_id = m.member_id"
+                + " where m.member_id = ?";
+        List<Long> result = jdbcTemplate.queryForList(sql, Long.class, memberId);
+        if (result.isEmpty()) {
+            throw new NoSuchElementException("member not found memberId:" + memberId);
+        }
+        return result.get(0);
+    }
+
+    public List<LedgerEntry> findEntries(String memberId) {
+        String sql = "select * from ledger where member_id = ? order by entry_id";
+        return jdbcTemplate.query(sql, ledgerEntryRowMapper(), memberId);
+    }
+
+    /**
+     * 지금까지 추가된 원장 중 가장 큰 entry_id. 원장이 비어 있으면 0
+     */
+    public long lastEntryId() {
+        Long last = jdbcTemplate.queryForObject("select coalesce(max(entry_id), 0) from ledger", Long.class);
+        return last == null ? 0 : last;
+    }
+
+    /**
+     * 회원별로 스냅샷 이후 원장 줄 수. 원장 전체를 읽으므로 컴팩터가 시작할 때 한 번만 쓴다
+     */
+    public List<PendingEntries> countEntriesSinceSnapshot() {
+        String sql = "select l.member_id, count(*) entries, max(l.entry_id) last_entry_id from ledger l"
+                + " left join balance_snapshot s on s.member_id = l.member_id"
+                + " where l.entry_id > coalesce(s.last_entry_id, 0)"
+                + " group by l.member_id";
+        return jdbcTemplate.query(sql, pendingEntriesRowMapper());
+    }
+
+    /**
+     * 회원별로 entryId 이후 원장 줄 수. 기본 키(entry_id) 범위만 읽는다
+     */
+    public List<PendingEntries> countEntriesAfter(long entryId) {
+        String sql = "select member_id, count(*) entries, max(entry_id) last_entry_id from ledger"
+                + " where entry_id > ?"
+                + " group by member_id";
+        return jdbcTemplate.query(sql, pendingEntriesRowMapper(), entryId);
+    }
+
+    /**
+     * 회원 행을 잠그고, 지금까지의 원장을 반영한 스냅샷을 쓴다. 트랜잭션 안에서 호출해야 한다
+     *
+     * @return 새로 스냅샷에 반영한 원장 줄 수
+     */
+    public int snapshot(String memberId) {
+        List<String> locked = jdbcTemplate.queryForList(
+                "select member_id from member where member_id = ? for update", String.class, memberId);
+        if (locked.isEmpty()) {
+            return 0;
+        }
+
+        String sql = "select coalesce(s.balance, m.money) base, coalesce(s.last_entry_id, 0) last_entry_id"
+                + " from member m left join balance_snapshot s on s.member_id = m.member_id"
+                + " where m.member_id = ?";
+        long[] base = jdbcTemplate.queryForObject(sql,
+                (rs, rowNum) -> new long[]{rs.getLong("base"), rs.getLong("last_entry_id")}, memberId);
+
+        String deltaSql = "select count(*) entries, coalesce(sum(amount), 0) amount, max(entry_id) last_entry_id"
+                + " from ledger where member_id = ? and entry_id > ?";
+        long[] delta = jdbcTemplate.queryForObject(deltaSql,
+                (rs, rowNum) -> new long[]{rs.getLong("entries"), rs.getLong("amount"), rs.getLong("last_entry_id")},
+                memberId, base[1]);
+        if (delta[0] == 0) {
+            return 0;
+        }
+
+        jdbcTemplate.update(dialect.upsertBalanceSnapshotSql(), memberId, base[0] + delta[1], delta[2]);
+        return (int) delta[0];
+    }
+
+    private RowMapper<PendingEntries> pendingEntriesRowMapper() {
+        return (rs, rowNum) -> new PendingEntries(
+                rs.getString("member_id"),
+                rs.getLong("entries"),
+                rs.getLong("last_entry_id"));
+    }
+
+    private RowMapper<LedgerEntry> ledgerEntryRowMapper() {
+        return (rs, rowNum) -> {
+            Timestamp createdAt = rs.getTimestamp("created_at");
+            return new LedgerEntry(
+                    rs.getLong("entry_id"),
+                    rs.getString("member_id"),
+                    rs.getInt("amount"),
+                    rs.getString("counterparty_id"),
+                    createdAt == null ? null : createdAt.toInstant());
+        };
+    }
+}
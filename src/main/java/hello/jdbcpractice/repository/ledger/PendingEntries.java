@@ -0,0 +1,9 @@
+package hello.jdbcpractice.repository.ledger;
+
+/**
+ * 한 회원에 대해 어떤 entry_id 이후로 쌓인 원장 줄 수
+ *
+ * @param lastEntryId 센 원장 중 가장 큰 entry_id
+ */
+public record PendingEntries(String memberId, long entries, long lastEntryId) {
+}
@@ -0,0 +1,51 @@
+package hello.jdbcpractice.repository.shard;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 일관된 해시(consistent hashing) 링
+ *
+ * 노드마다 가상 노드를 여러 개 링에 올리고, 키의 해시 다음(시계 방향)에 있는 노드를 고른다.
+ * 노드를 하나 추가하면 새 노드가 맡게 되는 키(전체의 약 1/N)만 옮겨지고 나머지 키의 위치는 그대로다.
+ */
+public class ConsistentHashRing<T> {
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    /**
+     * @param nodes 노드 이름 -> 노드. 이름이 같으면 링 위치도 같으므로 재시작해도 라우팅이 바뀌지 않는다
+     */
+    public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("ring needs at least one node");
+        }
+        nodes.forEach((name, node) -> {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(name + "#" + i), node);
+            }
+        });
+    }
+
+    public T route(String key) {
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * MD5 앞 8바이트. 분포가 고르고 JVM이나 실행마다 값이 바뀌지 않는다 (String.hashCode는 분포가 치우친다)
+     */
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
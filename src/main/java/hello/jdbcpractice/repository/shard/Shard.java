@@ -0,0 +1,28 @@
+package hello.jdbcpractice.repository.shard;
+
+import hello.jdbcpractice.repository.JdbcMemberRepository;
+import hello.jdbcpractice.repository.MemberRepositoryV5;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * 샤드 하나
+ *
+ * @param name       링 위치를 정하는 이름. 한 번 정하면 바꾸지 않는다
+ * @param repository 이 샤드의 DataSource를 쓰는 리포지토리
+ * @param txTemplate 이 샤드의 DataSource에 대한 트랜잭션
+ */
+public record Shard(String name, JdbcMemberRepository repository, TransactionTemplate txTemplate) {
+
+    public static Shard of(String name, DataSource dataSource) {
+        return new Shard(name, new MemberRepositoryV5(dataSource),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+    }
+
+    @Override
+    public String toString() {
+        return "Shard[" + name + "]";
+    }
+}
@@ -0,0 +1,91 @@
+package hello.jdbcpractice.repository.shard;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.BatchResult;
+import hello.jdbcpractice.repository.MemberPage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+/**
+ * 샤드를 추가한 뒤 링이 가리키는 샤드와 실제로 저장된 샤드가 다른 회원을 옮긴다
+ *
+ * 새 샤드 목록으로 만든 ShardedMemberRepository를 넘기면 모든 샤드를 페이지 단위로 훑으면서
+ * 자리가 바뀐 회원만 새 샤드에 upsert하고, 성공한 회원을 원래 샤드에서 지운다.
+ * upsert 후 delete 순서라서 중간에 멈춰도 회원이 사라지지 않고, 다시 실행하면 남은 회원만 옮긴다.
+ *
+ * 옮기는 동안 같은 회원에 대한 쓰기가 들어오면 옮긴 값이 덮어쓸 수 있으므로 쓰기를 멈추고 실행한다.
+ */
+@Slf4j
+public class ShardRebalancer {
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    private final int pageSize;
+
+    public ShardRebalancer() {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    public ShardRebalancer(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return 옮긴 회원 수
+     */
+    public long rebalance(ShardedMemberRepository target) {
+        long moved = 0;
+        for (Shard source : target.getShards()) {
+            long movedFromShard = rebalanceShard(target, source);
+            log.info("rebalance source={}, moved={}", source, movedFromShard);
+            moved += movedFromShard;
+        }
+        return moved;
+    }
+
+    /**
+     * 키셋 페이지로 읽으므로 읽은 회원을 지워도 다음 페이지 위치가 어긋나지 않는다
+     */
+    private long rebalanceShard(ShardedMemberRepository target, Shard source) {
+        long moved = 0;
+        String pageToken = null;
+
+        do {
+            MemberPage page = source.repository().findPage(pageToken, pageSize);
+
+            Map<Shard, List<Member>> misplaced = new LinkedHashMap<>();
+            for (Member member : page.members()) {
+                Shard owner = target.shardOf(member.getMemberId());
+                if (!owner.equals(source)) {
+                    misplaced.computeIfAbsent(owner, shard -> new ArrayList<>()).add(member);
+                }
+            }
+
+            for (Map.Entry<Shard, List<Member>> entry : misplaced.entrySet()) {
+                moved += move(source, entry.getKey(), entry.getValue());
+            }
+            pageToken = page.nextPageToken();
+        } while (pageToken != null);
+
+        return moved;
+    }
+
+    private int move(Shard source, Shard owner, List<Member> members) {
+        BatchResult<Member> result = owner.repository().upsertAll(members);
+
+        Set<Member> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BatchResult.Failure<Member> failure : result.getFailures()) {
+            log.warn("rebalance upsert failed member={}, owner={}", failure.item(), owner, failure.cause());
+            failed.add(failure.item());
+        }
+
+        int moved = 0;
+        for (Member member : members) {
+            if (!failed.contains(member)) {
+                source.repository().delete(member.getMemberId());
+                moved++;
+            }
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,348 @@
+package hello.jdbcpractice.repository.shard;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.BatchResult;
+import hello.jdbcpractice.repository.JdbcMemberRepository;
+import hello.jdbcpractice.repository.MemberPage;
+import hello.jdbcpractice.repository.PageCursor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * memberId의 일관된 해시로 샤드를 골라서 호출하는 MemberRepository
+ *
+ * - 한 회원 작업: 해당 샤드로 그대로 보낸다
+ * - 여러 회원 작업(saveAll, upsertAll, updateAll, deleteAll, findAllByIds): 샤드별로 나누어 동시에 실행하고 결과를 합친다
+ * - 전체 조회(streamAll, findPage): 모든 샤드를 읽어서 합친다
+ * - 이체: 같은 샤드면 그 샤드의 트랜잭션 하나로 처리한다.
+ *   샤드가 다르면 출금 샤드에서 출금을 커밋한 뒤 입금 샤드에서 입금한다.
+ *   입금이 실패하면 출금 샤드에 다시 입금해서 되돌린다(보상 트랜잭션).
+ *   두 샤드를 한 번에 커밋하지 않으므로 그 사이에는 출금만 된 상태가 잠깐 보인다.
+ * - 변화량 반영(applyDeltas): 샤드마다 따로 커밋하고, 실패하면 커밋한 샤드를 같은 방식으로 되돌린다.
+ *
+ * 샤드 트랜잭션은 샤드마다 따로 연다. 호출한 쪽의 트랜잭션(다른 DataSource)에는 참여하지 않는다.
+ */
+@Slf4j
+public class ShardedMemberRepository implements JdbcMemberRepository, AutoCloseable {
+
+    private final List<Shard> shards;
+    private final ConsistentHashRing<Shard> ring;
+    private final ExecutorService executor;
+
+    public ShardedMemberRepository(List<Shard> shards) {
+        this(shards, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardedMemberRepository(List<Shard> shards, int virtualNodes) {
+        Map<String, Shard> nodes = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            if (nodes.put(shard.name(), shard) != null) {
+                throw new IllegalArgumentException("duplicate shard name: " + shard.name());
+            }
+        }
+        this.shards = List.copyOf(shards);
+        this.ring = new ConsistentHashRing<>(nodes, virtualNodes);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "member-shard-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public Shard shardOf(String memberId) {
+        return ring.route(memberId);
+    }
+
+    @Override
+    public Member save(Member member) {
+        return shardOf(member.getMemberId()).repository().save(member);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return shardOf(memberId).repository().findById(memberId);
+    }
+
+    /**
+     * 호출한 쪽이 해당 샤드의 트랜잭션을 열어 두어야 락이 유지된다
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return shardOf(memberId).repository().findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        shardOf(memberId).repository().update(memberId, money);
+    }
+
+    @Override
+    public boolean compareAndUpdate(String memberId, long expectedVersion, int newMoney) {
+        return shardOf(memberId).repository().compareAndUpdate(memberId, expectedVersion, newMoney);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        shardOf(memberId).repository().delete(memberId);
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        return shardOf(member.getMemberId()).repository().upsert(member);
+    }
+
+    @Override
+    public void withdraw(String memberId, int money) {
+        shardOf(memberId).repository().withdraw(memberId, money);
+    }
+
+    @Override
+    public void deposit(String memberId, int money) {
+        shardOf(memberId).repository().deposit(memberId, money);
+    }
+
+    /**
+     * 샤드별로 나누어 샤드마다 따로 트랜잭션으로 반영한다
+     * 이체와 같이 출금(음수 변화량)이 있는 샤드부터 반영하고, 어느 샤드에서 실패하면
+     * 이미 커밋한 샤드에 반대 변화량을 반영해서 되돌린다(보상 트랜잭션).
+     * 샤드를 한 번에 커밋하지 않으므로 그 사이에는 일부 샤드만 반영된 상태가 잠깐 보인다.
+     */
+    @Override
+    public void applyDeltas(Map<String, Integer> deltas) {
+        Map<Shard, Map<String, Integer>> groups = new LinkedHashMap<>();
+        groupByShard(deltas.keySet(), Function.identity()).forEach((shard, memberIds) -> {
+            Map<String, Integer> shardDeltas = new HashMap<>();
+            memberIds.forEach(memberId -> shardDeltas.put(memberId, deltas.get(memberId)));
+            groups.put(shard, shardDeltas);
+        });
+
+        if (groups.size() <= 1) {
+            groups.forEach((shard, shardDeltas) ->
+                    shard.txTemplate().executeWithoutResult(status -> shard.repository().applyDeltas(shardDeltas)));
+            return;
+        }
+
+        List<Shard> order = new ArrayList<>(groups.keySet());
+        order.sort(Comparator.comparing((Shard shard) -> !hasWithdrawal(groups.get(shard))));
+
+        Deque<Shard> applied = new ArrayDeque<>();
+        for (Shard shard : order) {
+            try {
+                shard.txTemplate().executeWithoutResult(status -> shard.repository().applyDeltas(groups.get(shard)));
+            } catch (RuntimeException e) {
+                compensateDeltas(applied, groups, e);
+                throw e;
+            }
+            applied.push(shard);
+        }
+    }
+
+    private static boolean hasWithdrawal(Map<String, Integer> deltas) {
+        return deltas.values().stream().anyMatch(delta -> delta < 0);
+    }
+
+    /**
+     * 이미 커밋한 샤드의 변화량을 나중에 반영한 샤드부터 거꾸로 되돌린다
+     * 되돌리기가 실패한 샤드는 ERROR 로그로 남기고 원래 예외에 붙인다
+     */
+    private void compensateDeltas(Deque<Shard> applied, Map<Shard, Map<String, Integer>> groups, RuntimeException cause) {
+        for (Shard shard : applied) {
+            Map<String, Integer> reverse = new HashMap<>();
+            groups.get(shard).forEach((memberId, delta) -> reverse.put(memberId, -delta));
+            log.warn("cross-shard applyDeltas failed, compensate shard={}, deltas={}", shard, groups.get(shard));
+            try {
+                shard.txTemplate().executeWithoutResult(status -> shard.repository().applyDeltas(reverse));
+            } catch (RuntimeException e) {
+                log.error("cross-shard compensation failed, manual fix needed shard={}, deltas={}", shard, groups.get(shard), e);
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    @Override
+    public BatchResult<Member> saveAll(Collection<Member> members) {
+        return mergeResults(fanOut(groupByShard(members, Member::getMemberId),
+                (shard, chunk) -> shard.repository().saveAll(chunk)));
+    }
+
+    @Override
+    public BatchResult<Member> upsertAll(Collection<Member> members) {
+        return mergeResults(fanOut(groupByShard(members, Member::getMemberId),
+                (shard, chunk) -> shard.repository().upsertAll(chunk)));
+    }
+
+    @Override
+    public void updateAll(Map<String, Integer> balances) {
+        fanOut(groupByShard(balances.keySet(), Function.identity()), (shard, chunk) -> {
+            Map<String, Integer> shardBalances = new HashMap<>();
+            chunk.forEach(memberId -> shardBalances.put(memberId, balances.get(memberId)));
+            shard.repository().updateAll(shardBalances);
+            return chunk.size();
+        });
+    }
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        fanOut(groupByShard(new LinkedHashSet<>(memberIds), Function.identity()), (shard, chunk) -> {
+            shard.repository().deleteAll(chunk);
+            return chunk.size();
+        });
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        fanOut(groupByShard(new LinkedHashSet<>(memberIds), Function.identity()),
+                (shard, chunk) -> shard.repository().findAllByIds(chunk))
+                .forEach(result::putAll);
+        return result;
+    }
+
+    /**
+     * 샤드를 하나씩 차례로 읽는다. 전체 순서는 정해져 있지 않다
+     * 샤드 스트림은 앞 샤드를 다 읽은 뒤에 열리므로 커넥션은 한 번에 하나만 잡는다
+     */
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        return shards.stream().flatMap(shard -> shard.repository().streamAll(fetchSize));
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int limit) {
+        return mergePages(PageCursor.Order.MEMBER_ID, Comparator.comparing(Member::getMemberId),
+                shard -> shard.repository().findPage(pageToken, limit), limit);
+    }
+
+    @Override
+    public MemberPage findPageByMoney(String pageToken, int limit) {
+        return mergePages(PageCursor.Order.MONEY,
+                Comparator.comparingInt(Member::getMoney).thenComparing(Member::getMemberId),
+                shard -> shard.repository().findPageByMoney(pageToken, limit), limit);
+    }
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        Shard fromShard = shardOf(fromId);
+        Shard toShard = shardOf(toId);
+
+        if (fromShard.equals(toShard)) {
+            fromShard.txTemplate().executeWithoutResult(status -> fromShard.repository().transfer(fromId, toId, money));
+            return;
+        }
+
+        fromShard.txTemplate().executeWithoutResult(status -> fromShard.repository().withdraw(fromId, money));
+        try {
+            toShard.txTemplate().executeWithoutResult(status -> toShard.repository().deposit(toId, money));
+        } catch (RuntimeException e) {
+            compensate(fromShard, fromId, toId, money, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 입금이 실패한 이체의 출금을 되돌린다
+     * 되돌리기도 실패하면 돈이 빠진 채로 남으므로 ERROR 로그로 남기고 원래 예외에 붙여서 던진다
+     */
+    private void compensate(Shard fromShard, String fromId, String toId, int money, RuntimeException cause) {
+        log.warn("cross-shard deposit failed, compensate fromId={}, toId={}, money={}", fromId, toId, money);
+        try {
+            fromShard.txTemplate().executeWithoutResult(status -> fromShard.repository().deposit(fromId, money));
+        } catch (RuntimeException e) {
+            log.error("cross-shard compensation failed, manual fix needed fromId={}, money={}", fromId, money, e);
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * 샤드마다 limit건씩 읽어서 정렬 순서대로 합치고 앞에서 limit건만 남긴다
+     * 토큰은 정렬 키만 담고 있으므로 다음 페이지도 같은 토큰을 모든 샤드에 넘기면 된다
+     */
+    private MemberPage mergePages(PageCursor.Order order, Comparator<Member> comparator,
+                                  Function<Shard, MemberPage> query, int limit) {
+        List<MemberPage> pages = fanOut(groupAll(), (shard, ignored) -> query.apply(shard));
+
+        List<Member> merged = new ArrayList<>();
+        boolean hasNext = false;
+        for (MemberPage page : pages) {
+            merged.addAll(page.members());
+            hasNext |= page.hasNext();
+        }
+        merged.sort(comparator);
+
+        if (merged.size() > limit) {
+            merged = merged.subList(0, limit);
+            hasNext = true;
+        }
+        String nextPageToken = hasNext && !merged.isEmpty() ? PageCursor.token(order, merged.get(merged.size() - 1)) : null;
+        return new MemberPage(List.copyOf(merged), nextPageToken);
+    }
+
+    private <T> Map<Shard, List<T>> groupByShard(Collection<T> items, Function<T, String> memberIdOf) {
+        Map<Shard, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(shardOf(memberIdOf.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    private Map<Shard, List<Object>> groupAll() {
+        Map<Shard, List<Object>> groups = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            groups.put(shard, List.of());
+        }
+        return groups;
+    }
+
+    /**
+     * 샤드별 작업을 동시에 실행하고 모두 끝날 때까지 기다린다. 샤드가 하나뿐이면 호출한 스레드에서 실행한다
+     */
+    private <T, R> List<R> fanOut(Map<Shard, List<T>> groups, BiFunction<Shard, List<T>, R> task) {
+        if (groups.size() == 1) {
+            Map.Entry<Shard, List<T>> group = groups.entrySet().iterator().next();
+            return List.of(task.apply(group.getKey(), group.getValue()));
+        }
+
+        List<CompletableFuture<R>> futures = new ArrayList<>();
+        groups.forEach((shard, chunk) ->
+                futures.add(CompletableFuture.supplyAsync(() -> task.apply(shard, chunk), executor)));
+
+        List<R> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private BatchResult<Member> mergeResults(List<BatchResult<Member>> results) {
+        BatchResult<Member> merged = new BatchResult<>();
+        results.forEach(merged::merge);
+        return merged;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
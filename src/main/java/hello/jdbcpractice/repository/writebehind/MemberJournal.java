@@ -0,0 +1,176 @@
+package hello.jdbcpractice.repository.writebehind;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 메모리 매핑 파일에 회원 변경을 순서대로 덧붙이는 저널
+ *
+ * 파일 구조
+ * - 헤더 16바이트: [long 반영 완료된 마지막 번호][int MAGIC][int 예약]
+ * - 레코드: [int 길이][int CRC32][long 번호][byte 작업][short id 길이][id UTF-8][int money]
+ *
+ * 레코드는 본문, CRC, 길이 순서로 쓴다. 쓰다가 죽으면 길이가 0이거나 CRC가 맞지 않으므로 거기서 읽기를 멈춘다.
+ * 반영이 끝까지 따라오면 처음부터 다시 쓴다. 남아 있는 예전 레코드는 번호가 작아서 읽을 때 걸러진다.
+ */
+@Slf4j
+class MemberJournal implements AutoCloseable {
+    private static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x4D4A4E4C;
+    // [int 길이][int CRC32]
+    private static final int RECORD_HEADER_SIZE = 8;
+    // [long 번호][byte 작업][short id 길이][int money]
+    private static final int FIXED_PAYLOAD_SIZE = 8 + 1 + 2 + 4;
+    // member_id 컬럼 크기를 넉넉히 넘는 값
+    static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + FIXED_PAYLOAD_SIZE + 256;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean forceOnAppend;
+
+    private long appliedSeq;
+    private long lastSeq;
+
+    MemberJournal(Path path, int capacity, boolean forceOnAppend) {
+        this.forceOnAppend = forceOnAppend;
+        try {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("journal open failed path=" + path, e);
+        }
+
+        if (buffer.getInt(8) != MAGIC) {
+            buffer.putLong(0, 0L);
+            buffer.putInt(8, MAGIC);
+            buffer.putInt(HEADER_SIZE, 0);
+        }
+        this.appliedSeq = buffer.getLong(0);
+        this.lastSeq = appliedSeq;
+        buffer.position(HEADER_SIZE);
+    }
+
+    record Entry(long seq, PendingWrite.Op op, String memberId, int money) {
+    }
+
+    /**
+     * 아직 반영되지 않은 레코드를 읽고, 쓰기 위치를 마지막 정상 레코드 뒤로 옮긴다
+     */
+    synchronized List<Entry> replay() {
+        List<Entry> entries = new ArrayList<>();
+        int position = HEADER_SIZE;
+        long previousSeq = 0;
+
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < FIXED_PAYLOAD_SIZE || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            int payloadStart = position + RECORD_HEADER_SIZE;
+            if (buffer.getInt(position + 4) != crc(payloadStart, length)) {
+                log.warn("journal torn record at position={}", position);
+                break;
+            }
+            long seq = buffer.getLong(payloadStart);
+            if (seq <= previousSeq) {
+                break;
+            }
+
+            PendingWrite.Op op = PendingWrite.Op.of(buffer.get(payloadStart + 8));
+            int idLength = buffer.getShort(payloadStart + 9);
+            byte[] id = new byte[idLength];
+            buffer.get(payloadStart + 11, id);
+            int money = buffer.getInt(payloadStart + 11 + idLength);
+
+            if (seq > appliedSeq) {
+                entries.add(new Entry(seq, op, new String(id, StandardCharsets.UTF_8), money));
+            }
+            previousSeq = seq;
+            lastSeq = Math.max(lastSeq, seq);
+            position = payloadStart + length;
+        }
+
+        buffer.position(position);
+        return entries;
+    }
+
+    synchronized boolean hasRoom(int records) {
+        return buffer.remaining() >= MAX_RECORD_SIZE * records + 4;
+    }
+
+    /**
+     * 레코드 하나를 덧붙이고 번호를 돌려준다. 공간이 모자라면 IllegalStateException
+     */
+    synchronized long append(PendingWrite.Op op, String memberId, int money) {
+        byte[] id = memberId.getBytes(StandardCharsets.UTF_8);
+        int length = FIXED_PAYLOAD_SIZE + id.length;
+        if (buffer.remaining() < RECORD_HEADER_SIZE + length + 4) {
+            throw new IllegalStateException("journal full");
+        }
+
+        long seq = ++lastSeq;
+        int position = buffer.position();
+        int payloadStart = position + RECORD_HEADER_SIZE;
+
+        buffer.putLong(payloadStart, seq);
+        buffer.put(payloadStart + 8, op.code());
+        buffer.putShort(payloadStart + 9, (short) id.length);
+        buffer.put(payloadStart + 11, id);
+        buffer.putInt(payloadStart + 11 + id.length, money);
+        // 다음 레코드 자리는 0으로 비워서 읽기가 여기서 멈추게 한다
+        buffer.putInt(payloadStart + length, 0);
+
+        buffer.putInt(position + 4, crc(payloadStart, length));
+        buffer.putInt(position, length);
+        buffer.position(payloadStart + length);
+
+        if (forceOnAppend) {
+            buffer.force();
+        }
+        return seq;
+    }
+
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * seq까지 DB에 반영되었음을 기록한다. 모두 반영되었으면 저널을 처음부터 다시 쓴다
+     */
+    synchronized void markApplied(long seq) {
+        appliedSeq = Math.max(appliedSeq, seq);
+        buffer.putLong(0, appliedSeq);
+        if (appliedSeq == lastSeq) {
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.position(HEADER_SIZE);
+        }
+        buffer.force();
+    }
+
+    private int crc(int start, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start, length));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() {
+        buffer.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("journal close failed", e);
+        }
+    }
+}
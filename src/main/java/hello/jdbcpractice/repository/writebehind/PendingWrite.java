@@ -0,0 +1,47 @@
+package hello.jdbcpractice.repository.writebehind;
+
+/**
+ * 아직 DB에 반영하지 않은 회원 변경 (memberId 하나당 하나로 합쳐진 상태)
+ *
+ * @param op    반영할 작업
+ * @param money INSERT, UPSERT, UPDATE일 때 최종 money
+ * @param seq   이 상태를 만든 마지막 저널 레코드 번호
+ */
+record PendingWrite(Op op, int money, long seq) {
+
+    enum Op {
+        // save: 새로 저장
+        INSERT,
+        // 삭제 후 다시 저장 등 행이 있는지 모를 때: 넣거나 덮어쓰기
+        UPSERT,
+        // update: 있는 행만 변경
+        UPDATE,
+        DELETE;
+
+        static Op of(byte code) {
+            return values()[code];
+        }
+
+        byte code() {
+            return (byte) ordinal();
+        }
+    }
+
+    /**
+     * 같은 memberId의 변경 여러 개를 마지막 결과 하나로 합친다
+     * 저널 재생(replay)에서도 같은 규칙을 쓰므로 재시작 후에도 같은 상태가 된다
+     */
+    static PendingWrite merge(PendingWrite current, Op op, int money, long seq) {
+        if (current == null) {
+            return new PendingWrite(op, money, seq);
+        }
+        return switch (op) {
+            case INSERT, UPSERT -> new PendingWrite(current.op() == Op.DELETE ? Op.UPSERT : op, money, seq);
+            // 삭제된 회원의 update는 원래도 아무 일도 하지 않는다
+            case UPDATE -> current.op() == Op.DELETE
+                    ? new PendingWrite(Op.DELETE, 0, seq)
+                    : new PendingWrite(current.op(), money, seq);
+            case DELETE -> new PendingWrite(Op.DELETE, 0, seq);
+        };
+    }
+}
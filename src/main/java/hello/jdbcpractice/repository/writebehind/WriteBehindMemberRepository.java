@@ -0,0 +1,420 @@
+package hello.jdbcpractice.repository.writebehind;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.BatchResult;
+import hello.jdbcpractice.repository.JdbcMemberRepository;
+import hello.jdbcpractice.repository.MemberPage;
+import hello.jdbcpractice.repository.PageableMemberRepository;
+import hello.jdbcpractice.repository.StreamingMemberRepository;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import hello.jdbcpractice.repository.ex.MyDuplicateKeyException;
+import hello.jdbcpractice.repository.writebehind.PendingWrite.Op;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 쓰기를 나중에 모아서 반영하는 MemberRepository 데코레이터 (write-behind)
+ *
+ * save, update, delete는 메모리 매핑 저널에 기록만 하고 바로 돌아온다.
+ * 같은 memberId의 변경은 마지막 결과 하나로 합쳐 두었다가 flushInterval마다 원본 리포지토리에 한 번에 반영한다.
+ * 반영은 작업 종류별로 배치 하나씩(saveAll, upsertAll, updateAll, deleteAll)이다.
+ * transactionManager를 주면 한 번의 반영을 트랜잭션 하나로 묶는다. 실패하면 묶음 전체가 다시 대기열로 돌아간다.
+ * 재시작하면 저널에서 반영되지 않은 부분을 다시 읽어서 반영한다.
+ *
+ * 주의
+ * - member 테이블의 쓰기는 모두 이 리포지토리를 거쳐야 한다. 다른 경로로 쓴 값은 반영 대기 중인 값에 덮어써진다.
+ * - 반영은 호출한 쪽의 트랜잭션과 무관하게 일어난다. 롤백해도 이미 기록한 변경은 취소되지 않는다.
+ * - 반영할 때 실패한 변경(중복 키 등)은 호출한 쪽에 알릴 수 없으므로 로그만 남기고 버린다.
+ * - version은 관리하지 않는다. 조회 결과의 version은 원본 값이거나 0이고, 낙관적 갱신(VersionedMemberRepository)은 지원하지 않는다.
+ * - DB 반영이 나중에 일어나므로 DB 행 락으로 보호할 수 없다. LockingMemberRepository도 구현하지 않는다.
+ * - forceOnAppend가 false면 운영체제 페이지 캐시까지만 기록한다. 프로세스가 죽어도 남지만 장비가 꺼지면 잃을 수 있다.
+ */
+@Slf4j
+public class WriteBehindMemberRepository implements StreamingMemberRepository, PageableMemberRepository, AutoCloseable {
+    public static final int DEFAULT_JOURNAL_SIZE = 64 * 1024 * 1024;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(200);
+
+    private final JdbcMemberRepository target;
+    // null이면 반영을 트랜잭션으로 묶지 않는다
+    private final TransactionTemplate txTemplate;
+    private final MemberJournal journal;
+    private final ScheduledExecutorService flusher;
+
+    // 저널 기록과 pending 반영을 같은 순서로 하기 위한 락
+    private final Object writeLock = new Object();
+    // 반영 작업은 한 번에 하나만
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // 아직 반영을 시작하지 않은 변경
+    private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    // 반영 중인 변경. 반영이 끝나기 전까지 읽기는 여기도 본다
+    private volatile Map<String, PendingWrite> inFlight = Map.of();
+
+    public WriteBehindMemberRepository(JdbcMemberRepository target, Path journalPath) {
+        this(target, journalPath, DEFAULT_JOURNAL_SIZE, DEFAULT_FLUSH_INTERVAL, false);
+    }
+
+    public WriteBehindMemberRepository(JdbcMemberRepository target, Path journalPath, int journalSize,
+                                       Duration flushInterval, boolean forceOnAppend) {
+        this(target, journalPath, journalSize, flushInterval, forceOnAppend, null);
+    }
+
+    /**
+     * @param transactionManager target의 DataSource를 묶는 트랜잭션 매니저. null이면 트랜잭션 없이 반영한다
+     */
+    public WriteBehindMemberRepository(JdbcMemberRepository target, Path journalPath, int journalSize,
+                                       Duration flushInterval, boolean forceOnAppend,
+                                       PlatformTransactionManager transactionManager) {
+        this.target = target;
+        this.txTemplate = transactionManager == null ? null : new TransactionTemplate(transactionManager);
+        this.journal = new MemberJournal(journalPath, journalSize, forceOnAppend);
+
+        List<MemberJournal.Entry> entries = journal.replay();
+        for (MemberJournal.Entry entry : entries) {
+            pending.merge(entry.memberId(), new PendingWrite(entry.op(), entry.money(), entry.seq()),
+                    (current, next) -> PendingWrite.merge(current, next.op(), next.money(), next.seq()));
+        }
+        if (!entries.isEmpty()) {
+            log.info("journal replay records={}, members={}", entries.size(), pending.size());
+            flush();
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Member save(Member member) {
+        write(1, () -> {
+            PendingWrite current = current(member.getMemberId());
+            // UPDATE가 대기 중이면 행이 이미 있다. INSERT로 합치면 반영할 때 중복 키로 실패하고 UPDATE까지 잃는다
+            if (current != null && current.op() != Op.DELETE) {
+                throw new MyDuplicateKeyException("duplicate memberId:" + member.getMemberId());
+            }
+            append(Op.INSERT, member.getMemberId(), member.getMoney());
+        });
+        return member;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        PendingWrite current = current(memberId);
+        if (current == null) {
+            return target.findById(memberId);
+        }
+        return switch (current.op()) {
+            case INSERT, UPSERT -> new Member(memberId, current.money());
+            // UPDATE는 행이 있어야 의미가 있으므로 있는지는 원본에서 확인한다
+            case UPDATE -> new Member(target.findById(memberId).getMemberId(), current.money());
+            case DELETE -> throw new NoSuchElementException("member not found memberId=" + memberId);
+        };
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new LinkedHashMap<>();
+        List<String> missed = new ArrayList<>();
+        Map<String, PendingWrite> updated = new HashMap<>();
+
+        for (String memberId : new LinkedHashSet<>(memberIds)) {
+            PendingWrite current = current(memberId);
+            if (current == null) {
+                missed.add(memberId);
+            } else if (current.op() == Op.UPDATE) {
+                missed.add(memberId);
+                updated.put(memberId, current);
+            } else if (current.op() != Op.DELETE) {
+                result.put(memberId, new Member(memberId, current.money()));
+            }
+        }
+
+        if (!missed.isEmpty()) {
+            for (Member member : target.findAllByIds(missed).values()) {
+                PendingWrite update = updated.get(member.getMemberId());
+                result.put(member.getMemberId(),
+                        update == null ? member : new Member(member.getMemberId(), update.money()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 전체 조회는 반영 대기 중인 변경을 먼저 반영한 뒤 원본에서 읽는다
+     */
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        flush();
+        return target.streamAll(fetchSize);
+    }
+
+    /**
+     * 페이지 조회도 반영 대기 중인 변경을 먼저 반영한 뒤 원본에서 읽는다
+     */
+    @Override
+    public MemberPage findPage(String pageToken, int limit) {
+        flush();
+        return target.findPage(pageToken, limit);
+    }
+
+    @Override
+    public MemberPage findPageByMoney(String pageToken, int limit) {
+        flush();
+        return target.findPageByMoney(pageToken, limit);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        write(1, () -> append(Op.UPDATE, memberId, money));
+    }
+
+    @Override
+    public void delete(String memberId) {
+        write(1, () -> append(Op.DELETE, memberId, 0));
+    }
+
+    @Override
+    public BatchResult<Member> saveAll(Collection<Member> members) {
+        BatchResult<Member> result = new BatchResult<>();
+        for (Member member : members) {
+            try {
+                save(member);
+                result.success();
+            } catch (RuntimeException e) {
+                result.fail(member, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 두 회원의 잔액을 읽고 바꾸는 동안 다른 쓰기가 끼어들지 않도록 쓰기 락 안에서 처리한다
+     */
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        write(2, () -> {
+            Member fromMember = findById(fromId);
+            Member toMember = findById(toId);
+            if (fromMember.getMoney() < money) {
+                throw new InsufficientBalanceException("balance not enough memberId:" + fromId);
+            }
+            append(Op.UPDATE, fromId, fromMember.getMoney() - money);
+            append(Op.UPDATE, toId, toMember.getMoney() + money);
+        });
+    }
+
+    @Override
+    public void withdraw(String memberId, int money) {
+        write(1, () -> {
+            Member member = findById(memberId);
+            if (member.getMoney() < money) {
+                throw new InsufficientBalanceException("balance not enough memberId:" + memberId);
+            }
+            append(Op.UPDATE, memberId, member.getMoney() - money);
+        });
+    }
+
+    @Override
+    public void deposit(String memberId, int money) {
+        write(1, () -> append(Op.UPDATE, memberId, findById(memberId).getMoney() + money));
+    }
+
+    /**
+     * 모든 회원의 결과 잔액을 먼저 확인한 뒤 기록하므로 일부만 반영되는 일은 없다
+     */
+    @Override
+    public void applyDeltas(Map<String, Integer> deltas) {
+        write(deltas.size(), () -> {
+            Map<String, Integer> balances = new TreeMap<>();
+            deltas.forEach((memberId, delta) -> {
+                int balance = findById(memberId).getMoney() + delta;
+                if (balance < 0) {
+                    throw new InsufficientBalanceException("balance not enough memberId:" + memberId);
+                }
+                balances.put(memberId, balance);
+            });
+            balances.forEach((memberId, balance) -> append(Op.UPDATE, memberId, balance));
+        });
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        write(1, () -> append(Op.UPSERT, member.getMemberId(), member.getMoney()));
+        return member;
+    }
+
+    @Override
+    public BatchResult<Member> upsertAll(Collection<Member> members) {
+        BatchResult<Member> result = new BatchResult<>();
+        for (Member member : members) {
+            upsert(member);
+            result.success();
+        }
+        return result;
+    }
+
+    /**
+     * 반영 대기 중인 변경 수 (memberId 기준)
+     */
+    public int pendingCount() {
+        return pending.size() + inFlight.size();
+    }
+
+    /**
+     * 반영 대기 중인 변경을 지금 원본 리포지토리에 반영한다
+     * 반영이 실패하면 변경을 다시 대기열에 돌려놓고 예외를 던진다.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<String, PendingWrite> batch;
+            long lastSeq;
+            synchronized (writeLock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new HashMap<>(pending);
+                lastSeq = journal.lastSeq();
+                inFlight = batch;
+                pending.clear();
+            }
+
+            try {
+                apply(batch);
+            } catch (RuntimeException e) {
+                synchronized (writeLock) {
+                    // 반영 중에 새로 들어온 변경은 돌려놓은 변경 위에 다시 합친다
+                    batch.forEach((memberId, write) -> pending.merge(memberId, write,
+                            (newer, restored) -> PendingWrite.merge(restored, newer.op(), newer.money(), newer.seq())));
+                    inFlight = Map.of();
+                }
+                throw e;
+            }
+
+            journal.markApplied(lastSeq);
+            inFlight = Map.of();
+            log.debug("write-behind flush members={}, lastSeq={}", batch.size(), lastSeq);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("write-behind flush failed, retry next interval pending={}", pendingCount(), e);
+        }
+    }
+
+    private void apply(Map<String, PendingWrite> batch) {
+        if (txTemplate == null) {
+            applyBatches(batch);
+        } else {
+            txTemplate.executeWithoutResult(status -> applyBatches(batch));
+        }
+    }
+
+    /**
+     * 작업 종류별로 나누어 배치 하나씩으로 반영한다
+     * memberId마다 변경이 하나로 합쳐져 있으므로 종류 사이의 순서는 결과에 영향이 없다
+     */
+    private void applyBatches(Map<String, PendingWrite> batch) {
+        List<Member> inserts = new ArrayList<>();
+        List<Member> upserts = new ArrayList<>();
+        Map<String, Integer> updates = new HashMap<>();
+        List<String> deletes = new ArrayList<>();
+        for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+            String memberId = entry.getKey();
+            PendingWrite write = entry.getValue();
+            switch (write.op()) {
+                case INSERT -> inserts.add(new Member(memberId, write.money()));
+                case UPSERT -> upserts.add(new Member(memberId, write.money()));
+                case UPDATE -> updates.put(memberId, write.money());
+                case DELETE -> deletes.add(memberId);
+            }
+        }
+
+        if (!deletes.isEmpty()) {
+            target.deleteAll(deletes);
+        }
+        if (!updates.isEmpty()) {
+            target.updateAll(updates);
+        }
+        if (!inserts.isEmpty()) {
+            logFailures("insert", target.saveAll(inserts));
+        }
+        if (!upserts.isEmpty()) {
+            logFailures("upsert", target.upsertAll(upserts));
+        }
+    }
+
+    private void logFailures(String task, BatchResult<Member> result) {
+        for (BatchResult.Failure<Member> failure : result.getFailures()) {
+            log.error("write-behind {} dropped member={}", task, failure.item(), failure.cause());
+        }
+    }
+
+    /**
+     * 쓰기 락 안에서 task를 실행한다. 저널에 records개를 쓸 공간이 없으면 먼저 반영해서 저널을 비운다
+     */
+    private void write(int records, Runnable task) {
+        while (true) {
+            synchronized (writeLock) {
+                if (journal.hasRoom(records)) {
+                    task.run();
+                    return;
+                }
+            }
+            log.info("journal full, flush before append");
+            flush();
+        }
+    }
+
+    /**
+     * writeLock 안에서만 호출
+     * 반영 중인 변경과는 합치지 않는다. 그쪽은 곧 DB에 들어가므로 새 변경은 그 뒤에 따로 반영한다
+     */
+    private void append(Op op, String memberId, int money) {
+        long seq = journal.append(op, memberId, money);
+        pending.put(memberId, PendingWrite.merge(pending.get(memberId), op, money, seq));
+    }
+
+    private PendingWrite current(String memberId) {
+        PendingWrite write = pending.get(memberId);
+        return write != null ? write : inFlight.get(memberId);
+    }
+
+    /**
+     * 남은 변경을 모두 반영하고 저널을 닫는다
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.repository.BatchResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 동시에 들어온 계좌이체를 모아서 트랜잭션 하나로 커밋한다 (group commit)
+ *
+ * 첫 요청이 들어온 뒤 window 동안, 또는 maxBatchSize개가 찰 때까지 요청을 모은다.
+ * 모은 요청은 SavepointBatchExecutor로 트랜잭션 하나 안에서 요청마다 savepoint를 두고 실행한다.
+ * 한 요청이 실패하면 그 요청의 savepoint까지만 롤백하고 나머지는 계속 진행한다.
+ * 호출한 쪽의 future는 공유 트랜잭션이 커밋된 뒤에 완료된다. 커밋이 실패하면 모든 요청이 실패한다.
+ *
+ * 커밋과 로그 flush가 묶음마다 한 번이라 작은 트랜잭션이 많을 때 처리량이 늘어나는 대신,
+ * 요청마다 최대 window만큼 지연이 생기고 묶음이 끝날 때까지 행 락이 유지된다.
+ * 묶음은 스레드 하나가 순서대로 실행한다.
+ */
+@Slf4j
+public class GroupCommitTransferExecutor implements AutoCloseable {
+    public static final Duration DEFAULT_WINDOW = Duration.ofMillis(2);
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private final MemberServiceV4 memberService;
+    private final SavepointBatchExecutor batchExecutor;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder requestCount = new LongAdder();
+
+    public GroupCommitTransferExecutor(MemberServiceV4 memberService, PlatformTransactionManager transactionManager) {
+        this(memberService, transactionManager, DEFAULT_WINDOW, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param memberService 트랜잭션 프록시가 적용된 빈. 묶음 트랜잭션에 참여한다
+     */
+    public GroupCommitTransferExecutor(MemberServiceV4 memberService, PlatformTransactionManager transactionManager,
+                                       Duration window, int maxBatchSize) {
+        this.memberService = memberService;
+        this.batchExecutor = new SavepointBatchExecutor(transactionManager);
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+
+        this.worker = new Thread(this::run, "group-commit-transfer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 이체를 요청하고 커밋될 때 완료되는 future를 돌려준다
+     *
+     * 처음 확인과 큐에 넣는 사이에 close가 큐를 비우고 끝날 수 있으므로 넣은 뒤에 다시 확인한다.
+     * 그때 닫혔는데 요청이 아직 큐에 남아 있으면 아무도 완료하지 않으므로 직접 빼서 실패시킨다.
+     * 이미 빠졌다면 worker나 close가 가져간 것이므로 그쪽에서 완료한다.
+     */
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        if (!running) {
+            throw new IllegalStateException("group commit executor is closed");
+        }
+        Request request = new Request(new Transfer(fromId, toId, money), new CompletableFuture<>());
+        queue.add(request);
+        if (!running && queue.remove(request)) {
+            request.future().completeExceptionally(new IllegalStateException("group commit executor is closed"));
+        }
+        return request.future();
+    }
+
+    /**
+     * submit 후 커밋될 때까지 기다린다. 실패하면 원래 예외를 그대로 던진다
+     */
+    public void accountTransfer(String fromId, String toId, int money) {
+        try {
+            submit(fromId, toId, money).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                List<Request> batch = collect();
+                if (!batch.isEmpty()) {
+                    execute(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 첫 요청을 기다린 뒤 window가 끝나거나 maxBatchSize개가 될 때까지 모은다
+     */
+    private List<Request> collect() throws InterruptedException {
+        Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return List.of();
+        }
+
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                break;
+            }
+            Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void execute(List<Request> batch) {
+        BatchResult<Request> result = batchExecutor.execute(batch, batch.size(), request -> {
+            Transfer transfer = request.transfer();
+            memberService.accountTransfer(transfer.fromId(), transfer.toId(), transfer.money());
+        });
+
+        Map<Request, RuntimeException> failures = new IdentityHashMap<>();
+        for (BatchResult.Failure<Request> failure : result.getFailures()) {
+            failures.put(failure.item(), failure.cause());
+        }
+
+        batchCount.increment();
+        requestCount.add(batch.size());
+        for (Request request : batch) {
+            RuntimeException failure = failures.get(request);
+            if (failure == null) {
+                request.future().complete(null);
+            } else {
+                request.future().completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * 커밋한 묶음 수
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /**
+     * 커밋한 묶음에 들어 있던 요청 수 (실패한 요청 포함)
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * 새 요청을 받지 않고, 이미 들어온 요청을 모두 처리한 뒤 멈춘다
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.future().completeExceptionally(new IllegalStateException("group commit executor is closed"));
+        }
+    }
+
+    private record Request(Transfer transfer, CompletableFuture<Void> future) {
+    }
+}
@@ -0,0 +1,136 @@
+package hello.jdbcpractice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import hello.jdbcpractice.repository.ex.TransferRequestConflictException;
+import hello.jdbcpractice.repository.idempotency.TransferRequestRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 멱등 키로 같은 계좌이체가 두 번 반영되지 않게 한다
+ *
+ * 키는 transfer_request 테이블에 이체와 같은 트랜잭션으로 저장한다.
+ * - 이체가 실패해서 롤백되면 키도 남지 않으므로 클라이언트는 같은 키로 다시 시도할 수 있다.
+ * - 같은 키가 동시에 들어오면 뒤의 요청은 기본 키 인덱스에서 앞의 트랜잭션이 끝날 때까지 기다린다.
+ * 최근에 커밋한 키는 메모리에도 두어서, 타임아웃 뒤의 재시도는 DB를 거치지 않고 바로 돌려보낸다.
+ * 메모리의 키는 커밋 후에만 넣는다.
+ */
+@Slf4j
+public class IdempotentMemberService {
+    public static final long DEFAULT_MAXIMUM_RECENT_KEYS = 100_000;
+    public static final Duration DEFAULT_RECENT_KEY_TTL = Duration.ofMinutes(10);
+
+    private final MemberServiceV4 memberService;
+    private final TransferRequestRepository requestRepository;
+    private final TransactionTemplate txTemplate;
+    private final Cache<String, Transfer> recentKeys;
+
+    private final LongAdder appliedCount = new LongAdder();
+    private final LongAdder cachedDuplicateCount = new LongAdder();
+    private final LongAdder storedDuplicateCount = new LongAdder();
+
+    public IdempotentMemberService(MemberServiceV4 memberService, TransferRequestRepository requestRepository,
+                                   PlatformTransactionManager transactionManager) {
+        this(memberService, requestRepository, transactionManager, DEFAULT_MAXIMUM_RECENT_KEYS, DEFAULT_RECENT_KEY_TTL);
+    }
+
+    /**
+     * @param memberService 트랜잭션 프록시가 적용된 빈. 키 저장과 같은 트랜잭션에 참여한다
+     */
+    public IdempotentMemberService(MemberServiceV4 memberService, TransferRequestRepository requestRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   long maximumRecentKeys, Duration recentKeyTtl) {
+        this.memberService = memberService;
+        this.requestRepository = requestRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(maximumRecentKeys)
+                .expireAfterWrite(recentKeyTtl)
+                .build();
+    }
+
+    /**
+     * 멱등 키로 계좌이체
+     * 같은 키를 다른 이체에 쓰면 TransferRequestConflictException을 던진다.
+     *
+     * @return 이번 호출에서 이체했으면 true, 이미 처리한 요청이면 false
+     */
+    public boolean accountTransfer(String requestKey, String fromId, String toId, int money) {
+        Transfer transfer = new Transfer(fromId, toId, money);
+
+        Transfer recent = recentKeys.getIfPresent(requestKey);
+        if (recent != null) {
+            checkSameTransfer(requestKey, recent.equals(transfer));
+            cachedDuplicateCount.increment();
+            return false;
+        }
+
+        Boolean applied = txTemplate.execute(status -> {
+            if (!requestRepository.insertIfAbsent(requestKey, fromId, toId, money)) {
+                // 저장된 키가 그 사이 정리되었으면 내용은 확인하지 못하고 중복으로만 처리한다
+                requestRepository.findByKey(requestKey)
+                        .ifPresent(stored -> checkSameTransfer(requestKey, stored.sameTransfer(fromId, toId, money)));
+                storedDuplicateCount.increment();
+                rememberAfterCommit(requestKey, transfer);
+                return false;
+            }
+
+            memberService.accountTransfer(fromId, toId, money);
+            rememberAfterCommit(requestKey, transfer);
+            return true;
+        });
+
+        if (Boolean.TRUE.equals(applied)) {
+            appliedCount.increment();
+            return true;
+        }
+        log.debug("duplicate transfer request key={}", requestKey);
+        return false;
+    }
+
+    /**
+     * 이번 호출에서 실제로 이체한 건수
+     */
+    public long getAppliedCount() {
+        return appliedCount.sum();
+    }
+
+    /**
+     * 메모리의 최근 키로 DB 조회 없이 걸러낸 중복 요청 수
+     */
+    public long getCachedDuplicateCount() {
+        return cachedDuplicateCount.sum();
+    }
+
+    /**
+     * transfer_request 테이블에서 걸러낸 중복 요청 수
+     */
+    public long getStoredDuplicateCount() {
+        return storedDuplicateCount.sum();
+    }
+
+    private void checkSameTransfer(String requestKey, boolean same) {
+        if (!same) {
+            throw new TransferRequestConflictException("transfer request key reused with different transfer key:" + requestKey);
+        }
+    }
+
+    /**
+     * 바깥 트랜잭션에 참여한 경우에도 가장 바깥 트랜잭션이 커밋된 뒤에 넣는다
+     */
+    private void rememberAfterCommit(String requestKey, Transfer transfer) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentKeys.put(requestKey, transfer);
+            }
+        });
+    }
+}
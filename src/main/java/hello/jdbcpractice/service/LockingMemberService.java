@@ -0,0 +1,26 @@
+package hello.jdbcpractice.service;
+
+import java.util.List;
+
+/**
+ * MemberServiceV4의 계좌이체 앞에서 두 회원의 stripe 락을 먼저 잡는다
+ *
+ * 락을 잡은 뒤에 트랜잭션 프록시를 호출하므로 같은 회원을 두고 기다리는 동안에는 커넥션을 꺼내지 않는다.
+ */
+public class LockingMemberService {
+
+    private final MemberServiceV4 memberService;
+    private final StripedLockManager lockManager;
+
+    /**
+     * @param memberService 트랜잭션 프록시가 적용된 빈을 넘겨야 한다
+     */
+    public LockingMemberService(MemberServiceV4 memberService, StripedLockManager lockManager) {
+        this.memberService = memberService;
+        this.lockManager = lockManager;
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        lockManager.withLocks(List.of(fromId, toId), () -> memberService.accountTransfer(fromId, toId, money));
+    }
+}
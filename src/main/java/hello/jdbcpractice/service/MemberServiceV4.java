@@ -1,12 +1,22 @@
 package hello.jdbcpractice.service;
 
 import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.LockingMemberRepository;
 import hello.jdbcpractice.repository.MemberRepository;
 import hello.jdbcpractice.repository.MemberRepositoryV3;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import hello.jdbcpractice.repository.ledger.LedgerEntry;
+import hello.jdbcpractice.repository.ledger.LedgerRepository;
+import hello.jdbcpractice.service.engine.BalanceEngine;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * 예외 누수 문제 해결
@@ -18,14 +28,222 @@ import java.sql.SQLException;
 public class MemberServiceV4 {
 
     private final MemberRepository repository;
+    // LOCK_ORDERED, LEDGER 모드에서만 사용. repository와 같은 객체
+    private final LockingMemberRepository lockingRepository;
+    private final TransferMode transferMode;
+    // LEDGER 모드에서만 사용
+    private final LedgerRepository ledgerRepository;
+    // ENGINE 모드에서만 사용
+    private final BalanceEngine balanceEngine;
 
     public MemberServiceV4(MemberRepository repository) {
+        this(repository, TransferMode.READ_MODIFY_WRITE);
+    }
+
+    public MemberServiceV4(MemberRepository repository, TransferMode transferMode) {
+        this(repository, null, transferMode);
+    }
+
+    /**
+     * LOCK_ORDERED 모드는 행 락을 잡을 수 있는 리포지토리로만 만들 수 있다
+     */
+    public MemberServiceV4(LockingMemberRepository repository, TransferMode transferMode) {
+        this(repository, repository, transferMode);
+    }
+
+    private MemberServiceV4(MemberRepository repository, LockingMemberRepository lockingRepository,
+                            TransferMode transferMode) {
+        if (transferMode == TransferMode.LEDGER || transferMode == TransferMode.ENGINE) {
+            throw new IllegalArgumentException(transferMode + " mode requires its own constructor");
+        }
+        if (transferMode == TransferMode.LOCK_ORDERED && lockingRepository == null) {
+            throw new IllegalArgumentException("LOCK_ORDERED mode requires a LockingMemberRepository");
+        }
         this.repository = repository;
+        this.lockingRepository = lockingRepository;
+        this.transferMode = transferMode;
+        this.ledgerRepository = null;
+        this.balanceEngine = null;
+    }
+
+    /**
+     * LEDGER 모드. 회원 행 락은 repository로 잡고 잔액은 원장에서 읽는다
+     */
+    public MemberServiceV4(LockingMemberRepository repository, LedgerRepository ledgerRepository) {
+        this.repository = repository;
+        this.lockingRepository = repository;
+        this.transferMode = TransferMode.LEDGER;
+        this.ledgerRepository = ledgerRepository;
+        this.balanceEngine = null;
+    }
+
+    /**
+     * ENGINE 모드. 이체는 balanceEngine이 처리하고 repository는 쓰지 않는다
+     */
+    public MemberServiceV4(MemberRepository repository, BalanceEngine balanceEngine) {
+        this.repository = repository;
+        this.lockingRepository = null;
+        this.transferMode = TransferMode.ENGINE;
+        this.ledgerRepository = null;
+        this.balanceEngine = balanceEngine;
     }
 
     @Transactional
     public void accountTransfer(String fromId, String toId, int money) {
-        bizLogic(fromId, toId, money);
+        switch (transferMode) {
+            case RELATIVE_UPDATE -> relativeBizLogic(fromId, toId, money);
+            case LOCK_ORDERED -> lockOrderedBizLogic(fromId, toId, money);
+            case LEDGER -> ledgerBizLogic(fromId, toId, money);
+            case ENGINE -> engineBizLogic(fromId, toId, money);
+            default -> bizLogic(fromId, toId, money);
+        }
+    }
+
+    /**
+     * 여러 이체를 트랜잭션 하나로 처리
+     *
+     * 관련 회원 잔액을 한 번에 읽고, 이체를 순서대로 적용해 보면서 잔액이 모자라거나 회원이 없는 이체만 결과에 실패로 남긴다.
+     * 반영할 이체는 회원별 변화량 하나로 합쳐서(netting) applyDeltas로 한 번에 갱신한다.
+     * 이체가 아무리 많아도 문장 수는 관련 회원 수에 비례하고 커밋은 한 번이다.
+     *
+     * 잔액을 락 없이 읽으므로 그 사이 다른 트랜잭션이 잔액을 줄이면 applyDeltas에서 음수 잔액이 막히고
+     * 전체가 롤백된 뒤 OptimisticLockingFailureException이 난다 (TransientRetryPolicy로 다시 시도할 수 있다).
+     * ShardedMemberRepository에서는 샤드마다 따로 커밋하고 실패하면 커밋한 샤드를 보상 트랜잭션으로 되돌린다.
+     * LEDGER 모드에서는 관련 회원을 memberId 순서로 잠근 뒤 원장 잔액을 읽고, 반영할 이체를 원장에 한 번에 추가한다.
+     * ENGINE 모드에서는 이체를 모두 BalanceEngine에 넘기고 이체별 결과를 기다린다. 실패한 이체만 빠진다.
+     *
+     * @return 요청과 같은 순서의 결과
+     */
+    @Transactional
+    public List<TransferResult> transferAll(List<Transfer> transfers) {
+        Set<String> memberIds = new HashSet<>();
+        for (Transfer transfer : transfers) {
+            memberIds.add(transfer.fromId());
+            memberIds.add(transfer.toId());
+        }
+
+        if (transferMode == TransferMode.LEDGER) {
+            return ledgerTransferAll(transfers, memberIds);
+        }
+        if (transferMode == TransferMode.ENGINE) {
+            return engineTransferAll(transfers);
+        }
+
+        Map<String, Integer> original = new HashMap<>();
+        repository.findAllByIds(memberIds).forEach((memberId, member) -> original.put(memberId, member.getMoney()));
+        Map<String, Long> balances = new HashMap<>();
+        original.forEach((memberId, money) -> balances.put(memberId, (long) money));
+
+        List<TransferResult> results = simulate(transfers, balances);
+
+        Map<String, Integer> deltas = new HashMap<>();
+        balances.forEach((memberId, balance) -> {
+            int delta = (int) (balance - original.get(memberId));
+            if (delta != 0) {
+                deltas.put(memberId, delta);
+            }
+        });
+
+        try {
+            repository.applyDeltas(deltas);
+        } catch (InsufficientBalanceException | NoSuchElementException e) {
+            throw new OptimisticLockingFailureException("balances changed during transferAll", e);
+        }
+        log.info("transferAll transfers={}, applied members={}", transfers.size(), deltas.size());
+        return results;
+    }
+
+    private List<TransferResult> ledgerTransferAll(List<Transfer> transfers, Set<String> memberIds) {
+        Map<String, Long> balances = new HashMap<>();
+        for (String memberId : new TreeSet<>(memberIds)) {
+            try {
+                lockingRepository.findByIdForUpdate(memberId);
+            } catch (NoSuchElementException | EmptyResultDataAccessException e) {
+                continue;
+            }
+            balances.put(memberId, ledgerRepository.balanceOf(memberId));
+        }
+
+        List<TransferResult> results = simulate(transfers, balances);
+
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (TransferResult result : results) {
+            if (result.applied()) {
+                entries.addAll(ledgerEntries(result.transfer().fromId(), result.transfer().toId(), result.transfer().money()));
+            }
+        }
+        ledgerRepository.append(entries);
+        log.info("transferAll transfers={}, ledger entries={}", transfers.size(), entries.size());
+        return results;
+    }
+
+    private List<TransferResult> engineTransferAll(List<Transfer> transfers) {
+        List<CompletableFuture<Long>> futures = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            try {
+                validation(transfer.toId());
+                futures.add(balanceEngine.submit(transfer.fromId(), transfer.toId(), transfer.money()));
+            } catch (IllegalStateException e) {
+                futures.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            RuntimeException failure = null;
+            try {
+                futures.get(i).join();
+            } catch (CompletionException e) {
+                failure = e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            results.add(new TransferResult(transfers.get(i), failure));
+        }
+        return results;
+    }
+
+    /**
+     * 이체를 순서대로 적용해 보면서 balances를 갱신하고 이체별 결과를 만든다
+     */
+    private List<TransferResult> simulate(List<Transfer> transfers, Map<String, Long> balances) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            RuntimeException failure = check(transfer, balances);
+            if (failure == null) {
+                balances.merge(transfer.fromId(), (long) -transfer.money(), Long::sum);
+                balances.merge(transfer.toId(), (long) transfer.money(), Long::sum);
+            }
+            results.add(new TransferResult(transfer, failure));
+        }
+        return results;
+    }
+
+    /**
+     * 지금까지 적용한 잔액 기준으로 이체 한 건을 확인한다. 문제가 없으면 null
+     */
+    private RuntimeException check(Transfer transfer, Map<String, Long> balances) {
+        if (transfer.money() <= 0 || transfer.fromId().equals(transfer.toId())) {
+            return new IllegalArgumentException("invalid transfer: " + transfer);
+        }
+        Long fromBalance = balances.get(transfer.fromId());
+        if (fromBalance == null) {
+            return new NoSuchElementException("member not found memberId:" + transfer.fromId());
+        }
+        Long toBalance = balances.get(transfer.toId());
+        if (toBalance == null) {
+            return new NoSuchElementException("member not found memberId:" + transfer.toId());
+        }
+        try {
+            validation(transfer.toId());
+        } catch (IllegalStateException e) {
+            return e;
+        }
+        if (fromBalance < transfer.money()) {
+            return new InsufficientBalanceException("balance not enough memberId:" + transfer.fromId());
+        }
+        if (toBalance + transfer.money() > Integer.MAX_VALUE) {
+            return new IllegalStateException("balance overflow memberId:" + transfer.toId());
+        }
+        return null;
     }
 
     private void bizLogic(String fromId, String toId, int money) {
@@ -37,8 +255,63 @@ public class MemberServiceV4 {
         repository.update(toId, toMember.getMoney() + money);
     }
 
+    /**
+     * 조회 없이 상대 갱신 두 번으로 이체
+     * 샤딩에서는 transfer가 샤드마다 따로 커밋해서 서비스 트랜잭션으로 되돌릴 수 없으므로 transfer 전에 검증한다.
+     */
+    private void relativeBizLogic(String fromId, String toId, int money) {
+        validation(toId);
+        repository.transfer(fromId, toId, money);
+    }
+
+    /**
+     * 두 회원을 memberId 순서로 잠근 뒤 계산해서 update
+     */
+    private void lockOrderedBizLogic(String fromId, String toId, int money) {
+        boolean fromFirst = fromId.compareTo(toId) <= 0;
+        Member first = lockingRepository.findByIdForUpdate(fromFirst ? fromId : toId);
+        Member second = lockingRepository.findByIdForUpdate(fromFirst ? toId : fromId);
+        Member fromMember = fromFirst ? first : second;
+        Member toMember = fromFirst ? second : first;
+
+        if (fromMember.getMoney() < money) {
+            throw new InsufficientBalanceException("balance not enough memberId:" + fromId);
+        }
+        repository.update(fromId, fromMember.getMoney() - money);
+        validation(toMember);
+        repository.update(toId, toMember.getMoney() + money);
+    }
+
+    /**
+     * 두 회원을 memberId 순서로 잠근 뒤 원장 잔액을 확인하고 출금, 입금 두 줄을 추가
+     */
+    private void ledgerBizLogic(String fromId, String toId, int money) {
+        boolean fromFirst = fromId.compareTo(toId) <= 0;
+        lockingRepository.findByIdForUpdate(fromFirst ? fromId : toId);
+        lockingRepository.findByIdForUpdate(fromFirst ? toId : fromId);
+
+        if (ledgerRepository.balanceOf(fromId) < money) {
+            throw new InsufficientBalanceException("balance not enough memberId:" + fromId);
+        }
+        validation(toId);
+        ledgerRepository.append(ledgerEntries(fromId, toId, money));
+    }
+
+    private void engineBizLogic(String fromId, String toId, int money) {
+        validation(toId);
+        balanceEngine.transfer(fromId, toId, money);
+    }
+
+    private List<LedgerEntry> ledgerEntries(String fromId, String toId, int money) {
+        return List.of(LedgerEntry.of(fromId, -money, toId), LedgerEntry.of(toId, money, fromId));
+    }
+
     private void validation(Member toMember) {
-        if (toMember.getMemberId().equals("ex")) {
+        validation(toMember.getMemberId());
+    }
+
+    private void validation(String toId) {
+        if (toId.equals("ex")) {
             throw new IllegalStateException("이체 중 오류 발생");
         }
     }
@@ -0,0 +1,141 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.VersionedMemberRepository;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 낙관적 락(version)으로 계좌이체
+ *
+ * 두 회원을 락 없이 읽고, compareAndUpdate로 읽은 version일 때만 반영한다.
+ * 그 사이 다른 변경이 있으면 트랜잭션을 롤백하고 처음부터 다시 시도한다.
+ * 시도마다 트랜잭션을 새로 열어야 하므로 트랜잭션 밖에서 호출해야 한다.
+ */
+@Slf4j
+public class OptimisticTransferExecutor {
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    private final VersionedMemberRepository repository;
+    private final TransactionTemplate txTemplate;
+    private final int maxAttempts;
+
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder exhaustedCount = new LongAdder();
+
+    public OptimisticTransferExecutor(VersionedMemberRepository repository, PlatformTransactionManager transactionManager) {
+        this(repository, transactionManager, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public OptimisticTransferExecutor(VersionedMemberRepository repository, PlatformTransactionManager transactionManager,
+                                      int maxAttempts) {
+        this.repository = repository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * maxAttempts번 모두 충돌하면 OptimisticLockingFailureException을 던진다
+     */
+    public void accountTransfer(String fromId, String toId, int money) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("optimistic transfer must be called outside of a transaction");
+        }
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("fromId and toId must be different: " + fromId);
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            Boolean applied = txTemplate.execute(status -> tryTransfer(status, fromId, toId, money));
+            if (Boolean.TRUE.equals(applied)) {
+                successCount.increment();
+                return;
+            }
+
+            if (attempt >= maxAttempts) {
+                exhaustedCount.increment();
+                throw new OptimisticLockingFailureException(
+                        "transfer conflict after " + attempt + " attempts fromId:" + fromId + ", toId:" + toId);
+            }
+            retryCount.increment();
+            log.debug("transfer conflict, retry attempt={}, fromId={}, toId={}", attempt, fromId, toId);
+            backoff(attempt);
+        }
+    }
+
+    private boolean tryTransfer(TransactionStatus status, String fromId, String toId, int money) {
+        Map<String, Member> members = repository.findAllByIds(List.of(fromId, toId));
+        Member fromMember = required(members, fromId);
+        Member toMember = required(members, toId);
+
+        if (fromMember.getMoney() < money) {
+            throw new InsufficientBalanceException("balance not enough memberId:" + fromId);
+        }
+
+        // 두 이체가 서로 반대 순서로 행 락을 잡지 않도록 memberId 순서로 갱신한다
+        Member first = fromId.compareTo(toId) < 0 ? fromMember : toMember;
+        Member second = first == fromMember ? toMember : fromMember;
+        int firstMoney = first == fromMember ? first.getMoney() - money : first.getMoney() + money;
+        int secondMoney = second == fromMember ? second.getMoney() - money : second.getMoney() + money;
+
+        if (repository.compareAndUpdate(first.getMemberId(), first.getVersion(), firstMoney)
+                && repository.compareAndUpdate(second.getMemberId(), second.getVersion(), secondMoney)) {
+            return true;
+        }
+        // 한쪽만 반영된 것을 되돌린다
+        status.setRollbackOnly();
+        return false;
+    }
+
+    private Member required(Map<String, Member> members, String memberId) {
+        Member member = members.get(memberId);
+        if (member == null) {
+            throw new NoSuchElementException("member not found memberId:" + memberId);
+        }
+        return member;
+    }
+
+    /**
+     * 같은 회원을 두고 다시 부딪히지 않도록 시도 횟수에 따라 늘어나는 무작위 대기
+     */
+    private void backoff(int attempt) {
+        long maxMicros = Math.min(100L << attempt, 10_000L);
+        try {
+            TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextLong(maxMicros));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while retrying transfer", e);
+        }
+    }
+
+    public long getSuccessCount() {
+        return successCount.sum();
+    }
+
+    /**
+     * 충돌로 다시 시도한 횟수
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * 다시 시도해도 충돌해서 포기한 이체 수
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.sum();
+    }
+}
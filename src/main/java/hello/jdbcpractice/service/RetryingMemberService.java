@@ -0,0 +1,26 @@
+package hello.jdbcpractice.service;
+
+/**
+ * MemberServiceV4를 감싸서 일시적 DB 오류가 난 계좌이체를 다시 시도한다
+ *
+ * MemberServiceV4.accountTransfer는 @Transactional이라 예외가 나면 트랜잭션이 롤백된 상태로 돌아온다.
+ * 재시도는 그 바깥에서 해야 매번 새 트랜잭션으로 처음부터 실행된다.
+ * 그래서 트랜잭션 프록시 안쪽이 아니라 이 클래스에서 재시도한다.
+ */
+public class RetryingMemberService {
+
+    private final MemberServiceV4 memberService;
+    private final TransientRetryPolicy retryPolicy;
+
+    /**
+     * @param memberService 트랜잭션 프록시가 적용된 빈을 넘겨야 한다
+     */
+    public RetryingMemberService(MemberServiceV4 memberService, TransientRetryPolicy retryPolicy) {
+        this.memberService = memberService;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        retryPolicy.execute(() -> memberService.accountTransfer(fromId, toId, money));
+    }
+}
@@ -0,0 +1,87 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.repository.BatchResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 여러 건을 한 트랜잭션에서 처리하면서, 실패한 건만 savepoint로 되돌리는 도우미
+ *
+ * 항목마다 실행 전에 savepoint를 만들고, 예외가 나면 그 savepoint까지만 롤백한 뒤 다음 항목을 계속 처리한다.
+ * 중복 키나 검증 실패 한 건 때문에 묶음 전체를 다시 실행하지 않아도 된다.
+ * chunkSize마다 커밋한다. 커밋이 실패하면 그 묶음의 모든 항목이 실패로 남는다.
+ *
+ * 항목 안에서 @Transactional(REQUIRED) 서비스를 호출해도 된다.
+ * 참여한 트랜잭션이 rollback-only로 표시되어도 savepoint로 롤백할 때 표시가 지워진다.
+ */
+@Slf4j
+public class SavepointBatchExecutor {
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final TransactionTemplate txTemplate;
+
+    public SavepointBatchExecutor(PlatformTransactionManager transactionManager) {
+        this.txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public <T> BatchResult<T> execute(Collection<T> items, Consumer<T> action) {
+        return execute(items, DEFAULT_CHUNK_SIZE, action);
+    }
+
+    /**
+     * @return 커밋된 항목 수와, 실패한 항목과 원인
+     */
+    public <T> BatchResult<T> execute(Collection<T> items, int chunkSize, Consumer<T> action) {
+        BatchResult<T> result = new BatchResult<>();
+
+        List<T> chunk = new ArrayList<>(Math.min(chunkSize, items.size()));
+        for (T item : items) {
+            chunk.add(item);
+            if (chunk.size() == chunkSize) {
+                result.merge(executeChunk(chunk, action));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            result.merge(executeChunk(chunk, action));
+        }
+        return result;
+    }
+
+    private <T> BatchResult<T> executeChunk(List<T> chunk, Consumer<T> action) {
+        BatchResult<T> chunkResult = new BatchResult<>();
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                for (T item : chunk) {
+                    executeItem(status, item, action, chunkResult);
+                }
+            });
+            return chunkResult;
+        } catch (RuntimeException e) {
+            log.warn("savepoint batch commit failed, size={}", chunk.size(), e);
+            BatchResult<T> failed = new BatchResult<>();
+            chunk.forEach(item -> failed.fail(item, e));
+            return failed;
+        }
+    }
+
+    private <T> void executeItem(TransactionStatus status, T item, Consumer<T> action, BatchResult<T> result) {
+        Object savepoint = status.createSavepoint();
+        try {
+            action.accept(item);
+            status.releaseSavepoint(savepoint);
+            result.success();
+        } catch (RuntimeException e) {
+            status.rollbackToSavepoint(savepoint);
+            status.releaseSavepoint(savepoint);
+            result.fail(item, e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package hello.jdbcpractice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * memberId 해시로 나눈 고정 개수의 락 (striped lock)
+ *
+ * 같은 회원에 대한 이체가 몰리면 DB 행 락에서 기다리는 동안 커넥션을 하나씩 붙잡고 있게 된다.
+ * 트랜잭션을 열기 전에 이 락을 먼저 잡으면 JVM 안에서 줄을 서므로 기다리는 동안 커넥션을 쓰지 않는다.
+ *
+ * - 여러 회원을 잠글 때는 stripe 번호 순으로 잡아서 교착 상태가 생기지 않는다
+ * - 서로 다른 회원이 같은 stripe에 걸리면 함께 줄을 선다. stripe 수를 늘리면 줄어든다
+ * - JVM 하나 안에서만 유효하다. 서버가 여러 대면 DB 락이 여전히 필요하다
+ * - lockTimeout 안에 잡지 못하면 CannotAcquireLockException (TransientRetryPolicy가 다시 시도하는 예외)
+ */
+@Slf4j
+public class StripedLockManager {
+    public static final int DEFAULT_STRIPES = 256;
+    public static final Duration DEFAULT_LOCK_TIMEOUT = Duration.ofSeconds(5);
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final long lockTimeoutNanos;
+
+    private final LongAdder[] acquisitions;
+    private final LongAdder[] contentions;
+    private final LongAdder[] waitNanos;
+
+    public StripedLockManager() {
+        this(DEFAULT_STRIPES, DEFAULT_LOCK_TIMEOUT);
+    }
+
+    /**
+     * @param stripes 2의 거듭제곱으로 올림한다
+     */
+    public StripedLockManager(int stripes, Duration lockTimeout) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new ReentrantLock[size];
+        this.acquisitions = new LongAdder[size];
+        this.contentions = new LongAdder[size];
+        this.waitNanos = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+            acquisitions[i] = new LongAdder();
+            contentions[i] = new LongAdder();
+            waitNanos[i] = new LongAdder();
+        }
+        this.mask = size - 1;
+        this.lockTimeoutNanos = lockTimeout.toNanos();
+    }
+
+    public int stripeOf(String memberId) {
+        int h = memberId.hashCode();
+        // 상위 비트를 섞어서 하위 비트만 쓰는 mask에서도 고르게 나뉘게 한다
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    public void withLocks(Collection<String> memberIds, Runnable task) {
+        withLocks(memberIds, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * memberIds가 걸린 stripe를 번호 순으로 모두 잡고 task를 실행한다
+     */
+    public <T> T withLocks(Collection<String> memberIds, Supplier<T> task) {
+        int[] stripes = memberIds.stream().mapToInt(this::stripeOf).sorted().distinct().toArray();
+
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                lock(stripe);
+                locked++;
+            }
+            return task.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    private void lock(int stripe) {
+        ReentrantLock lock = locks[stripe];
+        acquisitions[stripe].increment();
+        if (lock.tryLock()) {
+            return;
+        }
+
+        contentions[stripe].increment();
+        long start = System.nanoTime();
+        try {
+            if (!lock.tryLock(lockTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new CannotAcquireLockException("stripe lock timeout stripe=" + stripe);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("interrupted while waiting for stripe=" + stripe, e);
+        } finally {
+            waitNanos[stripe].add(System.nanoTime() - start);
+        }
+    }
+
+    public StripeStats stats(int stripe) {
+        return new StripeStats(stripe, acquisitions[stripe].sum(), contentions[stripe].sum(),
+                waitNanos[stripe].sum(), locks[stripe].getQueueLength());
+    }
+
+    /**
+     * 기다린 시간이 긴 stripe부터 limit개
+     */
+    public List<StripeStats> hottest(int limit) {
+        List<StripeStats> stats = new ArrayList<>();
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            if (contentions[stripe].sum() > 0) {
+                stats.add(stats(stripe));
+            }
+        }
+        stats.sort(Comparator.comparingLong(StripeStats::waitNanos).reversed());
+        return stats.subList(0, Math.min(limit, stats.size()));
+    }
+
+    /**
+     * @param acquisitions 락을 잡은 횟수
+     * @param contentions  바로 잡지 못하고 기다린 횟수
+     * @param waitNanos    기다린 시간 합계
+     * @param queueLength  지금 기다리고 있는 스레드 수 (추정치)
+     */
+    public record StripeStats(int stripe, long acquisitions, long contentions, long waitNanos, int queueLength) {
+
+        public double contentionRatio() {
+            return acquisitions == 0 ? 0 : (double) contentions / acquisitions;
+        }
+    }
+}
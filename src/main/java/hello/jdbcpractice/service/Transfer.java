@@ -0,0 +1,7 @@
+package hello.jdbcpractice.service;
+
+/**
+ * 계좌이체 요청 한 건
+ */
+public record Transfer(String fromId, String toId, int money) {
+}
@@ -0,0 +1,43 @@
+package hello.jdbcpractice.service;
+
+/**
+ * MemberServiceV4의 계좌이체 방식
+ */
+public enum TransferMode {
+    /**
+     * findById 두 번으로 잔액을 읽고, 애플리케이션에서 계산한 값으로 update 두 번
+     */
+    READ_MODIFY_WRITE,
+
+    /**
+     * MemberRepository.transfer 사용
+     * money = money - ? 형태의 상대 갱신 두 번으로 끝나서 락을 잡는 시간이 짧다
+     *
+     * ShardedMemberRepository를 쓸 때는 이 방식을 써야 한다.
+     * 이체 처리를 리포지토리에 맡기므로 같은 샤드면 샤드 트랜잭션 하나로, 다른 샤드면 출금 후 입금(실패 시 보상)으로 처리된다.
+     * READ_MODIFY_WRITE는 서비스 트랜잭션이 샤드 DataSource를 묶지 못해서 update가 각각 따로 커밋된다.
+     */
+    RELATIVE_UPDATE,
+
+    /**
+     * 두 회원을 memberId 순서로 select ... for update 한 뒤 계산해서 update 두 번
+     * A->B, B->A 이체가 동시에 들어와도 같은 순서로 락을 잡으므로 교착 상태가 생기지 않는다.
+     * 락 대기 시간 초과 등 일시적 오류는 RetryingMemberService로 감싸서 다시 시도한다.
+     */
+    LOCK_ORDERED,
+
+    /**
+     * member.money를 고치지 않고 ledger 테이블에 출금, 입금 두 줄을 추가
+     * 두 회원을 LOCK_ORDERED와 같은 순서로 잠근 뒤, 원장 기준 잔액을 확인하고 추가한다.
+     * 잔액은 LedgerRepository.balanceOf로 읽고, LedgerCompactor가 스냅샷을 주기적으로 새로 쓴다.
+     */
+    LEDGER,
+
+    /**
+     * BalanceEngine에 넘겨서 메모리에서 순서대로 적용하고, DB에는 비동기로 묶어서 반영
+     * 행 락을 잡지 않으므로 같은 회원에 이체가 몰려도 DB 락 대기가 없다.
+     * 이체는 서비스 트랜잭션과 따로 처리되므로 트랜잭션이 롤백되어도 이체는 되돌려지지 않는다.
+     * 트랜잭션 프록시를 거치면 커넥션을 하나 꺼내게 되므로, 처리량이 중요하면 BalanceEngine을 직접 쓴다.
+     */
+    ENGINE
+}
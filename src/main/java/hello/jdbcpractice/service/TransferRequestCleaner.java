@@ -0,0 +1,82 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.repository.idempotency.TransferRequestRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 보관 기간이 지난 멱등 키를 주기적으로 지운다
+ *
+ * 한 번에 batchSize건씩 나눠서 지우고, 각 delete는 따로 커밋한다.
+ * 오래된 키가 많이 쌓여 있어도 락을 오래 잡거나 이체 트랜잭션을 막지 않는다.
+ * 보관 기간은 클라이언트가 재시도할 수 있는 기간보다 길게 잡아야 한다.
+ * 지울 기준 시각은 created_at을 채우는 DB 시계로 SQL 안에서 계산한다.
+ */
+@Slf4j
+public class TransferRequestCleaner implements AutoCloseable {
+    public static final Duration DEFAULT_RETENTION = Duration.ofDays(1);
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final TransferRequestRepository requestRepository;
+    private final Duration retention;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    public TransferRequestCleaner(TransferRequestRepository requestRepository) {
+        this(requestRepository, DEFAULT_RETENTION, DEFAULT_BATCH_SIZE, Duration.ofMinutes(1));
+    }
+
+    public TransferRequestCleaner(TransferRequestRepository requestRepository, Duration retention, int batchSize,
+                                  Duration interval) {
+        this.requestRepository = requestRepository;
+        this.retention = retention;
+        this.batchSize = batchSize;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transfer-request-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::cleanupQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 보관 기간이 지난 키를 모두 지우고 지운 건수를 돌려준다
+     */
+    public int cleanup() {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = requestRepository.deleteExpired(retention, batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+
+        if (total > 0) {
+            log.info("expired transfer requests deleted={}", total);
+        }
+        return total;
+    }
+
+    private void cleanupQuietly() {
+        try {
+            cleanup();
+        } catch (RuntimeException e) {
+            log.warn("transfer request cleanup failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package hello.jdbcpractice.service;
+
+/**
+ * 계좌이체 요청 한 건의 결과
+ *
+ * @param failure 반영되지 않은 이유. 반영되었으면 null
+ */
+public record TransferResult(Transfer transfer, RuntimeException failure) {
+
+    public boolean applied() {
+        return failure == null;
+    }
+}
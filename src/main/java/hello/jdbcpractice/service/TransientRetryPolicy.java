@@ -0,0 +1,133 @@
+package hello.jdbcpractice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 일시적인 DB 오류만 다시 시도하는 정책
+ *
+ * 일시적 오류: 락 대기 시간 초과(CannotAcquireLockException), 교착 상태로 희생된 트랜잭션(DeadlockLoserDataAccessException) 등
+ * TransientDataAccessException 계열. 다시 실행하면 성공할 수 있다.
+ * 그 외(중복 키, 잔액 부족, 회원 없음 등)는 다시 해도 같은 결과이므로 바로 던진다.
+ *
+ * 예외가 아직 SQLException이면(변환하지 않는 리포지토리) 리포지토리와 같은 SQLExceptionTranslator로 변환해서 판단한다.
+ * 대기 시간은 full jitter 지수 백오프: 0 ~ min(maxDelay, baseDelay * 2^(시도-1)) 사이 무작위
+ *
+ * 트랜잭션이 롤백된 뒤에 다시 시도해야 하므로 트랜잭션 바깥에서 호출해야 한다.
+ */
+@Slf4j
+public class TransientRetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(10);
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(500);
+
+    private final SQLExceptionTranslator exTranslator;
+    private final int maxAttempts;
+    private final long baseDelayMicros;
+    private final long maxDelayMicros;
+
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder exhaustedCount = new LongAdder();
+
+    public TransientRetryPolicy(SQLExceptionTranslator exTranslator) {
+        this(exTranslator, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    public TransientRetryPolicy(SQLExceptionTranslator exTranslator, int maxAttempts,
+                                Duration baseDelay, Duration maxDelay) {
+        this.exTranslator = exTranslator;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMicros = TimeUnit.NANOSECONDS.toMicros(baseDelay.toNanos());
+        this.maxDelayMicros = TimeUnit.NANOSECONDS.toMicros(maxDelay.toNanos());
+    }
+
+    public void execute(Runnable task) {
+        execute(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public <T> T execute(Supplier<T> task) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return task.get();
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    exhaustedCount.increment();
+                    log.warn("transient failure, give up after attempts={}", attempt);
+                    throw e;
+                }
+                retryCount.increment();
+                long delayMicros = delayMicros(attempt);
+                log.info("transient failure, retry attempt={}, delayMicros={}, ex={}", attempt, delayMicros, e.toString());
+                sleep(delayMicros);
+            }
+        }
+    }
+
+    /**
+     * 원인 예외를 따라가면서 일시적 오류인지 본다
+     */
+    public boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataAccessException) {
+                if (isTransientType(cause)) {
+                    return true;
+                }
+            } else if (cause instanceof SQLException sqlEx) {
+                DataAccessException translated = exTranslator.translate("retry", null, sqlEx);
+                return translated != null && isTransientType(translated);
+            }
+        }
+        return false;
+    }
+
+    private boolean isTransientType(Throwable e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof QueryTimeoutException;
+    }
+
+    long delayMicros(int attempt) {
+        long ceiling = Math.min(maxDelayMicros, baseDelayMicros << Math.min(attempt - 1, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long micros) {
+        try {
+            TimeUnit.MICROSECONDS.sleep(micros);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting to retry", e);
+        }
+    }
+
+    /**
+     * 일시적 오류로 다시 시도한 횟수
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * 다시 시도해도 실패해서 포기한 횟수
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.sum();
+    }
+}
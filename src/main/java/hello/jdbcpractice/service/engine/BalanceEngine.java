@@ -0,0 +1,460 @@
+package hello.jdbcpractice.service.engine;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepository;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 잔액을 메모리에 두고 스레드 하나가 순서대로 이체를 적용하는 엔진
+ *
+ * - 요청은 락 없는 링 버퍼(MpscRingBuffer)로 writer 스레드에 넘긴다.
+ * - 잔액은 writer 스레드만 읽고 쓰므로 락이 필요 없다. 처음 보는 회원은 writer 스레드에서 DB에서 읽어 온다.
+ * - 적용한 이체는 저널(BalanceJournal)에 덧붙이고, 링 버퍼를 비울 때마다 저널을 한 번 디스크에 내린 뒤에 완료한다 (group fsync).
+ * - 회원별 변화량을 모아서 persistInterval마다 persister 스레드가 MemberRepository.applyDeltas로 DB에 반영한다.
+ *
+ * 다시 시작하면 저널에서 DB에 반영되지 않은 이체를 읽어 잔액을 복구하고, DB와의 차이를 먼저 반영한다.
+ * 엔진을 쓰는 동안 member.money는 엔진만 바꿔야 한다. 다른 경로로 바꾼 잔액은 엔진이 알지 못한다.
+ * DB 반영은 비동기라서 member.money는 최대 persistInterval만큼 늦게 따라온다. 최신 잔액은 balanceOf로 읽는다.
+ *
+ * 저널을 디스크에 내리지 못하면 엔진을 멈춘다(fail-stop). 메모리에는 이미 적용했지만 기록되었는지 알 수 없는 이체가 있으므로
+ * 그 뒤로는 요청을 받지 않고 DB에도 반영하지 않는다. 다시 시작하면 저널에 남은 이체만 복구한다.
+ */
+@Slf4j
+public class BalanceEngine implements AutoCloseable {
+    public static final int DEFAULT_RING_CAPACITY = 1 << 16;
+    public static final int DEFAULT_JOURNAL_CAPACITY = 64 * 1024 * 1024;
+    public static final Duration DEFAULT_PERSIST_INTERVAL = Duration.ofMillis(50);
+    public static final int DEFAULT_MAX_PERSIST_MEMBERS = 1000;
+
+    // 쉬는 writer 스레드가 바로 잠들지 않고 기다리는 횟수
+    private static final int IDLE_SPINS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long JOURNAL_WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // 링 버퍼가 계속 차 있어도 이만큼 적용하면 저널을 내리고 완료한다
+    private static final int MAX_SYNC_BATCH = 1024;
+
+    private final MemberRepository repository;
+    private final TransactionTemplate txTemplate;
+    private final BalanceJournal journal;
+    private final MpscRingBuffer<Command> ring;
+    private final long persistIntervalNanos;
+    private final int maxPersistMembers;
+
+    // writer 스레드만 사용
+    private final BalanceTable balances = new BalanceTable(1024);
+    private final BalanceTable pendingDeltas = new BalanceTable(1024);
+    private long pendingSeq;
+    private long lastPersistNanos;
+    // 저널에 덧붙였지만 아직 디스크에 내리지 않아서 완료하지 않은 이체
+    private final List<Acknowledgement> unsynced = new ArrayList<>();
+
+    // persister 스레드만 사용. 반영에 실패해서 다음 묶음에 합칠 변화량
+    private Map<String, Integer> failedDeltas = new HashMap<>();
+
+    private final Thread writer;
+    private final ExecutorService persister;
+    private volatile boolean running = true;
+    // 저널을 내리지 못해서 멈춘 원인. null이면 정상
+    private volatile RuntimeException failure;
+
+    private final LongAdder appliedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder persistCount = new LongAdder();
+    private final LongAdder persistFailureCount = new LongAdder();
+
+    public BalanceEngine(MemberRepository repository, PlatformTransactionManager transactionManager, Path journalPath) {
+        this(repository, transactionManager, journalPath, DEFAULT_RING_CAPACITY, DEFAULT_JOURNAL_CAPACITY,
+                DEFAULT_PERSIST_INTERVAL, DEFAULT_MAX_PERSIST_MEMBERS);
+    }
+
+    /**
+     * @param ringCapacity      2의 거듭제곱. 가득 차면 요청하는 쪽이 빈자리가 날 때까지 기다린다
+     * @param maxPersistMembers 변화량이 쌓인 회원이 이만큼 되면 persistInterval 전이라도 DB에 반영한다
+     */
+    public BalanceEngine(MemberRepository repository, PlatformTransactionManager transactionManager, Path journalPath,
+                         int ringCapacity, int journalCapacity, Duration persistInterval, int maxPersistMembers) {
+        this(repository, transactionManager, new BalanceJournal(journalPath, journalCapacity, false),
+                ringCapacity, persistInterval, maxPersistMembers);
+    }
+
+    BalanceEngine(MemberRepository repository, PlatformTransactionManager transactionManager, BalanceJournal journal,
+                  int ringCapacity, Duration persistInterval, int maxPersistMembers) {
+        this.repository = repository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.journal = journal;
+        this.ring = new MpscRingBuffer<>(ringCapacity);
+        this.persistIntervalNanos = persistInterval.toNanos();
+        this.maxPersistMembers = maxPersistMembers;
+
+        try {
+            recover();
+        } catch (RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+
+        this.persister = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "balance-engine-persister");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer = new Thread(this::run, "balance-engine-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 이체를 요청하고, 저널에 기록되어 디스크에 내려가면 출금 회원의 이체 후 잔액으로 완료되는 future를 돌려준다
+     * 잔액이 부족하면 InsufficientBalanceException, 회원이 없으면 조회 예외로 실패한다.
+     */
+    public CompletableFuture<Long> submit(String fromId, String toId, int money) {
+        return enqueue(new Command(Kind.TRANSFER, fromId, toId, money, new CompletableFuture<>()));
+    }
+
+    /**
+     * submit 후 저널에 기록될 때까지 기다린다. 실패하면 원래 예외를 그대로 던진다
+     */
+    public void transfer(String fromId, String toId, int money) {
+        join(submit(fromId, toId, money));
+    }
+
+    /**
+     * 지금까지 적용한 이체를 반영한 잔액. DB에 아직 반영되지 않은 이체도 포함한다
+     */
+    public long balanceOf(String memberId) {
+        return join(enqueue(new Command(Kind.BALANCE, memberId, null, 0, new CompletableFuture<>())));
+    }
+
+    /**
+     * 지금까지 적용한 이체가 DB에 반영될 때까지 기다린다
+     */
+    public void flush() {
+        join(enqueue(new Command(Kind.FLUSH, null, null, 0, new CompletableFuture<>())));
+    }
+
+    public long getAppliedCount() {
+        return appliedCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * DB에 반영한 묶음 수
+     */
+    public long getPersistCount() {
+        return persistCount.sum();
+    }
+
+    public long getPersistFailureCount() {
+        return persistFailureCount.sum();
+    }
+
+    /**
+     * 저널에서 DB에 반영되지 않은 이체를 읽어 잔액을 복구하고 DB와의 차이를 반영한다
+     * 저널에는 이체 후 잔액이 들어 있으므로 일부가 이미 DB에 반영되었어도 결과가 같다.
+     */
+    private void recover() {
+        List<BalanceJournal.Entry> entries = journal.replay();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> recovered = new HashMap<>();
+        for (BalanceJournal.Entry entry : entries) {
+            recovered.put(entry.fromId(), entry.fromBalance());
+            recovered.put(entry.toId(), entry.toBalance());
+        }
+
+        Map<String, Member> stored = repository.findAllByIds(recovered.keySet());
+        Map<String, Integer> deltas = new HashMap<>();
+        recovered.forEach((memberId, balance) -> {
+            Member member = stored.get(memberId);
+            if (member == null) {
+                log.warn("balance engine recovery skipped deleted memberId={}", memberId);
+                return;
+            }
+            balances.put(memberId, balance);
+            int delta = (int) (balance - member.getMoney());
+            if (delta != 0) {
+                deltas.put(memberId, delta);
+            }
+        });
+
+        txTemplate.executeWithoutResult(status -> repository.applyDeltas(deltas));
+        journal.markApplied(journal.lastSeq(), journal.writePosition());
+        log.info("balance engine recovered transfers={}, members={}", entries.size(), deltas.size());
+    }
+
+    private CompletableFuture<Long> enqueue(Command command) {
+        int spins = 0;
+        while (true) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (!running) {
+                throw new IllegalStateException("balance engine is closed");
+            }
+            if (ring.offer(command)) {
+                return command.future();
+            }
+            // 가득 차면 writer 스레드가 따라올 때까지 기다린다
+            if (++spins < IDLE_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void run() {
+        lastPersistNanos = System.nanoTime();
+        int idle = 0;
+        while (true) {
+            Command command = ring.poll();
+            if (command == null) {
+                syncJournal();
+                if (!running) {
+                    break;
+                }
+                persistIfDue();
+                if (++idle < IDLE_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                continue;
+            }
+            idle = 0;
+            execute(command);
+            if (unsynced.size() >= MAX_SYNC_BATCH) {
+                syncJournal();
+            }
+            persistIfDue();
+        }
+        handOff(null);
+    }
+
+    private void execute(Command command) {
+        if (failure != null) {
+            command.future().completeExceptionally(failure);
+            return;
+        }
+        try {
+            switch (command.kind()) {
+                case TRANSFER -> unsynced.add(new Acknowledgement(command.future(),
+                        applyTransfer(command.fromId(), command.toId(), command.money())));
+                case BALANCE -> command.future().complete(balance(command.fromId()));
+                case FLUSH -> handOff(command.future());
+            }
+        } catch (RuntimeException e) {
+            rejectedCount.increment();
+            command.future().completeExceptionally(e);
+        }
+    }
+
+    private long applyTransfer(String fromId, String toId, int money) {
+        if (money <= 0 || fromId.equals(toId)) {
+            throw new IllegalArgumentException("invalid transfer fromId:" + fromId + ", toId:" + toId + ", money:" + money);
+        }
+        long fromBalance = balance(fromId);
+        long toBalance = balance(toId);
+        if (fromBalance < money) {
+            throw new InsufficientBalanceException("balance not enough memberId:" + fromId);
+        }
+        if (toBalance + money > Integer.MAX_VALUE) {
+            throw new IllegalStateException("balance overflow memberId:" + toId);
+        }
+
+        ensureJournalRoom();
+        pendingSeq = journal.append(fromId, fromBalance - money, toId, toBalance + money);
+
+        balances.put(fromId, fromBalance - money);
+        balances.put(toId, toBalance + money);
+        pendingDeltas.add(fromId, -money);
+        pendingDeltas.add(toId, money);
+        appliedCount.increment();
+        return fromBalance - money;
+    }
+
+    /**
+     * 처음 보는 회원은 DB에서 읽어 온다. 없으면 조회 예외가 그대로 나간다
+     */
+    private long balance(String memberId) {
+        if (!balances.contains(memberId)) {
+            balances.put(memberId, repository.findById(memberId).getMoney());
+        }
+        return balances.get(memberId);
+    }
+
+    /**
+     * 저널이 가득 찼으면 쌓인 변화량을 DB에 넘기고, 반영된 만큼 자리가 날 때까지 기다린다
+     */
+    private void ensureJournalRoom() {
+        if (journal.hasRoom()) {
+            return;
+        }
+        if (pendingDeltas.size() > 0) {
+            handOff(null);
+        }
+        long deadline = System.nanoTime() + JOURNAL_WAIT_NANOS;
+        while (!journal.hasRoom() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * 지금까지 덧붙인 이체를 한 번에 디스크에 내리고 완료한다
+     * 내리지 못하면 엔진을 멈춘다. 이 이체들은 메모리에 적용되어 있어서 그대로 두면 DB에 반영되므로
+     * 요청한 쪽은 실패를 받고 다시 시도해 두 번 이체하게 된다.
+     */
+    private void syncJournal() {
+        if (unsynced.isEmpty()) {
+            return;
+        }
+        try {
+            journal.force();
+            for (Acknowledgement ack : unsynced) {
+                ack.future().complete(ack.balance());
+            }
+        } catch (UncheckedIOException e) {
+            log.error("balance engine journal force failed, stopping. transfers={}", unsynced.size(), e);
+            failure = new IllegalStateException("balance engine stopped: journal force failed", e);
+            running = false;
+            for (Acknowledgement ack : unsynced) {
+                ack.future().completeExceptionally(failure);
+            }
+        }
+        unsynced.clear();
+    }
+
+    private void persistIfDue() {
+        if (pendingDeltas.size() == 0) {
+            return;
+        }
+        if (pendingDeltas.size() >= maxPersistMembers || System.nanoTime() - lastPersistNanos >= persistIntervalNanos) {
+            handOff(null);
+        }
+    }
+
+    /**
+     * 쌓인 변화량을 persister 스레드에 넘긴다. done은 DB 반영이 끝나면 완료된다
+     */
+    private void handOff(CompletableFuture<Long> done) {
+        // DB가 저널보다 앞서지 않도록 먼저 내린다
+        syncJournal();
+        if (failure != null) {
+            // 멈춘 뒤로는 DB에 반영하지 않는다. 디스크에 내린 이체는 다시 시작할 때 저널에서 복구한다
+            if (done != null) {
+                done.completeExceptionally(failure);
+            }
+            return;
+        }
+        Map<String, Integer> deltas = new HashMap<>();
+        pendingDeltas.forEach((memberId, delta) -> {
+            if (delta != 0) {
+                deltas.put(memberId, (int) delta);
+            }
+        });
+        pendingDeltas.clear();
+        long seq = pendingSeq;
+        int position = journal.writePosition();
+        lastPersistNanos = System.nanoTime();
+        persister.execute(() -> persist(deltas, seq, position, done));
+    }
+
+    /**
+     * @param position seq 레코드의 끝. 반영이 끝나면 저널이 여기까지 자리를 돌려받는다
+     */
+    private void persist(Map<String, Integer> deltas, long seq, int position, CompletableFuture<Long> done) {
+        failedDeltas.forEach((memberId, delta) -> deltas.merge(memberId, delta, Integer::sum));
+        deltas.values().removeIf(delta -> delta == 0);
+        try {
+            if (!deltas.isEmpty()) {
+                txTemplate.executeWithoutResult(status -> repository.applyDeltas(deltas));
+            }
+            failedDeltas = new HashMap<>();
+            if (seq > 0) {
+                journal.markApplied(seq, position);
+            }
+            persistCount.increment();
+            if (done != null) {
+                done.complete(seq);
+            }
+        } catch (RuntimeException e) {
+            // 저널은 그대로 두고 다음 묶음에 합쳐서 다시 반영한다
+            log.warn("balance engine persist failed, members={}", deltas.size(), e);
+            failedDeltas = deltas;
+            persistFailureCount.increment();
+            if (done != null) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static long join(CompletableFuture<Long> future) {
+        try {
+            Long result = future.join();
+            return result == null ? 0 : result;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 새 요청을 받지 않고, 이미 들어온 요청을 처리하고 DB에 반영한 뒤 멈춘다
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            persister.shutdown();
+            persister.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Command command;
+        while ((command = ring.poll()) != null) {
+            command.future().completeExceptionally(failure != null ? failure
+                    : new IllegalStateException("balance engine is closed"));
+        }
+        journal.close();
+    }
+
+    private enum Kind {
+        TRANSFER, BALANCE, FLUSH
+    }
+
+    /**
+     * @param fromId TRANSFER는 출금 회원, BALANCE는 조회할 회원
+     */
+    private record Command(Kind kind, String fromId, String toId, int money, CompletableFuture<Long> future) {
+    }
+
+    private record Acknowledgement(CompletableFuture<Long> future, long balance) {
+    }
+}
@@ -0,0 +1,257 @@
+package hello.jdbcpractice.service.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * BalanceEngine이 적용한 이체를 순서대로 덧붙이는 메모리 매핑 저널
+ *
+ * 파일 구조 (MemberJournal과 같은 방식)
+ * - 헤더 16바이트: [long DB에 반영된 마지막 번호][int MAGIC][int DB에 반영되지 않은 첫 레코드 위치]
+ * - 레코드: [int 길이][int CRC32][long 번호][short from 길이][from][long from 잔액][short to 길이][to][long to 잔액]
+ * - 끝에 자리가 모자라면 [int -1]을 남기고 헤더 바로 뒤로 돌아가서 이어 쓴다
+ *
+ * 헤더 뒤 영역을 링처럼 쓴다. markApplied로 DB에 반영된 위치까지 자리를 돌려받으므로
+ * 쓰는 동안 저널이 한 번도 비지 않아도 반영이 따라오는 한 가득 차지 않는다.
+ *
+ * 이체 한 건을 레코드 하나로 쓰므로 출금만 남고 입금이 빠지는 일이 없다.
+ * 변화량이 아니라 이체 후 잔액을 기록하므로, 이미 DB에 반영된 레코드를 다시 읽어도 결과가 같다.
+ */
+@Slf4j
+class BalanceJournal implements AutoCloseable {
+    private static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x42454A4E;
+    private static final int TAIL_OFFSET = 12;
+    // 여기서부터 헤더 바로 뒤로 돌아간다는 표시
+    private static final int WRAP = -1;
+    // [int 길이][int CRC32]
+    private static final int RECORD_HEADER_SIZE = 8;
+    // [long 번호][short from 길이][long from 잔액][short to 길이][long to 잔액]
+    private static final int FIXED_PAYLOAD_SIZE = 8 + 2 + 8 + 2 + 8;
+    private static final int MAX_ID_BYTES = 256;
+    static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + FIXED_PAYLOAD_SIZE + MAX_ID_BYTES * 2;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean forceOnAppend;
+
+    private long appliedSeq;
+    private long lastSeq;
+    // 다음 레코드를 쓸 위치, DB에 반영되지 않은 첫 레코드 위치. 같으면 비어 있다
+    private int head;
+    private int tail;
+
+    BalanceJournal(Path path, int capacity, boolean forceOnAppend) {
+        this.forceOnAppend = forceOnAppend;
+        try {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("journal open failed path=" + path, e);
+        }
+
+        if (buffer.getInt(8) != MAGIC) {
+            buffer.putLong(0, 0L);
+            buffer.putInt(8, MAGIC);
+            buffer.putInt(TAIL_OFFSET, HEADER_SIZE);
+            buffer.putInt(HEADER_SIZE, 0);
+        }
+        this.appliedSeq = buffer.getLong(0);
+        this.lastSeq = appliedSeq;
+        int savedTail = buffer.getInt(TAIL_OFFSET);
+        this.tail = savedTail >= HEADER_SIZE && savedTail <= capacity - 4 ? savedTail : HEADER_SIZE;
+        this.head = tail;
+    }
+
+    record Entry(long seq, String fromId, long fromBalance, String toId, long toBalance) {
+    }
+
+    /**
+     * DB에 반영되지 않은 첫 레코드부터 읽고, 쓰기 위치를 마지막 정상 레코드 뒤로 옮긴다
+     * 한 바퀴 전의 레코드는 번호가 작으므로 번호가 줄어드는 곳에서 멈춘다.
+     */
+    synchronized List<Entry> replay() {
+        List<Entry> entries = new ArrayList<>();
+        int position = tail;
+        long previousSeq = 0;
+        boolean wrapped = false;
+
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == WRAP && !wrapped) {
+                wrapped = true;
+                position = HEADER_SIZE;
+                continue;
+            }
+            if (length < FIXED_PAYLOAD_SIZE || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            int payloadStart = position + RECORD_HEADER_SIZE;
+            if (buffer.getInt(position + 4) != crc(payloadStart, length)) {
+                log.warn("journal torn record at position={}", position);
+                break;
+            }
+            long seq = buffer.getLong(payloadStart);
+            if (seq <= previousSeq) {
+                break;
+            }
+
+            int offset = payloadStart + 8;
+            String fromId = readId(offset);
+            offset += 2 + buffer.getShort(offset);
+            long fromBalance = buffer.getLong(offset);
+            offset += 8;
+            String toId = readId(offset);
+            offset += 2 + buffer.getShort(offset);
+            long toBalance = buffer.getLong(offset);
+
+            if (seq > appliedSeq) {
+                entries.add(new Entry(seq, fromId, fromBalance, toId, toBalance));
+            }
+            previousSeq = seq;
+            lastSeq = Math.max(lastSeq, seq);
+            position = payloadStart + length;
+        }
+
+        head = position;
+        return entries;
+    }
+
+    synchronized boolean hasRoom() {
+        return fits(MAX_RECORD_SIZE);
+    }
+
+    /**
+     * 이체 한 건을 덧붙이고 번호를 돌려준다. 공간이 모자라면 IllegalStateException
+     */
+    synchronized long append(String fromId, long fromBalance, String toId, long toBalance) {
+        byte[] from = fromId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toId.getBytes(StandardCharsets.UTF_8);
+        if (from.length > MAX_ID_BYTES || to.length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("memberId too long");
+        }
+        int length = FIXED_PAYLOAD_SIZE + from.length + to.length;
+        if (!fits(RECORD_HEADER_SIZE + length)) {
+            throw new IllegalStateException("journal full");
+        }
+        if (buffer.capacity() - head < RECORD_HEADER_SIZE + length + 4) {
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.putInt(head, WRAP);
+            head = HEADER_SIZE;
+        }
+
+        long seq = ++lastSeq;
+        int position = head;
+        int payloadStart = position + RECORD_HEADER_SIZE;
+
+        int offset = payloadStart;
+        buffer.putLong(offset, seq);
+        offset += 8;
+        offset = writeId(offset, from);
+        buffer.putLong(offset, fromBalance);
+        offset += 8;
+        offset = writeId(offset, to);
+        buffer.putLong(offset, toBalance);
+        // 다음 레코드 자리는 0으로 비워서 읽기가 여기서 멈추게 한다
+        buffer.putInt(payloadStart + length, 0);
+
+        buffer.putInt(position + 4, crc(payloadStart, length));
+        buffer.putInt(position, length);
+        head = payloadStart + length;
+
+        if (forceOnAppend) {
+            buffer.force();
+        }
+        return seq;
+    }
+
+    /**
+     * 덧붙인 레코드를 디스크에 내린다. forceOnAppend가 아니면 쓰는 쪽이 묶음마다 부른다
+     */
+    synchronized void force() {
+        buffer.force();
+    }
+
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * 다음 레코드를 쓸 위치. 지금까지 덧붙인 레코드의 끝이다
+     */
+    synchronized int writePosition() {
+        return head;
+    }
+
+    /**
+     * seq까지 DB에 반영되었음을 기록하고, seq 레코드의 끝(position)까지 자리를 돌려받는다
+     * 모두 반영되었으면 저널을 처음부터 다시 쓴다.
+     * 이미 기록한 seq 이하는 무시한다. 새 이체 없이 다시 넘긴 묶음의 position은 저널을 처음부터 다시 쓰기 전 위치일 수 있다.
+     */
+    synchronized void markApplied(long seq, int position) {
+        if (seq <= appliedSeq) {
+            return;
+        }
+        appliedSeq = seq;
+        tail = position;
+        if (appliedSeq == lastSeq) {
+            buffer.putInt(HEADER_SIZE, 0);
+            head = HEADER_SIZE;
+            tail = HEADER_SIZE;
+        }
+        buffer.putLong(0, appliedSeq);
+        buffer.putInt(TAIL_OFFSET, tail);
+        buffer.force();
+    }
+
+    /**
+     * 레코드 하나(recordSize)와 그 뒤의 끝 표시 4바이트가 들어갈 자리가 있는지
+     * 끝에 자리가 모자라면 헤더 바로 뒤로 돌아가서 넣을 수 있는지 본다. 돌려받지 않은 영역(tail 이후)은 덮지 않는다.
+     */
+    private boolean fits(int recordSize) {
+        int needed = recordSize + 4;
+        if (head < tail) {
+            return head + needed <= tail;
+        }
+        return buffer.capacity() - head >= needed || HEADER_SIZE + needed <= tail;
+    }
+
+    private String readId(int offset) {
+        byte[] id = new byte[buffer.getShort(offset)];
+        buffer.get(offset + 2, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private int writeId(int offset, byte[] id) {
+        buffer.putShort(offset, (short) id.length);
+        buffer.put(offset + 2, id);
+        return offset + 2 + id.length;
+    }
+
+    private int crc(int start, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start, length));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() {
+        buffer.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("journal close failed", e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package hello.jdbcpractice.service.engine;
+
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * memberId -> long 오픈 어드레싱 해시 테이블 (선형 탐사)
+ *
+ * 값을 long 배열에 그대로 두어서 갱신할 때 박싱이나 엔트리 객체를 만들지 않는다.
+ * 한 스레드에서만 사용한다. 개별 삭제는 없고 clear로 한꺼번에 비운다.
+ */
+final class BalanceTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    BalanceTable(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    boolean contains(String key) {
+        return keys[slot(key)] != null;
+    }
+
+    /**
+     * 없는 키면 0
+     */
+    long get(String key) {
+        int slot = slot(key);
+        return keys[slot] == null ? 0 : values[slot];
+    }
+
+    void put(String key, long value) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            insert(slot, key, value);
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * 없는 키면 delta로 넣는다
+     */
+    void add(String key, long delta) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            insert(slot, key, delta);
+        } else {
+            values[slot] += delta;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    void forEach(ObjLongConsumer<String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * key가 있는 칸, 없으면 넣을 빈 칸
+     */
+    private int slot(String key) {
+        int h = key.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (keys[slot] != null && !keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, String key, long value) {
+        keys[slot] = key;
+        values[slot] = value;
+        // 채움 비율 1/2을 넘으면 두 배로 늘린다
+        if (++size * 2 > keys.length) {
+            String[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate(keys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int newSlot = slot(oldKeys[i]);
+                    keys[newSlot] = oldKeys[i];
+                    values[newSlot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+}
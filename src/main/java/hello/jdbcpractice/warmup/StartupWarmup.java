@@ -0,0 +1,127 @@
+package hello.jdbcpractice.warmup;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberPage;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 애플리케이션 시작 시 커넥션 풀, 문장 캐시, JIT를 미리 데운다
+ *
+ * 1. 커넥션을 connections개(기본 Hikari minimumIdle) 동시에 꺼내서 풀을 채운다.
+ * 2. 꺼낸 커넥션마다 리포지토리의 조회, 이체 SQL을 미리 준비한다.
+ * 3. findById를 findByIdCalls번 실행한다. 읽기만 하므로 데이터는 바뀌지 않는다.
+ *
+ * ApplicationRunner는 ApplicationReadyEvent와 readiness 상태(ACCEPTING_TRAFFIC) 전에 실행되므로
+ * 워밍업이 끝나야 준비 완료로 보고된다. 끝나면 WarmupCompletedEvent를 발행한다.
+ */
+@Slf4j
+public class StartupWarmup implements ApplicationRunner {
+
+    private final DataSource dataSource;
+    private final MemberRepositoryV4_2 repository;
+    private final WarmupProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile Duration elapsed;
+
+    /**
+     * @param repository 애플리케이션이 쓰는 리포지토리와 같은 인스턴스여야 문장 캐시가 이어진다
+     */
+    public StartupWarmup(DataSource dataSource, MemberRepositoryV4_2 repository, WarmupProperties properties,
+                         ApplicationEventPublisher eventPublisher) {
+        this.dataSource = dataSource;
+        this.repository = repository;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+
+        List<Connection> connections = openConnections(connectionCount());
+        int statements = 0;
+        try {
+            for (Connection conn : connections) {
+                statements += repository.prepareStatements(conn);
+            }
+        } finally {
+            connections.forEach(JdbcUtils::closeConnection);
+        }
+        int calls = callFindById();
+
+        elapsed = Duration.ofNanos(System.nanoTime() - start);
+        log.info("warm-up done connections={}, statements={}, findById={}, elapsed={}ms",
+                connections.size(), statements, calls, elapsed.toMillis());
+        eventPublisher.publishEvent(new WarmupCompletedEvent(this, elapsed, connections.size(), statements, calls));
+    }
+
+    /**
+     * 워밍업에 걸린 시간. 아직 끝나지 않았으면 null
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    private int connectionCount() {
+        if (properties.connections() > 0) {
+            return properties.connections();
+        }
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMinimumIdle();
+            }
+        } catch (SQLException e) {
+            log.debug("hikari lookup failed", e);
+        }
+        return 1;
+    }
+
+    /**
+     * 한꺼번에 꺼내야 풀이 커넥션을 새로 만든다. 하나씩 꺼냈다 돌려주면 같은 커넥션만 다시 받는다
+     */
+    private List<Connection> openConnections(int count) {
+        List<Connection> connections = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                connections.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            log.warn("warm-up opened only {} of {} connections", connections.size(), count, e);
+        }
+        return connections;
+    }
+
+    private int callFindById() {
+        String memberId = properties.memberId();
+        if (memberId == null || memberId.isBlank()) {
+            MemberPage page = repository.findPage(null, 1);
+            if (page.members().isEmpty()) {
+                log.info("warm-up skipped findById, no member");
+                return 0;
+            }
+            Member first = page.members().get(0);
+            memberId = first.getMemberId();
+        }
+
+        int calls = 0;
+        for (int i = 0; i < properties.findByIdCalls(); i++) {
+            repository.findById(memberId);
+            calls++;
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,42 @@
+package hello.jdbcpractice.warmup;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.time.Duration;
+
+/**
+ * 워밍업이 끝나면 발행한다. 걸린 시간과 워밍업한 양을 담는다
+ */
+public class WarmupCompletedEvent extends ApplicationEvent {
+    private final Duration elapsed;
+    private final int connections;
+    private final int statements;
+    private final int findByIdCalls;
+
+    public WarmupCompletedEvent(Object source, Duration elapsed, int connections, int statements, int findByIdCalls) {
+        super(source);
+        this.elapsed = elapsed;
+        this.connections = connections;
+        this.statements = statements;
+        this.findByIdCalls = findByIdCalls;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * 커넥션마다 준비한 문장 수의 합
+     */
+    public int getStatements() {
+        return statements;
+    }
+
+    public int getFindByIdCalls() {
+        return findByIdCalls;
+    }
+}
@@ -0,0 +1,35 @@
+package hello.jdbcpractice.warmup;
+
+import hello.jdbcpractice.repository.MemberRepository;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * jdbcpractice.warmup.enabled=true일 때만 워밍업을 등록한다
+ */
+@Configuration
+@EnableConfigurationProperties(WarmupProperties.class)
+@ConditionalOnProperty(prefix = "jdbcpractice.warmup", name = "enabled", havingValue = "true")
+public class WarmupConfig {
+
+    /**
+     * MemberRepositoryV4_2 빈이 있으면 그 문장 캐시를 데우고, 없으면 워밍업용으로 하나 만든다
+     * 워밍업용 리포지토리의 문장 캐시는 따로지만 커넥션 풀, H2 세션의 쿼리 캐시, JIT는 똑같이 데워진다.
+     */
+    @Bean
+    StartupWarmup startupWarmup(DataSource dataSource, ObjectProvider<MemberRepository> repositoryProvider,
+                                WarmupProperties properties, ApplicationEventPublisher eventPublisher) {
+        MemberRepository repository = repositoryProvider.getIfAvailable();
+        MemberRepositoryV4_2 target = repository instanceof MemberRepositoryV4_2 v4_2
+                ? v4_2
+                : new MemberRepositoryV4_2(dataSource);
+        return new StartupWarmup(dataSource, target, properties, eventPublisher);
+    }
+}
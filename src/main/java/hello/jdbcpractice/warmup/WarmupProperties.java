@@ -0,0 +1,19 @@
+package hello.jdbcpractice.warmup;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * 시작 시 워밍업 설정 (jdbcpractice.warmup.*)
+ *
+ * @param enabled       기본 꺼짐
+ * @param connections   미리 열어둘 커넥션 수. 0이면 Hikari minimumIdle
+ * @param findByIdCalls JIT가 조회 경로를 컴파일하도록 미리 실행할 findById 횟수
+ * @param memberId      findById에 쓸 회원. 비어 있으면 첫 번째 회원
+ */
+@ConfigurationProperties(prefix = "jdbcpractice.warmup")
+public record WarmupProperties(@DefaultValue("false") boolean enabled,
+                               @DefaultValue("0") int connections,
+                               @DefaultValue("1000") int findByIdCalls,
+                               String memberId) {
+}
@@ -0,0 +1,44 @@
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    version bigint not null default 0,
+    primary key (member_id)
+);
+
+-- version 컬럼이 없던 예전 테이블에 추가
+alter table member add column if not exists version bigint not null default 0;
+
+-- 돈 순서 키셋 페이지 조회(findPageByMoney)용
+create index if not exists idx_member_money_id on member (money, member_id);
+
+-- 계좌이체 요청 중복 방지 키. 이체와 같은 트랜잭션에서 저장한다
+create table if not exists transfer_request (
+    request_key varchar(64),
+    from_id varchar(10) not null,
+    to_id varchar(10) not null,
+    money integer not null,
+    created_at timestamp not null default current_timestamp,
+    primary key (request_key)
+);
+
+create index if not exists idx_transfer_request_created_at on transfer_request (created_at);
+
+-- 계좌이체 원장. 행을 고치거나 지우지 않고 추가만 한다
+create table if not exists ledger (
+    entry_id bigint generated by default as identity,
+    member_id varchar(10) not null,
+    amount integer not null,
+    counterparty_id varchar(10),
+    created_at timestamp not null default current_timestamp,
+    primary key (entry_id)
+);
+
+create index if not exists idx_ledger_member_entry on ledger (member_id, entry_id);
+
+-- 회원별 잔액 스냅샷. last_entry_id까지의 원장을 반영한 잔액
+create table if not exists balance_snapshot (
+    member_id varchar(10),
+    balance bigint not null,
+    last_entry_id bigint not null,
+    primary key (member_id)
+);
@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
+import java.sql.SQLException;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -15,4 +16,20 @@ class DBConnectionUtilTest {
         Connection connection = DBConnectionUtil.getConnection();
         assertThat(connection).isNotNull();
     }
+
+    @Test
+    void getConnection_pooled() throws SQLException {
+        DBConnectionUtil.enablePool();
+        try {
+            Connection con1 = DBConnectionUtil.getConnection();
+            Connection physical = con1.unwrap(Connection.class);
+            con1.close();
+
+            Connection con2 = DBConnectionUtil.getConnection();
+            assertThat(con2.unwrap(Connection.class)).isSameAs(physical);
+            con2.close();
+        } finally {
+            DBConnectionUtil.disablePool();
+        }
+    }
 }
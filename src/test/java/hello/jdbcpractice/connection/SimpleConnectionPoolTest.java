@@ -0,0 +1,107 @@
+package hello.jdbcpractice.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class SimpleConnectionPoolTest {
+    private static final String URL = "jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1";
+
+    SimpleConnectionPool pool;
+
+    @AfterEach
+    void afterEach() {
+        pool.close();
+    }
+
+    @Test
+    void reuse() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "");
+
+        Connection con1 = pool.getConnection();
+        Connection physical = con1.unwrap(Connection.class);
+        PreparedStatement pstmt = con1.prepareStatement("select 1");
+        con1.close();
+
+        // close()는 물리 커넥션을 닫지 않고 풀에 돌려준다
+        assertThat(physical.isClosed()).isFalse();
+        assertThat(pstmt.isClosed()).isTrue();
+        assertThat(con1.isClosed()).isTrue();
+        assertThatThrownBy(() -> con1.createStatement()).isInstanceOf(SQLException.class);
+
+        Connection con2 = pool.getConnection();
+        assertThat(con2.unwrap(Connection.class)).isSameAs(physical);
+        assertThat(con2).isNotSameAs(con1);
+        con2.close();
+
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+        assertThat(pool.getBorrowedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void rollbackOnReturn() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "");
+
+        Connection con1 = pool.getConnection();
+        con1.setAutoCommit(false);
+        con1.close();
+
+        Connection con2 = pool.getConnection();
+        assertThat(con2.getAutoCommit()).isTrue();
+        con2.close();
+    }
+
+    @Test
+    void maxIdle() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "", 2, Duration.ofMinutes(1), Duration.ofMillis(500));
+
+        Connection con1 = pool.getConnection();
+        Connection con2 = pool.getConnection();
+        Connection con3 = pool.getConnection();
+        con1.close();
+        con2.close();
+        con3.close();
+
+        assertThat(pool.getIdleCount()).isEqualTo(2);
+        assertThat(pool.getDiscardedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void validateOnBorrow() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "", 2, Duration.ofMinutes(1), Duration.ZERO);
+
+        Connection con1 = pool.getConnection();
+        Connection physical = con1.unwrap(Connection.class);
+        con1.close();
+        // 쉬는 동안 끊어진 커넥션
+        physical.close();
+
+        Connection con2 = pool.getConnection();
+        assertThat(con2.unwrap(Connection.class)).isNotSameAs(physical);
+        assertThat(con2.isValid(1)).isTrue();
+        con2.close();
+        assertThat(pool.getDiscardedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void maxLifetime() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "", 2, Duration.ZERO, Duration.ofMillis(500));
+
+        Connection con1 = pool.getConnection();
+        Connection physical = con1.unwrap(Connection.class);
+        con1.close();
+
+        // 수명이 다한 커넥션은 풀에 넣지 않고 닫는다
+        assertThat(physical.isClosed()).isTrue();
+        assertThat(pool.getIdleCount()).isZero();
+    }
+}
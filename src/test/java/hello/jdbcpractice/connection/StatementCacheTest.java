@@ -0,0 +1,80 @@
+package hello.jdbcpractice.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static hello.jdbcpractice.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StatementCacheTest {
+    private static final String SQL = "select * from member where member_id = ?";
+
+    HikariDataSource dataSource;
+    StatementCache statementCache;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USER);
+        dataSource.setPassword(PASSWORD);
+        // 물리 커넥션 하나만 쓰게 해서 캐시 적중을 확인한다
+        dataSource.setMaximumPoolSize(1);
+        statementCache = new StatementCache(2);
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+    }
+
+    @Test
+    void reuseAcrossCheckout() throws SQLException {
+        PreparedStatement first = prepareAndRelease(SQL);
+        PreparedStatement second = prepareAndRelease(SQL);
+
+        log.info("hit={} miss={}", statementCache.getHitCount(), statementCache.getMissCount());
+        assertThat(second).isSameAs(first);
+        assertThat(statementCache.getHitCount()).isEqualTo(1);
+        assertThat(statementCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void lruEviction() throws SQLException {
+        PreparedStatement first = prepareAndRelease("select 1");
+        prepareAndRelease("select 2");
+        prepareAndRelease("select 3");
+
+        assertThat(statementCache.getEvictionCount()).isEqualTo(1);
+        assertThat(first.isClosed()).isTrue();
+    }
+
+    @Test
+    void invalidate() throws SQLException {
+        PreparedStatement pstmt;
+        try (Connection conn = dataSource.getConnection()) {
+            pstmt = statementCache.prepare(conn, SQL);
+            statementCache.release(pstmt);
+            statementCache.invalidate(conn);
+        }
+
+        assertThat(pstmt.isClosed()).isTrue();
+        assertThat(statementCache.getConnectionCount()).isZero();
+    }
+
+    private PreparedStatement prepareAndRelease(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            PreparedStatement pstmt = statementCache.prepare(conn, sql);
+            statementCache.release(pstmt);
+            return pstmt;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package hello.jdbcpractice.connection.leak;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class ConnectionLeakDetectorTest {
+
+    HikariDataSource target;
+    ConnectionLeakDetector detector;
+    LeakDetectingDataSource dataSource;
+
+    @BeforeEach
+    void beforeEach() {
+        target = new HikariDataSource();
+        target.setJdbcUrl("jdbc:h2:mem:leak;DB_CLOSE_DELAY=-1");
+        target.setUsername("sa");
+        target.setMaximumPoolSize(1);
+        target.setConnectionTimeout(1000);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(target);
+        new JdbcTemplate(target).update("delete from member");
+
+        // 스캐너는 테스트에서 직접 돌린다. 스택은 매번 남긴다
+        detector = new ConnectionLeakDetector(Duration.ofMillis(50), Duration.ofHours(1), 1);
+        dataSource = new LeakDetectingDataSource(target, detector);
+    }
+
+    @AfterEach
+    void afterEach() {
+        detector.close();
+        target.close();
+    }
+
+    @Test
+    void callSite() throws SQLException {
+        MemberRepositoryV1 repository = new MemberRepositoryV1(dataSource);
+        repository.save(new Member("memberA", 10000));
+        repository.findById("memberA");
+
+        // private getConnection()이 아니라 그걸 부른 메서드로 센다
+        CallSiteStats save = detector.findCallSite("MemberRepositoryV1.save:").orElseThrow();
+        assertThat(save.getAcquiredCount()).isEqualTo(1);
+        assertThat(save.getLiveCount()).isZero();
+        assertThat(detector.findCallSite("MemberRepositoryV1.findById:")).isPresent();
+        assertThat(detector.getLiveCount()).isZero();
+    }
+
+    @Test
+    void longHold() throws SQLException, InterruptedException {
+        Connection con = dataSource.getConnection();
+        Thread.sleep(100);
+        detector.scan();
+        detector.scan();
+
+        // 한 번만 경고한다
+        assertThat(detector.getLongHoldCount()).isEqualTo(1);
+        assertThat(detector.liveConnections()).singleElement().satisfies(live -> {
+            assertThat(live.callSite()).startsWith("ConnectionLeakDetectorTest.longHold:");
+            assertThat(live.longHeld()).isTrue();
+            assertThat(live.acquiredAt()).isNotNull();
+        });
+
+        con.close();
+        CallSiteStats stats = detector.findCallSite("ConnectionLeakDetectorTest.longHold:").orElseThrow();
+        assertThat(stats.getLiveCount()).isZero();
+        assertThat(stats.getMaxHoldNanos()).isGreaterThanOrEqualTo(Duration.ofMillis(100).toNanos());
+        assertThat(detector.getLiveCount()).isZero();
+    }
+
+    @Test
+    void leak() throws SQLException, InterruptedException {
+        leakConnection();
+
+        for (int i = 0; i < 50 && detector.getLeakedCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        assertThat(detector.getLeakedCount()).isEqualTo(1);
+        assertThat(detector.getLiveCount()).isZero();
+        // 누수된 커넥션을 풀에 돌려줬으므로 커넥션 한 개짜리 풀에서 다시 꺼낼 수 있다
+        try (Connection con = dataSource.getConnection()) {
+            assertThat(con.isValid(1)).isTrue();
+        }
+    }
+
+    private void leakConnection() throws SQLException {
+        Connection con = dataSource.getConnection();
+        con.createStatement().execute("select 1");
+    }
+}
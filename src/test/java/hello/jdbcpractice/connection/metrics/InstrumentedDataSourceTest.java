@@ -0,0 +1,137 @@
+package hello.jdbcpractice.connection.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbcpractice.connection.StatementCache;
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.dialect.H2Dialect;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class InstrumentedDataSourceTest {
+
+    HikariDataSource target;
+    SimpleMeterRegistry registry;
+    InstrumentedDataSource dataSource;
+    JdbcTemplate template;
+
+    @BeforeEach
+    void beforeEach() {
+        target = new HikariDataSource();
+        target.setJdbcUrl("jdbc:h2:mem:instrumented;DB_CLOSE_DELAY=-1");
+        target.setUsername("sa");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(target);
+
+        registry = new SimpleMeterRegistry();
+        // 테스트에서는 읽을 때마다 구간을 새로 끊는다
+        dataSource = new InstrumentedDataSource(target, registry, 16, Duration.ZERO);
+        template = new JdbcTemplate(dataSource);
+        template.update("delete from member");
+    }
+
+    @AfterEach
+    void afterEach() {
+        target.close();
+    }
+
+    @Test
+    void fingerprint() {
+        assertThat(SqlFingerprint.of("SELECT *\n  FROM member WHERE member_id = 'a''b' AND money > 10"))
+                .isEqualTo("select * from member where member_id = ? and money > ?");
+        assertThat(SqlFingerprint.of("select * from member where member_id in (?, ?, ?)"))
+                .isEqualTo("select * from member where member_id in (?)");
+        assertThat(SqlFingerprint.of("insert into member (member_id, money) values (?, ?), (?, ?)"))
+                .isEqualTo("insert into member (member_id, money) values (?, ?)");
+    }
+
+    @Test
+    void jdbcTemplate() {
+        template.update("insert into member(member_id, money) values (?, ?)", "memberA", 10000);
+        template.update("insert into member(member_id, money) values (?, ?)", "memberB", 10000);
+        template.update("update member set money = money + 1");
+
+        SqlStats insert = dataSource.findStats("insert into member(member_id, money) values (?, ?)").orElseThrow();
+        assertThat(insert.getExecutionCount()).isEqualTo(2);
+        assertThat(insert.getRowsAffected().p50()).isEqualTo(1);
+        assertThat(insert.getExecuteTime().count()).isEqualTo(2);
+
+        SqlStats update = dataSource.findStats("update member set money = money + 1").orElseThrow();
+        assertThat(update.getRowsAffected().max()).isEqualTo(2);
+
+        // delete, insert 2번, update 1번
+        assertThat(dataSource.getAcquireCount()).isEqualTo(4);
+        assertThat(registry.find("jdbc.statement.execute").tag("quantile", "0.99").gauges()).isNotEmpty();
+        assertThat(registry.find("jdbc.connection.acquire").tag("quantile", "0.999").gauge()).isNotNull();
+    }
+
+    @Test
+    void error() {
+        template.update("insert into member(member_id, money) values (?, ?)", "memberA", 10000);
+
+        assertThatThrownBy(() -> template.update("insert into member(member_id, money) values (?, ?)", "memberA", 0))
+                .isInstanceOf(RuntimeException.class);
+
+        SqlStats insert = dataSource.findStats("insert into member(member_id, money) values (?, ?)").orElseThrow();
+        assertThat(insert.getExecutionCount()).isEqualTo(2);
+        assertThat(insert.getErrorCount()).isEqualTo(1);
+    }
+
+    @Test
+    void statementCache() {
+        StatementCache statementCache = new StatementCache();
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource, new H2Dialect(), false, statementCache);
+        repository.save(new Member("memberA", 10000));
+
+        for (int i = 0; i < 10; i++) {
+            repository.findById("memberA");
+        }
+
+        // 캐시된 문장도 계측 프록시라서 실행이 모두 잡힌다
+        assertThat(statementCache.getHitCount()).isGreaterThan(0);
+        SqlStats findById = dataSource.getAllStats().stream()
+                .filter(stats -> stats.getFingerprint().startsWith("select"))
+                .findFirst().orElseThrow();
+        assertThat(findById.getExecutionCount()).isEqualTo(10);
+    }
+
+    @Test
+    void unwrap_samePhysicalConnection() throws SQLException {
+        Connection physical;
+        Connection unwrapped;
+        try (Connection con = dataSource.getConnection()) {
+            physical = con.unwrap(Connection.class);
+        }
+        try (Connection con = dataSource.getConnection()) {
+            unwrapped = con.unwrap(Connection.class);
+        }
+
+        // 풀이 같은 물리 커넥션을 주면 unwrap 결과도 같다 (StatementCache 키)
+        assertThat(unwrapped).isSameAs(physical);
+        assertThat(physical.unwrap(Connection.class)).isSameAs(physical);
+    }
+
+    @Test
+    void maxFingerprints() {
+        for (int i = 0; i < 20; i++) {
+            // 별칭이 달라서 지문도 모두 다르다
+            template.queryForList("select member_id from member m" + i);
+        }
+
+        assertThat(dataSource.getAllStats()).hasSizeLessThanOrEqualTo(16);
+        assertThat(dataSource.getAllStats()).anyMatch(stats -> stats.getFingerprint().equals(InstrumentedDataSource.OTHER_FINGERPRINT));
+    }
+}
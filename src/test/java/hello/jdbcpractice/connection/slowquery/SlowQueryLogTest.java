@@ -0,0 +1,108 @@
+package hello.jdbcpractice.connection.slowquery;
+
+import hello.jdbcpractice.connection.StatementCache;
+import hello.jdbcpractice.connection.metrics.InstrumentedDataSource;
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.MemberRepositoryV5;
+import hello.jdbcpractice.repository.dialect.H2Dialect;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class SlowQueryLogTest {
+
+    DriverManagerDataSource target;
+    InstrumentedDataSource dataSource;
+    SlowQueryLog slowQueryLog;
+
+    @BeforeEach
+    void beforeEach() {
+        target = new DriverManagerDataSource("jdbc:h2:mem:slowquery;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(target);
+        new JdbcTemplate(target).update("delete from member");
+
+        // 기준 0: 모든 실행을 느린 쿼리로 본다
+        slowQueryLog = new SlowQueryLog(target, new H2Dialect(), Duration.ZERO, 4, BindRedactor.columns("money"));
+        dataSource = new InstrumentedDataSource(target);
+        dataSource.addListener(slowQueryLog);
+    }
+
+    @AfterEach
+    void afterEach() {
+        slowQueryLog.close();
+    }
+
+    @Test
+    void capture() throws InterruptedException {
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource, new H2Dialect(), false, new StatementCache());
+        repository.save(new Member("memberA", 10000));
+        repository.findById("memberA");
+        slowQueryLog.awaitExplains(Duration.ofSeconds(5));
+
+        List<SlowQuery> entries = slowQueryLog.recent();
+        assertThat(entries).hasSize(2);
+
+        SlowQuery insert = entries.get(0);
+        assertThat(insert.caller()).startsWith("MemberRepositoryV4_2.save:");
+        // money 컬럼 값은 가린다
+        assertThat(insert.bindValues()).containsExactly("'memberA'", SlowQueryLog.REDACTED);
+
+        SlowQuery findById = entries.get(1);
+        assertThat(findById.caller()).startsWith("MemberRepositoryV4_2.findById:");
+        assertThat(findById.bindValues()).containsExactly("'memberA'");
+        assertThat(findById.plan()).containsIgnoringCase("member");
+
+        log.info("dump\n{}", slowQueryLog.dump());
+        assertThat(slowQueryLog.dump()).contains("select * from member where member_id = ?");
+    }
+
+    @Test
+    void jdbcTemplate() {
+        MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+        repository.save(new Member("memberA", 10000));
+        repository.update("memberA", 5000);
+
+        List<SlowQuery> updates = slowQueryLog.find(entry -> entry.sql().startsWith("update"));
+        assertThat(updates).singleElement().satisfies(entry -> {
+            assertThat(entry.caller()).startsWith("MemberRepositoryV5.update:");
+            assertThat(entry.rows()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void ringBuffer() {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        for (int i = 0; i < 10; i++) {
+            template.queryForList("select * from member where money > ?", i);
+        }
+
+        // capacity 4: 마지막 4건만 남는다
+        List<SlowQuery> entries = slowQueryLog.recent();
+        assertThat(entries).extracting(SlowQuery::id).containsExactly(6L, 7L, 8L, 9L);
+        assertThat(entries.get(3).bindValues()).containsExactly(SlowQueryLog.REDACTED);
+        assertThat(slowQueryLog.getCapturedCount()).isEqualTo(10);
+    }
+
+    @Test
+    void parameterColumns() {
+        assertThat(ParameterColumns.of("insert into member (member_id, money) values (?, ?), (?, ?)"))
+                .containsExactly("member_id", "money", "member_id", "money");
+        assertThat(ParameterColumns.of("update member set money = money + ? where member_id = ? and money + ? >= 0"))
+                .containsExactly(null, "member_id", null);
+        assertThat(ParameterColumns.of("select * from member m where m.money >= ? and m.member_id <> '?'"))
+                .isEqualTo(Arrays.asList("money"));
+    }
+}
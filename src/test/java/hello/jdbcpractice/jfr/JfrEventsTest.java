@@ -0,0 +1,124 @@
+package hello.jdbcpractice.jfr;
+
+import hello.jdbcpractice.connection.metrics.InstrumentedDataSource;
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.MemberRepositoryV5;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class JfrEventsTest {
+
+    DriverManagerDataSource dataSource;
+    TransactionTemplate txTemplate;
+    Recording recording;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:jfr;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        new JdbcTemplate(dataSource).update("delete from member");
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionManager.addListener(new JfrTransactionListener());
+        txTemplate = new TransactionTemplate(transactionManager);
+
+        recording = new Recording();
+        recording.enable(RepositoryOperationEvent.class).withoutThreshold();
+        recording.enable(ConnectionAcquireEvent.class).withoutThreshold();
+        recording.enable(TransactionEvent.class).withoutThreshold();
+        recording.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        recording.close();
+    }
+
+    @Test
+    void repositoryOperation() throws IOException {
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(new InstrumentedDataSource(dataSource));
+        repository.save(new Member("memberA", 10000));
+        repository.findById("memberA");
+
+        List<RecordedEvent> events = events("hello.jdbcpractice.RepositoryOperation");
+        assertThat(events).extracting(event -> event.getString("sqlId")).containsExactly("INSERT", "FIND_BY_ID");
+        RecordedEvent save = events.get(0);
+        assertThat(save.getString("repository")).isEqualTo("MemberRepositoryV4_2");
+        assertThat(save.getString("method")).isEqualTo("save");
+        assertThat(save.getLong("rows")).isEqualTo(1);
+        // memberId는 해시로만 남는다
+        assertThat(save.getInt("memberIdHash")).isEqualTo(RepositoryOperationEvent.hash("memberA"));
+
+        // 커넥션 획득은 InstrumentedDataSource에서 한 번씩만 남는다
+        assertThat(events("hello.jdbcpractice.ConnectionAcquire")).hasSize(2)
+                .allSatisfy(event -> assertThat(event.getBoolean("success")).isTrue());
+    }
+
+    @Test
+    void transaction() throws IOException {
+        MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+        txTemplate.executeWithoutResult(status -> repository.save(new Member("memberA", 10000)));
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            repository.update("memberA", 0);
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(events("hello.jdbcpractice.Transaction"))
+                .extracting(event -> event.getString("outcome"))
+                .containsExactly(TransactionEvent.COMMIT, TransactionEvent.ROLLBACK);
+        assertThat(events("hello.jdbcpractice.RepositoryOperation"))
+                .extracting(event -> event.getString("method"))
+                .containsExactly("save", "update");
+    }
+
+    @Test
+    void notFound() throws IOException {
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+        assertThatThrownBy(() -> repository.findById("none")).isInstanceOf(NoSuchElementException.class);
+
+        // 실패한 호출도 행 수 -1로 남는다
+        assertThat(events("hello.jdbcpractice.RepositoryOperation")).singleElement()
+                .satisfies(event -> assertThat(event.getLong("rows")).isEqualTo(-1));
+    }
+
+    private List<RecordedEvent> events(String name) throws IOException {
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+        }
+        Path file = Files.createTempFile("jfr-events", ".jfr");
+        try {
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().equals(name))
+                    .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                    .toList();
+            log.info("{} events={}", name, events.size());
+            return events;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
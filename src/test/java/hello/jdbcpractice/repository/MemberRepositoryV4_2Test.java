@@ -0,0 +1,216 @@
+package hello.jdbcpractice.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbcpractice.domain.member.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static hello.jdbcpractice.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class MemberRepositoryV4_2Test {
+    private static final int MEMBER_COUNT = 1200;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV4_2 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USER);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = new MemberRepositoryV4_2(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            repository.delete(memberId(i));
+        }
+        dataSource.close();
+    }
+
+    @Test
+    void saveAll() {
+        BatchResult<Member> result = repository.saveAll(members(MEMBER_COUNT));
+
+        assertThat(result.getSuccessCount()).isEqualTo(MEMBER_COUNT);
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(repository.findById(memberId(MEMBER_COUNT - 1)).getMoney()).isEqualTo(MEMBER_COUNT - 1);
+    }
+
+    @Test
+    void saveAll_duplicateKey() {
+        // 중복 키 한 건 때문에 청크 전체가 버려지면 안 된다
+        repository.save(new Member(memberId(10), 0));
+
+        BatchResult<Member> result = repository.saveAll(members(MEMBER_COUNT));
+
+        assertThat(result.getSuccessCount()).isEqualTo(MEMBER_COUNT - 1);
+        assertThat(result.getFailures()).hasSize(1);
+        assertThat(result.getFailures().get(0).item().getMemberId()).isEqualTo(memberId(10));
+        assertThat(result.getFailures().get(0).cause()).isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void saveAll_multiRow() {
+        repository = new MemberRepositoryV4_2(dataSource, true);
+        repository.save(new Member(memberId(10), 0));
+
+        BatchResult<Member> result = repository.saveAll(members(MEMBER_COUNT));
+
+        assertThat(result.getSuccessCount()).isEqualTo(MEMBER_COUNT - 1);
+        assertThat(result.getFailures()).hasSize(1);
+    }
+
+    @Test
+    void findAllByIds() {
+        repository.saveAll(members(MEMBER_COUNT));
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            ids.add(memberId(i));
+        }
+        ids.add("missing");
+
+        Map<String, Member> result = repository.findAllByIds(ids);
+
+        // 없는 회원은 예외 없이 빠진다
+        assertThat(result).hasSize(300);
+        assertThat(result).doesNotContainKey("missing");
+        assertThat(result.get(memberId(299)).getMoney()).isEqualTo(299);
+    }
+
+    @Test
+    void streamAll() {
+        repository.saveAll(members(MEMBER_COUNT));
+
+        long count;
+        try (Stream<Member> members = repository.streamAll(100)) {
+            count = members.filter(member -> member.getMemberId().startsWith("batch")).count();
+        }
+
+        assertThat(count).isEqualTo(MEMBER_COUNT);
+        // 스트림을 닫으면 커넥션이 반납되어야 한다
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void findPage() {
+        repository.saveAll(members(MEMBER_COUNT));
+
+        List<String> ids = new ArrayList<>();
+        String pageToken = null;
+        int pages = 0;
+        do {
+            MemberPage page = repository.findPage(pageToken, 100);
+            assertThat(page.members()).hasSizeLessThanOrEqualTo(100);
+            page.members().stream()
+                    .map(Member::getMemberId)
+                    .filter(memberId -> memberId.startsWith("batch"))
+                    .forEach(ids::add);
+            pageToken = page.nextPageToken();
+            pages++;
+        } while (pageToken != null);
+
+        log.info("pages={}", pages);
+        // 빠지거나 겹치는 행 없이 member_id 순서대로 읽는다
+        assertThat(ids).hasSize(MEMBER_COUNT).doesNotHaveDuplicates().isSorted();
+    }
+
+    @Test
+    void findPageByMoney() {
+        repository.saveAll(members(MEMBER_COUNT));
+
+        List<Integer> moneys = new ArrayList<>();
+        String pageToken = null;
+        do {
+            MemberPage page = repository.findPageByMoney(pageToken, 70);
+            page.members().stream()
+                    .filter(member -> member.getMemberId().startsWith("batch"))
+                    .map(Member::getMoney)
+                    .forEach(moneys::add);
+            pageToken = page.nextPageToken();
+        } while (pageToken != null);
+
+        assertThat(moneys).hasSize(MEMBER_COUNT).isSorted();
+    }
+
+    @Test
+    void findPage_invalidToken() {
+        repository.saveAll(members(10));
+        String moneyToken = repository.findPageByMoney(null, 1).nextPageToken();
+
+        assertThatThrownBy(() -> repository.findPage("not a token", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        // 정렬이 다른 토큰은 섞어 쓸 수 없다
+        assertThatThrownBy(() -> repository.findPage(moneyToken, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void compareAndUpdate() {
+        repository.save(new Member(memberId(0), 1000));
+        Member member = repository.findById(memberId(0));
+
+        assertThat(repository.compareAndUpdate(memberId(0), member.getVersion(), 2000)).isTrue();
+        // 이미 바뀐 version으로는 반영되지 않는다
+        assertThat(repository.compareAndUpdate(memberId(0), member.getVersion(), 3000)).isFalse();
+
+        Member updated = repository.findById(memberId(0));
+        assertThat(updated.getMoney()).isEqualTo(2000);
+        assertThat(updated.getVersion()).isEqualTo(member.getVersion() + 1);
+
+        // update, upsert도 version을 올린다
+        repository.update(memberId(0), 2500);
+        repository.upsert(new Member(memberId(0), 2600));
+        assertThat(repository.findById(memberId(0)).getVersion()).isEqualTo(member.getVersion() + 3);
+    }
+
+    @Test
+    void upsert() {
+        // 없으면 저장
+        repository.upsert(new Member(memberId(0), 1000));
+        assertThat(repository.findById(memberId(0)).getMoney()).isEqualTo(1000);
+
+        // 있으면 덮어쓰기
+        repository.upsert(new Member(memberId(0), 2000));
+        assertThat(repository.findById(memberId(0)).getMoney()).isEqualTo(2000);
+    }
+
+    @Test
+    void upsertAll() {
+        repository.saveAll(members(10));
+
+        BatchResult<Member> result = repository.upsertAll(members(MEMBER_COUNT));
+
+        assertThat(result.getSuccessCount()).isEqualTo(MEMBER_COUNT);
+        assertThat(result.hasFailures()).isFalse();
+    }
+
+    private List<Member> members(int count) {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            members.add(new Member(memberId(i), i));
+        }
+        return members;
+    }
+
+    private String memberId(int i) {
+        return "batch" + i;
+    }
+}
@@ -0,0 +1,81 @@
+package hello.jdbcpractice.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbcpractice.domain.member.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static hello.jdbcpractice.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class MemberRepositoryV5Test {
+    private static final int MEMBER_COUNT = 1200;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USER);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = new MemberRepositoryV5(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            repository.delete(memberId(i));
+        }
+        dataSource.close();
+    }
+
+    @Test
+    void saveAll_duplicateKey() {
+        // 중복 키 한 건 때문에 saveAll 전체가 실패하면 안 된다
+        repository.save(new Member(memberId(10), 0));
+
+        BatchResult<Member> result = repository.saveAll(members(MEMBER_COUNT));
+
+        assertThat(result.getSuccessCount()).isEqualTo(MEMBER_COUNT - 1);
+        assertThat(result.getFailures()).hasSize(1);
+        assertThat(result.getFailures().get(0).item().getMemberId()).isEqualTo(memberId(10));
+        assertThat(result.getFailures().get(0).cause()).isInstanceOf(DuplicateKeyException.class);
+        assertThat(repository.findById(memberId(MEMBER_COUNT - 1)).getMoney()).isEqualTo(MEMBER_COUNT - 1);
+    }
+
+    @Test
+    void saveAll_multiRow_duplicateKey() {
+        repository = new MemberRepositoryV5(dataSource, true);
+        repository.save(new Member(memberId(10), 0));
+
+        BatchResult<Member> result = repository.saveAll(members(MEMBER_COUNT));
+
+        assertThat(result.getSuccessCount()).isEqualTo(MEMBER_COUNT - 1);
+        assertThat(result.getFailures()).singleElement()
+                .satisfies(failure -> assertThat(failure.item().getMemberId()).isEqualTo(memberId(10)));
+    }
+
+    private List<Member> members(int count) {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            members.add(new Member(memberId(i), i));
+        }
+        return members;
+    }
+
+    private String memberId(int i) {
+        return "v5-member" + i;
+    }
+}
@@ -0,0 +1,143 @@
+package hello.jdbcpractice.repository.cache;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 메모리 H2로 캐시와 트랜잭션 동기화 확인
+ */
+@Slf4j
+class CachingMemberRepositoryTest {
+    private static final String MEMBER_A = "memberA";
+
+    DriverManagerDataSource dataSource;
+    JdbcTemplate jdbcTemplate;
+    CachingMemberRepository repository;
+    TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:cache;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate.update("delete from member");
+
+        repository = new CachingMemberRepository(new MemberRepositoryV5(dataSource), 100, Duration.ofMinutes(1), EvictionPolicy.LRU);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.invalidateAll();
+    }
+
+    @Test
+    void readThrough() {
+        repository.findById(MEMBER_A);
+        repository.findById(MEMBER_A);
+
+        CacheStats stats = repository.stats();
+        log.info("stats={}", stats);
+        assertThat(stats.hitCount()).isEqualTo(1);
+        assertThat(stats.missCount()).isEqualTo(1);
+        assertThat(stats.hitRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    void invalidateAfterCommit() {
+        repository.findById(MEMBER_A);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_A, 8000);
+            // 같은 트랜잭션 안에서는 변경된 값을 읽는다
+            assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        });
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+    }
+
+    @Test
+    void keepCacheOnRollback() {
+        repository.findById(MEMBER_A);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_A, 8000);
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidateOnFailedCompareAndUpdate() {
+        // 캐시에 version 0이 남은 채로 다른 곳에서 변경
+        Member cached = repository.findById(MEMBER_A);
+        jdbcTemplate.update("update member set money = 9000, version = version + 1 where member_id = ?", MEMBER_A);
+
+        assertThat(repository.compareAndUpdate(MEMBER_A, cached.getVersion(), 5000)).isFalse();
+
+        // 다시 읽으면 DB의 최신 버전으로 재시도할 수 있다
+        Member latest = repository.findById(MEMBER_A);
+        assertThat(latest.getVersion()).isEqualTo(1);
+        assertThat(repository.compareAndUpdate(MEMBER_A, latest.getVersion(), 5000)).isTrue();
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void upsertInvalidates() {
+        repository.findById(MEMBER_A);
+
+        repository.upsert(new Member(MEMBER_A, 3000));
+
+        // 넘긴 값(version 0)이 아니라 DB에서 올라간 version을 읽는다
+        Member member = repository.findById(MEMBER_A);
+        assertThat(member.getMoney()).isEqualTo(3000);
+        assertThat(member.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidationDuringLoad() {
+        // DB에서 예전 값을 읽은 직후, 캐시에 넣기 전에 다른 쓰기가 커밋되고 캐시를 지운다
+        Runnable[] afterLoad = new Runnable[1];
+        MemberRepositoryV5 target = new MemberRepositoryV5(dataSource) {
+            @Override
+            public Member findById(String memberId) {
+                Member member = super.findById(memberId);
+                Runnable hook = afterLoad[0];
+                afterLoad[0] = null;
+                if (hook != null) {
+                    hook.run();
+                }
+                return member;
+            }
+        };
+        CachingMemberRepository cache = new CachingMemberRepository(target, 100, Duration.ofMinutes(1), EvictionPolicy.LRU);
+        afterLoad[0] = () -> cache.update(MEMBER_A, 8000);
+
+        assertThat(cache.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        // 예전 값이 캐시에 남지 않는다
+        assertThat(cache.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+    }
+
+    @Test
+    void lruEviction() {
+        CachingMemberRepository small = new CachingMemberRepository(repository, 1, Duration.ofMinutes(1), EvictionPolicy.LRU);
+        small.save(new Member("memberB", 0));
+        small.save(new Member("memberC", 0));
+
+        assertThat(small.stats().evictionCount()).isEqualTo(1);
+        assertThat(small.stats().size()).isEqualTo(1);
+    }
+}
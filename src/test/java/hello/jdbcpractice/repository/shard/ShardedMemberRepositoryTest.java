@@ -0,0 +1,215 @@
+package hello.jdbcpractice.repository.shard;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.BatchResult;
+import hello.jdbcpractice.repository.MemberPage;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import hello.jdbcpractice.service.MemberServiceV4;
+import hello.jdbcpractice.service.Transfer;
+import hello.jdbcpractice.service.TransferMode;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 메모리 H2 여러 개를 샤드로 써서 라우팅, 샤드 간 이체, 재배치 확인
+ */
+@Slf4j
+class ShardedMemberRepositoryTest {
+    private static final int MEMBER_COUNT = 1000;
+
+    List<Shard> shards = new ArrayList<>();
+    ShardedMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        for (int i = 0; i < 3; i++) {
+            shards.add(shard(i));
+        }
+        repository = new ShardedMemberRepository(shards);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.close();
+    }
+
+    @Test
+    void routing() {
+        BatchResult<Member> result = repository.saveAll(members(MEMBER_COUNT));
+        assertThat(result.getSuccessCount()).isEqualTo(MEMBER_COUNT);
+
+        // 각 회원은 링이 가리키는 샤드에만 있다
+        for (int i = 0; i < MEMBER_COUNT; i += 37) {
+            String memberId = memberId(i);
+            for (Shard shard : shards) {
+                boolean stored = !shard.repository().findAllByIds(List.of(memberId)).isEmpty();
+                assertThat(stored).isEqualTo(shard.equals(repository.shardOf(memberId)));
+            }
+        }
+
+        // 가상 노드 덕분에 샤드마다 비슷하게 나뉜다
+        for (Shard shard : shards) {
+            long count = count(shard);
+            log.info("{} count={}", shard, count);
+            assertThat(count).isBetween(MEMBER_COUNT / 6L, MEMBER_COUNT / 2L);
+        }
+
+        Map<String, Member> found = repository.findAllByIds(List.of(memberId(0), memberId(1), memberId(2), "missing"));
+        assertThat(found).hasSize(3);
+    }
+
+    @Test
+    void findPage() {
+        repository.saveAll(members(MEMBER_COUNT));
+
+        List<String> ids = new ArrayList<>();
+        String pageToken = null;
+        do {
+            MemberPage page = repository.findPage(pageToken, 64);
+            page.members().forEach(member -> ids.add(member.getMemberId()));
+            pageToken = page.nextPageToken();
+        } while (pageToken != null);
+
+        assertThat(ids).hasSize(MEMBER_COUNT).doesNotHaveDuplicates().isSorted();
+    }
+
+    @Test
+    void crossShardTransfer() {
+        String[] pair = crossShardPair();
+        repository.save(new Member(pair[0], 10000));
+        repository.save(new Member(pair[1], 10000));
+
+        MemberServiceV4 memberService = new MemberServiceV4(repository, TransferMode.RELATIVE_UPDATE);
+        memberService.accountTransfer(pair[0], pair[1], 2000);
+
+        assertThat(repository.findById(pair[0]).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById(pair[1]).getMoney()).isEqualTo(12000);
+
+        assertThatThrownBy(() -> repository.transfer(pair[0], pair[1], 100000))
+                .isInstanceOf(InsufficientBalanceException.class);
+        assertThat(repository.findById(pair[0]).getMoney()).isEqualTo(8000);
+
+        // 서비스 검증이 실패하면 어느 샤드에도 반영되지 않는다
+        repository.save(new Member("ex", 10000));
+        assertThatThrownBy(() -> memberService.accountTransfer(pair[0], "ex", 2000))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(repository.findById(pair[0]).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById("ex").getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void crossShardTransferCompensation() {
+        // 받는 회원이 없으면 입금이 실패하고 출금이 되돌려진다
+        String[] pair = crossShardPair();
+        repository.save(new Member(pair[0], 10000));
+
+        assertThatThrownBy(() -> repository.transfer(pair[0], pair[1], 2000))
+                .isInstanceOf(NoSuchElementException.class);
+
+        assertThat(repository.findById(pair[0]).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void crossShardApplyDeltas() {
+        String[] pair = crossShardPair();
+        repository.save(new Member(pair[0], 10000));
+        repository.save(new Member(pair[1], 10000));
+
+        MemberServiceV4 memberService = new MemberServiceV4(repository, TransferMode.RELATIVE_UPDATE);
+        memberService.transferAll(List.of(new Transfer(pair[0], pair[1], 3000), new Transfer(pair[1], pair[0], 1000)));
+
+        assertThat(repository.findById(pair[0]).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById(pair[1]).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    void crossShardApplyDeltasCompensation() {
+        // 입금 받을 회원이 없으면 그 샤드가 실패하고 먼저 커밋한 출금 샤드가 되돌려진다
+        String[] pair = crossShardPair();
+        repository.save(new Member(pair[0], 10000));
+
+        assertThatThrownBy(() -> repository.applyDeltas(Map.of(pair[0], -2000, pair[1], 2000)))
+                .isInstanceOf(NoSuchElementException.class);
+
+        assertThat(repository.findById(pair[0]).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void rebalance() {
+        repository.saveAll(members(MEMBER_COUNT));
+
+        // 샤드 추가
+        List<Shard> expanded = new ArrayList<>(shards);
+        expanded.add(shard(3));
+        ShardedMemberRepository expandedRepository = new ShardedMemberRepository(expanded);
+
+        long moved = new ShardRebalancer(100).rebalance(expandedRepository);
+        log.info("moved={}", moved);
+
+        // 새 샤드가 맡을 몫(약 1/4)만 옮겨진다
+        assertThat(moved).isEqualTo(count(expanded.get(3)));
+        assertThat(moved).isBetween(MEMBER_COUNT / 8L, MEMBER_COUNT / 2L);
+        assertThat(expandedRepository.findAllByIds(memberIds(MEMBER_COUNT))).hasSize(MEMBER_COUNT);
+        long total = expanded.stream().mapToLong(this::count).sum();
+        assertThat(total).isEqualTo(MEMBER_COUNT);
+
+        // 다시 실행하면 옮길 회원이 없다
+        assertThat(new ShardRebalancer().rebalance(expandedRepository)).isZero();
+        expandedRepository.close();
+    }
+
+    private String[] crossShardPair() {
+        String fromId = memberId(0);
+        for (int i = 1; ; i++) {
+            if (!repository.shardOf(memberId(i)).equals(repository.shardOf(fromId))) {
+                return new String[]{fromId, memberId(i)};
+            }
+        }
+    }
+
+    private Shard shard(int index) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:shard" + index + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate.update("delete from member");
+        return Shard.of("shard" + index, dataSource);
+    }
+
+    private long count(Shard shard) {
+        try (var members = shard.repository().streamAll()) {
+            return members.count();
+        }
+    }
+
+    private List<Member> members(int count) {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            members.add(new Member(memberId(i), i));
+        }
+        return members;
+    }
+
+    private List<String> memberIds(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(memberId(i));
+        }
+        return ids;
+    }
+
+    private String memberId(int i) {
+        return "shard" + i;
+    }
+}
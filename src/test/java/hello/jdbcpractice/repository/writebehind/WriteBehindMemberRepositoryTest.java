@@ -0,0 +1,189 @@
+package hello.jdbcpractice.repository.writebehind;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV5;
+import hello.jdbcpractice.repository.ex.MyDuplicateKeyException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 메모리 H2로 write-behind 반영과 저널 재생 확인
+ * 반영 주기를 길게 잡고 flush를 직접 호출한다
+ */
+@Slf4j
+class WriteBehindMemberRepositoryTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final Duration MANUAL = Duration.ofHours(1);
+
+    @TempDir
+    Path tempDir;
+
+    DriverManagerDataSource dataSource;
+    MemberRepositoryV5 target;
+    JdbcTemplate jdbcTemplate;
+    WriteBehindMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:writebehind;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate.update("delete from member");
+
+        target = new MemberRepositoryV5(dataSource);
+        repository = open();
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.close();
+    }
+
+    @Test
+    void coalesceAndFlush() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        for (int i = 1; i <= 100; i++) {
+            repository.update(MEMBER_A, 10000 - i);
+        }
+
+        //then: 반영 전에도 최신 값을 읽고, 변경은 하나로 합쳐져 있다
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9900);
+        assertThat(repository.pendingCount()).isEqualTo(1);
+        assertThat(count()).isZero();
+
+        //when
+        repository.flush();
+
+        //then
+        assertThat(repository.pendingCount()).isZero();
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(9900);
+    }
+
+    @Test
+    void readPendingDelete() {
+        target.save(new Member(MEMBER_A, 10000));
+        repository.delete(MEMBER_A);
+
+        assertThatThrownBy(() -> repository.findById(MEMBER_A))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThat(repository.findAllByIds(List.of(MEMBER_A))).isEmpty();
+
+        repository.flush();
+        assertThat(count()).isZero();
+    }
+
+    @Test
+    void saveOverPendingUpdate() {
+        target.save(new Member(MEMBER_A, 10000));
+        repository.update(MEMBER_A, 5000);
+
+        // 행이 있으므로 중복 키. 대기 중인 UPDATE는 그대로 남는다
+        assertThatThrownBy(() -> repository.save(new Member(MEMBER_A, 1)))
+                .isInstanceOf(MyDuplicateKeyException.class);
+
+        repository.flush();
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void flushInBatches() {
+        // 한 건씩 반영하면 실패하는 원본
+        MemberRepositoryV5 batchOnly = new MemberRepositoryV5(dataSource) {
+            @Override
+            public void update(String memberId, int money) {
+                throw new AssertionError("update must be batched");
+            }
+
+            @Override
+            public void delete(String memberId) {
+                throw new AssertionError("delete must be batched");
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            batchOnly.save(new Member("batch" + i, 1000));
+        }
+
+        repository.close();
+        repository = new WriteBehindMemberRepository(batchOnly, tempDir.resolve("batch.journal"),
+                WriteBehindMemberRepository.DEFAULT_JOURNAL_SIZE, MANUAL, false,
+                new DataSourceTransactionManager(dataSource));
+        for (int i = 0; i < 5; i++) {
+            repository.update("batch" + i, 2000 + i);
+            repository.delete("batch" + (i + 5));
+        }
+        repository.flush();
+
+        assertThat(count()).isEqualTo(5);
+        assertThat(target.findById("batch4").getMoney()).isEqualTo(2004);
+    }
+
+    @Test
+    void transfer() {
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+
+        repository.transfer(MEMBER_A, MEMBER_B, 2000);
+        repository.flush();
+
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(target.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    void replayAfterRestart() {
+        //given: 반영하지 않고 죽은 상황 (close를 호출하지 않는다)
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.update(MEMBER_A, 7000);
+        repository.save(new Member(MEMBER_B, 500));
+
+        //when
+        WriteBehindMemberRepository restarted = open();
+
+        //then
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(7000);
+        assertThat(target.findById(MEMBER_B).getMoney()).isEqualTo(500);
+        restarted.close();
+    }
+
+    @Test
+    void journalFull() {
+        repository.close();
+        repository = new WriteBehindMemberRepository(target, tempDir.resolve("small.journal"),
+                4 * 1024, MANUAL, false);
+
+        for (int i = 0; i < 200; i++) {
+            repository.upsert(new Member("full" + i, i));
+        }
+
+        assertThat(repository.findById("full199").getMoney()).isEqualTo(199);
+        repository.flush();
+        assertThat(count()).isEqualTo(200);
+    }
+
+    private WriteBehindMemberRepository open() {
+        return new WriteBehindMemberRepository(target, tempDir.resolve("member.journal"),
+                WriteBehindMemberRepository.DEFAULT_JOURNAL_SIZE, MANUAL, false);
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("select count(*) from member", Integer.class);
+    }
+}
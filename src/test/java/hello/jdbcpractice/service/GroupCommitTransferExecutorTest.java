@@ -0,0 +1,182 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepository;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 그룹 커밋 - 여러 이체를 트랜잭션 하나로 묶고 실패한 이체만 savepoint로 롤백
+ */
+@Slf4j
+@SpringBootTest
+class GroupCommitTransferExecutorTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private GroupCommitTransferExecutor executor;
+    @Autowired
+    private MemberServiceV4 memberService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV4_2(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), TransferMode.RELATIVE_UPDATE);
+        }
+
+        @Bean
+        GroupCommitTransferExecutor executor(MemberServiceV4 memberService, PlatformTransactionManager transactionManager) {
+            return new GroupCommitTransferExecutor(memberService, transactionManager, Duration.ofMillis(5), 50);
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("동시 요청을 묶어서 커밋")
+    void groupCommit() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        long batches = executor.getBatchCount();
+
+        // when
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(executor.submit(MEMBER_A, MEMBER_B, 10));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        // then
+        log.info("batches={}", executor.getBatchCount() - batches);
+        assertThat(executor.getBatchCount() - batches).isLessThan(200);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("실패한 요청만 롤백")
+    void failureIsolation() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        // when
+        CompletableFuture<Void> ok1 = executor.submit(MEMBER_A, MEMBER_B, 1000);
+        CompletableFuture<Void> validationFail = executor.submit(MEMBER_A, MEMBER_EX, 1000);
+        CompletableFuture<Void> insufficient = executor.submit(MEMBER_A, MEMBER_B, 100000);
+        CompletableFuture<Void> ok2 = executor.submit(MEMBER_B, MEMBER_A, 500);
+
+        // then
+        ok1.join();
+        ok2.join();
+        assertThatThrownBy(validationFail::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> executor.accountTransfer(MEMBER_A, MEMBER_B, 100000))
+                .isInstanceOf(InsufficientBalanceException.class);
+        assertThatThrownBy(insufficient::join).hasCauseInstanceOf(InsufficientBalanceException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("close와 동시에 들어온 요청도 완료된다")
+    void submitDuringClose() throws Exception {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 1000000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+
+        try {
+            for (int round = 0; round < 20; round++) {
+                GroupCommitTransferExecutor closing =
+                        new GroupCommitTransferExecutor(memberService, transactionManager, Duration.ofMillis(1), 50);
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                CountDownLatch started = new CountDownLatch(4);
+                List<Future<?>> submitters = new ArrayList<>();
+
+                // when: 요청을 계속 넣는 중에 닫는다
+                for (int i = 0; i < 4; i++) {
+                    submitters.add(clients.submit(() -> {
+                        started.countDown();
+                        while (true) {
+                            try {
+                                CompletableFuture<Void> future = closing.submit(MEMBER_A, MEMBER_B, 1);
+                                synchronized (futures) {
+                                    futures.add(future);
+                                }
+                            } catch (IllegalStateException e) {
+                                return;
+                            }
+                        }
+                    }));
+                }
+                started.await();
+                closing.close();
+                for (Future<?> submitter : submitters) {
+                    submitter.get();
+                }
+
+                // then: 커밋되든 실패하든 모든 future가 완료된다
+                synchronized (futures) {
+                    CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                            .exceptionally(e -> null);
+                    assertThat(all).succeedsWithin(Duration.ofSeconds(5));
+                }
+            }
+        } finally {
+            clients.shutdown();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepository;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.ex.TransferRequestConflictException;
+import hello.jdbcpractice.repository.idempotency.TransferRequestRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 멱등 키로 중복 이체 방지
+ */
+@Slf4j
+@SpringBootTest
+class IdempotentMemberServiceTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private TransferRequestRepository requestRepository;
+    @Autowired
+    private IdempotentMemberService idempotentMemberService;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV4_2(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository());
+        }
+
+        @Bean
+        TransferRequestRepository transferRequestRepository() {
+            return new TransferRequestRepository(dataSource);
+        }
+
+        @Bean
+        IdempotentMemberService idempotentMemberService(MemberServiceV4 memberService,
+                                                        PlatformTransactionManager transactionManager) {
+            return new IdempotentMemberService(memberService, transferRequestRepository(), transactionManager);
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+        new JdbcTemplate(dataSource).update("delete from transfer_request where request_key like 'test-%'");
+    }
+
+    @Test
+    @DisplayName("같은 키로 다시 요청하면 한 번만 이체")
+    void duplicate() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        // when
+        boolean first = idempotentMemberService.accountTransfer("test-1", MEMBER_A, MEMBER_B, 2000);
+        boolean retried = idempotentMemberService.accountTransfer("test-1", MEMBER_A, MEMBER_B, 2000);
+
+        // then
+        assertThat(first).isTrue();
+        assertThat(retried).isFalse();
+        assertThat(idempotentMemberService.getCachedDuplicateCount()).isEqualTo(1);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("메모리에 없는 키도 테이블에서 중복을 찾는다")
+    void duplicateStored() {
+        // given - 다른 인스턴스가 처리한 요청
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        requestRepository.insertIfAbsent("test-2", MEMBER_A, MEMBER_B, 2000);
+
+        // when
+        boolean applied = idempotentMemberService.accountTransfer("test-2", MEMBER_A, MEMBER_B, 2000);
+
+        // then
+        assertThat(applied).isFalse();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        // 같은 키를 다른 이체에 쓰면 거절
+        assertThatThrownBy(() -> idempotentMemberService.accountTransfer("test-2", MEMBER_A, MEMBER_B, 3000))
+                .isInstanceOf(TransferRequestConflictException.class);
+    }
+
+    @Test
+    @DisplayName("이체가 실패하면 키도 롤백되어 같은 키로 다시 시도할 수 있다")
+    void retryAfterFailure() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        // when
+        assertThatThrownBy(() -> idempotentMemberService.accountTransfer("test-3", MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        // then
+        assertThat(requestRepository.findByKey("test-3")).isEmpty();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        assertThat(idempotentMemberService.accountTransfer("test-3", MEMBER_A, MEMBER_B, 2000)).isTrue();
+    }
+
+    @Test
+    @DisplayName("보관 기간이 지난 키를 나눠서 지운다")
+    void cleanup() throws InterruptedException {
+        // given
+        for (int i = 0; i < 25; i++) {
+            requestRepository.insertIfAbsent("test-c" + i, MEMBER_A, MEMBER_B, 1);
+        }
+        Thread.sleep(10);
+
+        // when
+        int deleted;
+        try (TransferRequestCleaner cleaner =
+                     new TransferRequestCleaner(requestRepository, Duration.ZERO, 10, Duration.ofHours(1))) {
+            deleted = cleaner.cleanup();
+        }
+
+        // then
+        assertThat(deleted).isGreaterThanOrEqualTo(25);
+        assertThat(requestRepository.findByKey("test-c0")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("보관 기간은 DB 시계로 계산한다")
+    void cleanupRetention() {
+        // given: DB 시계 기준으로 2시간 전에 저장된 키와 방금 저장된 키
+        requestRepository.insertIfAbsent("test-old", MEMBER_A, MEMBER_B, 1);
+        requestRepository.insertIfAbsent("test-new", MEMBER_A, MEMBER_B, 1);
+        new JdbcTemplate(dataSource).update(
+                "update transfer_request set created_at = dateadd(hour, -2, current_timestamp) where request_key = 'test-old'");
+
+        // when
+        try (TransferRequestCleaner cleaner =
+                     new TransferRequestCleaner(requestRepository, Duration.ofHours(1), 10, Duration.ofHours(1))) {
+            cleaner.cleanup();
+        }
+
+        // then
+        assertThat(requestRepository.findByKey("test-old")).isEmpty();
+        assertThat(requestRepository.findByKey("test-new")).isPresent();
+    }
+}
@@ -0,0 +1,176 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepository;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import hello.jdbcpractice.repository.ledger.LedgerCompactor;
+import hello.jdbcpractice.repository.ledger.LedgerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 원장 모드 - member.money 대신 ledger에 추가
+ */
+@Slf4j
+@SpringBootTest
+class MemberServiceV4LedgerTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private LedgerRepository ledgerRepository;
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepositoryV4_2 memberRepository() {
+            return new MemberRepositoryV4_2(dataSource);
+        }
+
+        @Bean
+        LedgerRepository ledgerRepository() {
+            return new LedgerRepository(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), ledgerRepository());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        for (String memberId : List.of(MEMBER_A, MEMBER_B, MEMBER_EX)) {
+            jdbcTemplate.update("delete from ledger where member_id = ?", memberId);
+            jdbcTemplate.update("delete from balance_snapshot where member_id = ?", memberId);
+            memberRepository.delete(memberId);
+        }
+    }
+
+    @Test
+    @DisplayName("이체는 원장에 두 줄로 남고 member.money는 그대로")
+    void accountTransfer() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        // when
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        // then
+        assertThat(ledgerRepository.balanceOf(MEMBER_A)).isEqualTo(8000);
+        assertThat(ledgerRepository.balanceOf(MEMBER_B)).isEqualTo(12000);
+        assertThat(ledgerRepository.findEntries(MEMBER_A)).singleElement()
+                .satisfies(entry -> {
+                    assertThat(entry.amount()).isEqualTo(-2000);
+                    assertThat(entry.counterpartyId()).isEqualTo(MEMBER_B);
+                });
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("잔액 부족, 검증 실패는 원장에 남지 않는다")
+    void accountTransferEx() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_EX, 0));
+
+        // when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(InsufficientBalanceException.class);
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 500))
+                .isInstanceOf(IllegalStateException.class);
+
+        // then
+        assertThat(ledgerRepository.findEntries(MEMBER_A)).isEmpty();
+        assertThat(ledgerRepository.balanceOf(MEMBER_A)).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("transferAll은 반영할 이체를 원장에 한 번에 추가")
+    void transferAll() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_B, MEMBER_A, 100),   // 아직 B 잔액이 0
+                new Transfer(MEMBER_A, MEMBER_B, 700),
+                new Transfer(MEMBER_B, MEMBER_A, 200));
+
+        // when
+        List<TransferResult> results = memberService.transferAll(transfers);
+
+        // then
+        assertThat(results.get(0).failure()).isInstanceOf(InsufficientBalanceException.class);
+        assertThat(results.get(1).applied()).isTrue();
+        assertThat(results.get(2).applied()).isTrue();
+        assertThat(ledgerRepository.balanceOf(MEMBER_A)).isEqualTo(500);
+        assertThat(ledgerRepository.balanceOf(MEMBER_B)).isEqualTo(500);
+        assertThat(ledgerRepository.findEntries(MEMBER_B)).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("스냅샷을 새로 써도 잔액은 같다")
+    void compact() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        for (int i = 0; i < 30; i++) {
+            memberService.accountTransfer(MEMBER_A, MEMBER_B, 100);
+        }
+
+        // when
+        try (LedgerCompactor compactor =
+                     new LedgerCompactor(ledgerRepository, transactionManager, 10, 100, Duration.ofHours(1))) {
+            assertThat(compactor.compact()).isGreaterThanOrEqualTo(2);
+            // 새 원장이 없으면 다시 쓰지 않는다
+            assertThat(compactor.compact()).isZero();
+
+            // 처음 이후로는 새로 추가된 원장만 세서 다시 스냅샷한다
+            for (int i = 0; i < 5; i++) {
+                memberService.accountTransfer(MEMBER_A, MEMBER_B, 100);
+                memberService.accountTransfer(MEMBER_B, MEMBER_A, 100);
+            }
+            assertThat(compactor.compact()).isEqualTo(2);
+        }
+        memberService.accountTransfer(MEMBER_B, MEMBER_A, 500);
+
+        // then
+        assertThat(ledgerRepository.balanceOf(MEMBER_A)).isEqualTo(7500);
+        assertThat(ledgerRepository.balanceOf(MEMBER_B)).isEqualTo(12500);
+        assertThat(ledgerRepository.findEntries(MEMBER_A)).hasSize(41);
+    }
+}
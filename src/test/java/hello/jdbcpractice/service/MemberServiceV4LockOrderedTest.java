@@ -0,0 +1,137 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepository;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 락 순서 고정 이체 - select ... for update + 일시적 오류 재시도
+ */
+@Slf4j
+@SpringBootTest
+class MemberServiceV4LockOrderedTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private RetryingMemberService memberService;
+    @Autowired
+    private TransientRetryPolicy retryPolicy;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepositoryV4_2 memberRepository() {
+            return new MemberRepositoryV4_2(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository(), TransferMode.LOCK_ORDERED);
+        }
+
+        @Bean
+        TransientRetryPolicy retryPolicy() {
+            return new TransientRetryPolicy(memberRepository().getExceptionTranslator());
+        }
+
+        @Bean
+        RetryingMemberService memberService(MemberServiceV4 memberServiceV4) {
+            return new RetryingMemberService(memberServiceV4, retryPolicy());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("정상 이체")
+    void accountTransfer() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        // when
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        // then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("잔액 부족은 다시 시도하지 않는다")
+    void accountTransferInsufficientBalance() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        long retries = retryPolicy.getRetryCount();
+
+        // when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000))
+                .isInstanceOf(InsufficientBalanceException.class);
+
+        // then
+        assertThat(retryPolicy.getRetryCount()).isEqualTo(retries);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("A->B, B->A 동시 이체")
+    void crossTransfer() throws Exception {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+
+        // when
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            boolean aToB = i % 2 == 0;
+            futures.add(threads.submit(() ->
+                    memberService.accountTransfer(aToB ? MEMBER_A : MEMBER_B, aToB ? MEMBER_B : MEMBER_A, 10)));
+        }
+        for (Future<?> future : futures) {
+            // 교착 상태나 락 대기 시간 초과로 실패한 이체가 없어야 한다
+            future.get(1, TimeUnit.MINUTES);
+        }
+        threads.shutdown();
+
+        // then
+        log.info("retry={}", retryPolicy.getRetryCount());
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+}
@@ -0,0 +1,122 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepository;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 여러 이체를 회원별 변화량으로 합쳐서 트랜잭션 하나로 처리
+ */
+@Slf4j
+@SpringBootTest
+class MemberServiceV4TransferAllTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final String MEMBER_C = "memberC";
+    private static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV4_2(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_C);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("회원별 변화량으로 합쳐서 반영")
+    void transferAll() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+        memberRepository.save(new Member(MEMBER_C, 0));
+
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            transfers.add(new Transfer(MEMBER_A, MEMBER_B, 1));
+            transfers.add(new Transfer(MEMBER_B, MEMBER_C, 1));
+        }
+
+        // when
+        List<TransferResult> results = memberService.transferAll(transfers);
+
+        // then
+        assertThat(results).hasSize(2000).allMatch(TransferResult::applied);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(0);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(0);
+        assertThat(memberRepository.findById(MEMBER_C).getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("실패한 이체만 빠지고 나머지는 반영")
+    void transferAllPartialFailure() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+        memberRepository.save(new Member(MEMBER_EX, 0));
+
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_B, MEMBER_A, 500),   // 아직 B 잔액이 0
+                new Transfer(MEMBER_A, MEMBER_B, 700),
+                new Transfer(MEMBER_B, MEMBER_A, 500),   // 앞 이체 덕분에 가능
+                new Transfer(MEMBER_A, MEMBER_C, 100),   // C 없음
+                new Transfer(MEMBER_A, MEMBER_EX, 100),  // validation 실패
+                new Transfer(MEMBER_A, MEMBER_B, 900));  // 잔액 부족 (800)
+
+        // when
+        List<TransferResult> results = memberService.transferAll(transfers);
+
+        // then
+        assertThat(results.get(0).failure()).isInstanceOf(InsufficientBalanceException.class);
+        assertThat(results.get(1).applied()).isTrue();
+        assertThat(results.get(2).applied()).isTrue();
+        assertThat(results.get(3).failure()).isInstanceOf(NoSuchElementException.class);
+        assertThat(results.get(4).failure()).isInstanceOf(IllegalStateException.class);
+        assertThat(results.get(5).failure()).isInstanceOf(InsufficientBalanceException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(800);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(200);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,89 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 낙관적 락 이체 - compareAndUpdate 충돌 시 재시도
+ */
+@Slf4j
+class OptimisticTransferExecutorTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+
+    DriverManagerDataSource dataSource;
+    MemberRepositoryV5 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:optimistic;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        new JdbcTemplate(dataSource).update("delete from member");
+
+        repository = new MemberRepositoryV5(dataSource);
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+    }
+
+    @Test
+    void retryOnConflict() {
+        // 처음 읽은 직후 다른 트랜잭션이 A를 바꾼 상황
+        AtomicBoolean interfered = new AtomicBoolean();
+        MemberRepositoryV5 interfering = new MemberRepositoryV5(dataSource) {
+            @Override
+            public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+                Map<String, Member> members = super.findAllByIds(memberIds);
+                if (interfered.compareAndSet(false, true)) {
+                    repository.update(MEMBER_A, 9000);
+                }
+                return members;
+            }
+        };
+        OptimisticTransferExecutor executor =
+                new OptimisticTransferExecutor(interfering, new DataSourceTransactionManager(dataSource));
+
+        executor.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(executor.getRetryCount()).isEqualTo(1);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(7000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    void concurrentTransfer() throws InterruptedException {
+        OptimisticTransferExecutor executor =
+                new OptimisticTransferExecutor(repository, new DataSourceTransactionManager(dataSource), 50);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 400; i++) {
+            boolean aToB = i % 2 == 0;
+            threads.submit(() -> executor.accountTransfer(aToB ? MEMBER_A : MEMBER_B, aToB ? MEMBER_B : MEMBER_A, 10));
+        }
+        threads.shutdown();
+        assertThat(threads.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        log.info("success={}, retry={}, exhausted={}",
+                executor.getSuccessCount(), executor.getRetryCount(), executor.getExhaustedCount());
+        // 충돌이 나도 돈은 새거나 생기지 않는다
+        int total = repository.findById(MEMBER_A).getMoney() + repository.findById(MEMBER_B).getMoney();
+        assertThat(total).isEqualTo(20000);
+        assertThat(executor.getSuccessCount() + executor.getExhaustedCount()).isEqualTo(400);
+    }
+}
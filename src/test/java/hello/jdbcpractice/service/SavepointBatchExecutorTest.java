@@ -0,0 +1,80 @@
+package hello.jdbcpractice.service;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.BatchResult;
+import hello.jdbcpractice.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * savepoint 배치 - 실패한 항목만 롤백
+ */
+@Slf4j
+class SavepointBatchExecutorTest {
+
+    DriverManagerDataSource dataSource;
+    MemberRepositoryV5 repository;
+    SavepointBatchExecutor executor;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:savepoint;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        new JdbcTemplate(dataSource).update("delete from member");
+
+        repository = new MemberRepositoryV5(dataSource);
+        executor = new SavepointBatchExecutor(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Test
+    void duplicateKey() {
+        // given
+        repository.save(new Member("member5", 0));
+
+        // when
+        BatchResult<Member> result = executor.execute(members(10), repository::save);
+
+        // then
+        assertThat(result.getSuccessCount()).isEqualTo(9);
+        assertThat(result.getFailures()).hasSize(1);
+        assertThat(result.getFailures().get(0).item().getMemberId()).isEqualTo("member5");
+        assertThat(result.getFailures().get(0).cause()).isInstanceOf(DuplicateKeyException.class);
+        assertThat(repository.findById("member9").getMoney()).isEqualTo(9000);
+    }
+
+    @Test
+    void validationFailure() {
+        // 검증 전에 쓴 내용도 그 항목의 savepoint까지만 되돌린다
+        BatchResult<Member> result = executor.execute(members(10), 3, member -> {
+            repository.save(member);
+            if (member.getMemberId().equals("member4")) {
+                throw new IllegalStateException("이체중 예외 발생");
+            }
+        });
+
+        assertThat(result.getSuccessCount()).isEqualTo(9);
+        assertThat(result.getFailures()).hasSize(1);
+        assertThat(repository.findAllByIds(List.of("member3", "member4", "member5")))
+                .containsOnlyKeys("member3", "member5");
+    }
+
+    private List<Member> members(int count) {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            members.add(new Member("member" + i, i * 1000));
+        }
+        return members;
+    }
+}
@@ -0,0 +1,106 @@
+package hello.jdbcpractice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class StripedLockManagerTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+
+    StripedLockManager lockManager = new StripedLockManager(64, Duration.ofSeconds(5));
+
+    // 락 안에서만 바꾸는 값 (synchronized나 atomic 없이)
+    int balanceA = 10000;
+    int balanceB = 10000;
+
+    @Test
+    void crossTransfer() throws InterruptedException {
+        // A->B, B->A가 반대 순서로 락을 요청해도 stripe 순서로 잡으므로 교착 상태가 생기지 않는다
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 10_000; i++) {
+            boolean aToB = i % 2 == 0;
+            List<String> memberIds = aToB ? List.of(MEMBER_A, MEMBER_B) : List.of(MEMBER_B, MEMBER_A);
+            threads.submit(() -> lockManager.withLocks(memberIds, () -> {
+                int money = aToB ? 10 : -10;
+                balanceA -= money;
+                balanceB += money;
+            }));
+        }
+        threads.shutdown();
+        assertThat(threads.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        assertThat(balanceA).isEqualTo(10000);
+        assertThat(balanceB).isEqualTo(10000);
+
+        StripedLockManager.StripeStats stats = lockManager.stats(lockManager.stripeOf(MEMBER_A));
+        log.info("stats={}, hottest={}", stats, lockManager.hottest(3));
+        assertThat(stats.acquisitions()).isEqualTo(10_000);
+    }
+
+    @Test
+    void contentionStats() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> lockManager.withLocks(List.of(MEMBER_A), () -> {
+            locked.countDown();
+            await(release);
+        }));
+        holder.start();
+        locked.await();
+
+        Thread waiter = new Thread(() -> lockManager.withLocks(List.of(MEMBER_A), () -> { }));
+        waiter.start();
+        Thread.sleep(50);
+        release.countDown();
+        holder.join();
+        waiter.join();
+
+        StripedLockManager.StripeStats stats = lockManager.stats(lockManager.stripeOf(MEMBER_A));
+        assertThat(stats.contentions()).isEqualTo(1);
+        assertThat(stats.waitNanos()).isPositive();
+        assertThat(lockManager.hottest(1)).containsExactly(stats);
+    }
+
+    @Test
+    void lockTimeout() throws InterruptedException {
+        StripedLockManager shortTimeout = new StripedLockManager(64, Duration.ofMillis(10));
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> shortTimeout.withLocks(List.of(MEMBER_A), () -> {
+            locked.countDown();
+            await(release);
+        }));
+        holder.start();
+        locked.await();
+
+        assertThatThrownBy(() -> shortTimeout.withLocks(List.of(MEMBER_B, MEMBER_A), () -> { }))
+                .isInstanceOf(CannotAcquireLockException.class);
+        release.countDown();
+        holder.join();
+
+        // 실패했을 때 먼저 잡은 락은 풀려 있어야 한다
+        shortTimeout.withLocks(List.of(MEMBER_B), () -> { });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
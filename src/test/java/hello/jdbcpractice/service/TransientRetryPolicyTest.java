@@ -0,0 +1,78 @@
+package hello.jdbcpractice.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransientRetryPolicyTest {
+
+    TransientRetryPolicy retryPolicy = new TransientRetryPolicy(new SQLErrorCodeSQLExceptionTranslator("H2"),
+            3, Duration.ofMillis(1), Duration.ofMillis(5));
+
+    @Test
+    void retryTransient() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = retryPolicy.execute(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new CannotAcquireLockException("lock timeout");
+            }
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(retryPolicy.getRetryCount()).isEqualTo(2);
+    }
+
+    @Test
+    void giveUpAfterMaxAttempts() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryPolicy.execute(() -> {
+            calls.incrementAndGet();
+            throw new DeadlockLoserDataAccessException("deadlock", null);
+        })).isInstanceOf(DeadlockLoserDataAccessException.class);
+
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(retryPolicy.getExhaustedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void permanentNotRetried() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryPolicy.execute(() -> {
+            calls.incrementAndGet();
+            throw new DuplicateKeyException("duplicate");
+        })).isInstanceOf(DuplicateKeyException.class);
+
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void translateRawSQLException() {
+        // 변환되지 않은 H2 락 대기 시간 초과(50200)도 같은 변환기로 일시적 오류로 판단한다
+        RuntimeException lockTimeout = new RuntimeException(new SQLException("Timeout trying to lock table", "HYT00", 50200));
+        RuntimeException duplicateKey = new RuntimeException(new SQLException("Unique index violation", "23505", 23505));
+
+        assertThat(retryPolicy.isTransient(lockTimeout)).isTrue();
+        assertThat(retryPolicy.isTransient(duplicateKey)).isFalse();
+    }
+
+    @Test
+    void jitteredBackoff() {
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            assertThat(retryPolicy.delayMicros(attempt)).isBetween(0L, 5_000L);
+        }
+    }
+}
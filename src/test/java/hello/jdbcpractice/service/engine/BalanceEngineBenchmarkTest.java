@@ -0,0 +1,123 @@
+package hello.jdbcpractice.service.engine;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 같은 회원에 몰리는 이체를 JDBC 상대 갱신과 BalanceEngine으로 각각 처리해서 처리량을 비교한다
+ * 결과는 로그로 남기고, 검증은 잔액 합계만 한다.
+ */
+@Slf4j
+class BalanceEngineBenchmarkTest {
+    private static final int MEMBER_COUNT = 8;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 2500;
+    private static final int INITIAL_MONEY = 1_000_000;
+
+    @TempDir
+    Path tempDir;
+
+    HikariDataSource dataSource;
+    DataSourceTransactionManager transactionManager;
+    MemberRepositoryV4_2 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:engineBenchmark;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(THREADS + 2);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        new JdbcTemplate(dataSource).update("delete from member");
+
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        repository = new MemberRepositoryV4_2(dataSource);
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            repository.save(new Member(memberId(i), INITIAL_MONEY));
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+    }
+
+    @Test
+    void compareWithJdbc() throws InterruptedException {
+        TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
+        long jdbcNanos = run((from, to) ->
+                txTemplate.executeWithoutResult(status -> repository.transfer(from, to, 1)));
+        assertThat(totalInDb()).isEqualTo((long) INITIAL_MONEY * MEMBER_COUNT);
+
+        long engineNanos;
+        try (BalanceEngine engine = new BalanceEngine(repository, transactionManager,
+                tempDir.resolve("benchmark.journal"))) {
+            engineNanos = run((from, to) -> engine.transfer(from, to, 1));
+            engine.flush();
+        }
+        assertThat(totalInDb()).isEqualTo((long) INITIAL_MONEY * MEMBER_COUNT);
+
+        int transfers = THREADS * TRANSFERS_PER_THREAD;
+        log.info("jdbc   transfers={}, elapsed={}ms, tps={}", transfers,
+                TimeUnit.NANOSECONDS.toMillis(jdbcNanos), tps(transfers, jdbcNanos));
+        log.info("engine transfers={}, elapsed={}ms, tps={}", transfers,
+                TimeUnit.NANOSECONDS.toMillis(engineNanos), tps(transfers, engineNanos));
+    }
+
+    /**
+     * 교착 상태 없이 비교하도록 항상 작은 번호 회원에서 큰 번호 회원으로 이체한다
+     */
+    private long run(TransferAction action) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = random.nextInt(MEMBER_COUNT - 1);
+                    int to = random.nextInt(from + 1, MEMBER_COUNT);
+                    action.transfer(memberId(from), memberId(to));
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+        return System.nanoTime() - start;
+    }
+
+    private long totalInDb() {
+        return new JdbcTemplate(dataSource).queryForObject(
+                "select sum(money) from member where member_id like 'bench%'", Long.class);
+    }
+
+    private static long tps(int transfers, long nanos) {
+        return transfers * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+    }
+
+    private static String memberId(int i) {
+        return "bench" + i;
+    }
+
+    private interface TransferAction {
+        void transfer(String fromId, String toId);
+    }
+}
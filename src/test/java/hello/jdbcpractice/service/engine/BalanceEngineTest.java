@@ -0,0 +1,221 @@
+package hello.jdbcpractice.service.engine;
+
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV5;
+import hello.jdbcpractice.repository.ex.InsufficientBalanceException;
+import hello.jdbcpractice.service.MemberServiceV4;
+import hello.jdbcpractice.service.Transfer;
+import hello.jdbcpractice.service.TransferResult;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 메모리 잔액 엔진 - 순서대로 적용, 비동기 DB 반영, 저널 복구
+ */
+@Slf4j
+class BalanceEngineTest {
+    private static final int MEMBER_COUNT = 10;
+
+    @TempDir
+    Path tempDir;
+
+    DriverManagerDataSource dataSource;
+    DataSourceTransactionManager transactionManager;
+    MemberRepositoryV5 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:engine;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        new JdbcTemplate(dataSource).update("delete from member");
+
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        repository = new MemberRepositoryV5(dataSource);
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            repository.save(new Member(memberId(i), 10000));
+        }
+    }
+
+    @Test
+    void transfer() {
+        try (BalanceEngine engine = engine(repository)) {
+            engine.transfer(memberId(0), memberId(1), 2000);
+
+            assertThat(engine.balanceOf(memberId(0))).isEqualTo(8000);
+            assertThatThrownBy(() -> engine.transfer(memberId(0), memberId(1), 9000))
+                    .isInstanceOf(InsufficientBalanceException.class);
+            assertThatThrownBy(() -> engine.transfer(memberId(0), "missing", 1000))
+                    .isInstanceOf(RuntimeException.class);
+
+            // DB 반영은 flush 이후
+            engine.flush();
+            assertThat(repository.findById(memberId(0)).getMoney()).isEqualTo(8000);
+            assertThat(repository.findById(memberId(1)).getMoney()).isEqualTo(12000);
+        }
+    }
+
+    @Test
+    void concurrentTransfers() throws InterruptedException {
+        int threads = 8;
+        int transfersPerThread = 2000;
+
+        try (BalanceEngine engine = engine(repository)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        int from = random.nextInt(MEMBER_COUNT);
+                        int to = (from + 1 + random.nextInt(MEMBER_COUNT - 1)) % MEMBER_COUNT;
+                        try {
+                            engine.transfer(memberId(from), memberId(to), random.nextInt(1, 100));
+                        } catch (InsufficientBalanceException e) {
+                            // 잔액이 부족한 이체는 건너뛴다
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+            engine.flush();
+
+            // 돈이 새거나 생기지 않고, DB가 메모리 잔액을 따라온다
+            long total = 0;
+            for (int i = 0; i < MEMBER_COUNT; i++) {
+                long balance = engine.balanceOf(memberId(i));
+                assertThat(repository.findById(memberId(i)).getMoney()).isEqualTo(balance);
+                total += balance;
+            }
+            assertThat(total).isEqualTo(10000L * MEMBER_COUNT);
+            assertThat(engine.getAppliedCount() + engine.getRejectedCount()).isEqualTo((long) threads * transfersPerThread);
+        }
+    }
+
+    @Test
+    void recoverFromJournal() {
+        // given - DB 반영이 계속 실패하는 중에 멈춤
+        MemberRepositoryV5 failing = new MemberRepositoryV5(dataSource) {
+            @Override
+            public void applyDeltas(Map<String, Integer> deltas) {
+                throw new DataAccessResourceFailureException("db down");
+            }
+        };
+        try (BalanceEngine engine = engine(failing)) {
+            engine.transfer(memberId(0), memberId(1), 1000);
+            engine.transfer(memberId(1), memberId(2), 3000);
+            assertThatThrownBy(engine::flush).isInstanceOf(DataAccessResourceFailureException.class);
+        }
+        assertThat(repository.findById(memberId(0)).getMoney()).isEqualTo(10000);
+
+        // when - 같은 저널로 다시 시작
+        try (BalanceEngine engine = engine(repository)) {
+            // then
+            assertThat(repository.findById(memberId(0)).getMoney()).isEqualTo(9000);
+            assertThat(repository.findById(memberId(1)).getMoney()).isEqualTo(8000);
+            assertThat(repository.findById(memberId(2)).getMoney()).isEqualTo(13000);
+            assertThat(engine.balanceOf(memberId(1))).isEqualTo(8000);
+        }
+    }
+
+    @Test
+    void journalReclaimsAppliedRecords() {
+        // 저널 한 바퀴보다 훨씬 많이 쓰는 동안 저널이 한 번도 비지 않아도 가득 차지 않는다
+        int transfers = 20000;
+        try (BalanceEngine engine = new BalanceEngine(repository, transactionManager, tempDir.resolve("small.journal"),
+                1024, 16 * 1024, Duration.ofMillis(1), 100)) {
+            for (int i = 0; i < transfers; i++) {
+                engine.transfer(memberId(i % 2), memberId((i + 1) % 2), 1);
+            }
+            engine.flush();
+
+            assertThat(engine.getRejectedCount()).isZero();
+            assertThat(repository.findById(memberId(0)).getMoney()).isEqualTo(10000);
+        }
+    }
+
+    @Test
+    void stopOnJournalForceFailure() {
+        AtomicBoolean failForce = new AtomicBoolean();
+        BalanceJournal journal = new BalanceJournal(tempDir.resolve("failing.journal"), 1024 * 1024, false) {
+            @Override
+            synchronized void force() {
+                if (failForce.get()) {
+                    throw new UncheckedIOException(new IOException("disk failure"));
+                }
+                super.force();
+            }
+        };
+
+        try (BalanceEngine engine = new BalanceEngine(repository, transactionManager, journal,
+                1024, Duration.ofMillis(10), 100)) {
+            engine.transfer(memberId(0), memberId(1), 1000);
+            engine.flush();
+
+            failForce.set(true);
+            assertThatThrownBy(() -> engine.transfer(memberId(0), memberId(1), 2000))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("journal force failed");
+
+            // 멈춘 뒤로는 요청을 받지 않는다
+            assertThatThrownBy(() -> engine.transfer(memberId(2), memberId(3), 100))
+                    .isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(engine::flush).isInstanceOf(IllegalStateException.class);
+        }
+
+        // 실패를 돌려준 이체는 DB에 반영되지 않는다
+        assertThat(repository.findById(memberId(0)).getMoney()).isEqualTo(9000);
+        assertThat(repository.findById(memberId(1)).getMoney()).isEqualTo(11000);
+    }
+
+    @Test
+    void memberServiceEngineMode() {
+        try (BalanceEngine engine = engine(repository)) {
+            repository.save(new Member("ex", 0));
+            MemberServiceV4 memberService = new MemberServiceV4(repository, engine);
+
+            memberService.accountTransfer(memberId(0), memberId(1), 1000);
+            assertThatThrownBy(() -> memberService.accountTransfer(memberId(0), "ex", 1000))
+                    .isInstanceOf(IllegalStateException.class);
+
+            List<TransferResult> results = memberService.transferAll(List.of(
+                    new Transfer(memberId(2), memberId(3), 20000),
+                    new Transfer(memberId(2), memberId(3), 5000)));
+            assertThat(results.get(0).failure()).isInstanceOf(InsufficientBalanceException.class);
+            assertThat(results.get(1).applied()).isTrue();
+            assertThat(engine.balanceOf(memberId(0))).isEqualTo(9000);
+            assertThat(engine.balanceOf(memberId(3))).isEqualTo(15000);
+        }
+    }
+
+    private BalanceEngine engine(MemberRepositoryV5 target) {
+        return new BalanceEngine(target, transactionManager, tempDir.resolve("balance.journal"),
+                1024, 1024 * 1024, Duration.ofMillis(10), 100);
+    }
+
+    private static String memberId(int i) {
+        return "engine" + i;
+    }
+}
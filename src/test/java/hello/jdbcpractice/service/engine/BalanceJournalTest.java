@@ -0,0 +1,34 @@
+package hello.jdbcpractice.service.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void staleMarkAppliedKeepsUnappliedRecords() {
+        Path path = tempDir.resolve("balance.journal");
+        try (BalanceJournal journal = new BalanceJournal(path, 4096, false)) {
+            long first = journal.append("memberA", 9000, "memberB", 11000);
+            int firstEnd = journal.writePosition();
+            // 모두 반영되어 저널을 처음부터 다시 쓴다
+            journal.markApplied(first, firstEnd);
+
+            journal.append("memberA", 8000, "memberB", 12000);
+            // 새 이체 없이 다시 넘긴 묶음 (같은 seq, 처음부터 다시 쓰기 전 위치)
+            journal.markApplied(first, firstEnd);
+        }
+
+        try (BalanceJournal journal = new BalanceJournal(path, 4096, false)) {
+            assertThat(journal.replay()).singleElement()
+                    .satisfies(entry -> assertThat(entry.fromBalance()).isEqualTo(8000));
+        }
+    }
+}
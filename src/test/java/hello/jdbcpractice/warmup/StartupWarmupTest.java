@@ -0,0 +1,72 @@
+package hello.jdbcpractice.warmup;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbcpractice.connection.StatementCache;
+import hello.jdbcpractice.domain.member.Member;
+import hello.jdbcpractice.repository.MemberRepositoryV4_2;
+import hello.jdbcpractice.repository.dialect.H2Dialect;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StartupWarmupTest {
+
+    HikariDataSource dataSource;
+    StatementCache statementCache;
+    MemberRepositoryV4_2 repository;
+    List<Object> events = new ArrayList<>();
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:warmup;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMinimumIdle(4);
+        dataSource.setMaximumPoolSize(4);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        new JdbcTemplate(dataSource).update("delete from member");
+
+        statementCache = new StatementCache();
+        repository = new MemberRepositoryV4_2(dataSource, new H2Dialect(), false, statementCache);
+        repository.save(new Member("memberA", 10000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+    }
+
+    @Test
+    void warmup() {
+        WarmupProperties properties = new WarmupProperties(true, 0, 20, null);
+        StartupWarmup warmup = new StartupWarmup(dataSource, repository, properties, events::add);
+
+        warmup.run(null);
+
+        // minimumIdle만큼 커넥션을 열고 커넥션마다 문장을 준비한다
+        assertThat(dataSource.getHikariPoolMXBean().getTotalConnections()).isEqualTo(4);
+        assertThat(statementCache.getConnectionCount()).isEqualTo(4);
+
+        assertThat(events).singleElement().isInstanceOfSatisfying(WarmupCompletedEvent.class, event -> {
+            assertThat(event.getConnections()).isEqualTo(4);
+            assertThat(event.getStatements()).isPositive();
+            assertThat(event.getFindByIdCalls()).isEqualTo(20);
+            assertThat(event.getElapsed()).isEqualTo(warmup.getElapsed());
+        });
+
+        // 워밍업 뒤의 조회는 준비된 문장을 다시 쓴다
+        long misses = statementCache.getMissCount();
+        repository.findById("memberA");
+        assertThat(statementCache.getMissCount()).isEqualTo(misses);
+    }
+}